@@ -0,0 +1,98 @@
+// BakeEllipsoidalSidecars.java
+// pre-apply the geoid to DEM tiles so lookups don't have to
+// javac -cp ".:lib/*" BakeEllipsoidalSidecars.java
+// java -cp ".:lib/*" BakeEllipsoidalSidecars [-f] <dem file or dir>...
+//
+// For every GeoTiff DEM whose heights are relative to a geoid (EGM96,
+// EGM2008, NAVD88 - typically .3dep, .cop30, .eudtm, .srtm) write
+// <dem>.grid: float32 WGS84 ellipsoidal heights with the geoid offset
+// already added.  Readers opened with MaxarDtmReader.LoadMode.SIDECAR
+// (and DemMosaic in that mode) map the sidecar and skip loading and
+// applying EGM on every lookup.  Tiles already in WGS84 HAE and DTED are
+// skipped.  Existing current baked sidecars are left alone unless -f.
+//
+// The sidecar remembers the DEM's size and mtime; if the DEM changes, the
+// next SIDECAR open replaces it with a plain (unbaked) one.
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.openathena.core.OpenAthenaCore;
+
+public class BakeEllipsoidalSidecars
+{
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 1) {
+            System.err.println("Usage: java BakeEllipsoidalSidecars [-f] <dem file or dir>...");
+            System.exit(1);
+        }
+        System.setProperty("slf4j.internal.verbosity", "ERROR");
+        OpenAthenaCore.CacheDir = Paths.get("/");
+        OpenAthenaCore core = new OpenAthenaCore();
+
+        boolean force = false;
+        List<File> files = new ArrayList<>();
+        for (String a : args) {
+            if (a.equals("-f")) { force = true; continue; }
+            File f = new File(a);
+            if (f.isDirectory()) {
+                File[] list = f.listFiles();
+                if (list == null) continue;
+                for (File g : list) {
+                    if (g.isFile() && isDemName(g.getName())) files.add(g);
+                }
+            }
+            else {
+                files.add(f);
+            }
+        }
+
+        int baked = 0, skipped = 0, failed = 0;
+        for (File f : files) {
+            long t0 = System.nanoTime();
+            try {
+                if (!force && isBaked(f)) {
+                    System.out.println(f.getName()+": already baked");
+                    skipped++;
+                    continue;
+                }
+                try (MaxarDtmReader dtm = new MaxarDtmReader(f, MaxarDtmReader.LoadMode.MAPPED)) {
+                    if (!dtm.writeEllipsoidalSidecar()) {
+                        System.out.println(f.getName()+": "+(dtm.isDTED ? "DTED" : dtm.getVerticalDatum())+", nothing to bake");
+                        skipped++;
+                        continue;
+                    }
+                }
+                long t1 = System.nanoTime();
+                System.out.println(f.getName()+": baked in "+((t1 - t0) / 1_000_000)+" ms");
+                baked++;
+            } catch (Exception e) {
+                System.err.println("[BakeEllipsoidalSidecars] "+f+": "+e);
+                failed++;
+            }
+        }
+        System.out.println("baked "+baked+", skipped "+skipped+", failed "+failed);
+    }
+
+    // current sidecar with baked heights?  Only reads headers
+
+    private static boolean isBaked(File f)
+    {
+        try (MappedGeoTiff m = new MappedGeoTiff(f)) {
+            return m.mapSidecar(MappedGeoTiff.sidecarFor(f)) && m.getSidecarVerticalEpsg() == 4979;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static boolean isDemName(String name)
+    {
+        String n = name.toLowerCase();
+        return n.endsWith(".3dep") || n.endsWith(".cop30") || n.endsWith(".eudtm") || n.endsWith(".srtm")
+            || n.endsWith(".dt2") || n.endsWith(".max") || n.endsWith(".tif") || n.endsWith(".tiff");
+    }
+
+} // BakeEllipsoidalSidecars
@@ -0,0 +1,493 @@
+// DemCatalog.java
+// in-memory spatial index over a directory of DEM tiles
+// javac -cp ".:lib/*" DemCatalog.java
+// java -cp ".:lib/*" DemCatalog [-rescan] <dem dir> [lat lon]...
+//
+// Our DEM caches hold thousands of DEM_LatLon_s_w_n_e.<ext> files and
+// finding the one(s) covering a point by listing the directory and
+// parsing every name is slow.  DemCatalog scans the directory once,
+// takes bounds from the filename (falling back to DemScan's record of
+// the file, or to reading the TIFF or DTED header with DemProbe, for
+// other names) and packs them into a static
+// Sort-Tile-Recursive (STR) R-tree held in flat arrays.  Point queries
+// touch O(log n) nodes and allocate nothing but the result.
+//
+// The catalog is saved as a compact binary file (.demcatalog) in the
+// directory; open() reuses it as long as the directory holds the same
+// DEM files (by name, and any file skipped as unreadable is recorded
+// too) with the sizes and mtimes they were indexed with, so restarts
+// cost a listing and a stat per tile rather than a scan.  Only DEM names
+// count: the directory's own mtime isn't used, since writing the .grid,
+// .pyr, .demscan.jsonl and .demcatalog sidecars bumps it.  .demcatalog is
+// only the tile list behind the R-tree, rebuilt whenever it's stale; the
+// record of what each file's header says is DemScan's .demscan.jsonl,
+// and a scan takes a tile from there when its size and mtime still
+// match instead of probing it again.
+//
+// Dataset preference when tiles overlap (best first):
+//   Maxar (.max) > 3DEP (.3dep) > COP30/EU_DTM (.cop30,.eudtm) > SRTM/DTED2 (.srtm,.dt2)
+// anything else ranks last.
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.openathena.core.OpenAthenaCore;
+
+public class DemCatalog
+{
+    public static final String INDEX_NAME = ".demcatalog";
+    private static final int INDEX_MAGIC = 0x44454D43; // "DEMC"
+    private static final int INDEX_VERSION = 2;
+
+    // R-tree node fanout
+    private static final int M = 16;
+
+    private static final Pattern DEM_NAME = Pattern.compile(
+        "^DEM_LatLon_(-?[0-9.]+)_(-?[0-9.]+)_(-?[0-9.]+)_(-?[0-9.]+)\\.([A-Za-z0-9]+)$");
+
+    // one DEM file
+    public static final class Tile
+    {
+        public final String path;
+        public final String extension;
+        public final double s, w, n, e;
+        public final int rank;           // dataset preference, 0 = best
+        public final double resolution; // nominal post spacing in meters
+        public final long size, lastModified;
+
+        Tile(String path, String extension, double s, double w, double n, double e,
+             double resolution, long size, long lastModified)
+        {
+            this.path = path; this.extension = extension;
+            this.s = s; this.w = w; this.n = n; this.e = e;
+            this.rank = datasetRank(extension);
+            this.resolution = resolution;
+            this.size = size; this.lastModified = lastModified;
+        }
+
+        public boolean contains(double lat, double lon) {
+            return lat >= s && lat <= n && lon >= w && lon <= e;
+        }
+
+        public File getFile() { return new File(path); }
+
+        public String toString() {
+            return String.format("%s [%.6f,%.6f,%.6f,%.6f] %s %.1fm", path, s, w, n, e, extension, resolution);
+        }
+    }
+
+    // a DEM-looking file scan() couldn't index; kept in the saved
+    // catalog so it doesn't look new on every open
+    private static final class Skipped
+    {
+        final String name;
+        final long size, lastModified;
+
+        Skipped(String name, long size, long lastModified)
+        {
+            this.name = name; this.size = size; this.lastModified = lastModified;
+        }
+    }
+
+    private final File dir;
+    private final Tile[] tiles;   // leaf order
+    private final List<Skipped> skipped;
+
+    // packed tree: level 0 is the tiles themselves; level k node i covers
+    // level k-1 entries [i*M, min((i+1)*M, size(k-1)))
+    private final double[][] minLat, minLon, maxLat, maxLon;
+
+    // tilesAt's explicit stack of (level, index), kept per thread so a
+    // query allocates only its result; depth*M is plenty
+    private final ThreadLocal<int[][]> stacks;
+
+    private DemCatalog(File dir, List<Tile> list, List<Skipped> skipped)
+    {
+        this.dir = dir;
+        this.tiles = strOrder(list);
+        this.skipped = skipped;
+
+        int levels = 1;
+        for (int sz = tiles.length; sz > 1; sz = (sz + M - 1) / M) levels++;
+        minLat = new double[levels][]; minLon = new double[levels][];
+        maxLat = new double[levels][]; maxLon = new double[levels][];
+        int depth = levels * M + 1;
+        stacks = ThreadLocal.withInitial(() -> new int[2][depth]);
+
+        int sz = tiles.length;
+        minLat[0] = new double[sz]; minLon[0] = new double[sz];
+        maxLat[0] = new double[sz]; maxLon[0] = new double[sz];
+        for (int i = 0; i < sz; i++) {
+            minLat[0][i] = tiles[i].s; minLon[0][i] = tiles[i].w;
+            maxLat[0][i] = tiles[i].n; maxLon[0][i] = tiles[i].e;
+        }
+        for (int k = 1; k < levels; k++) {
+            int parent = (sz + M - 1) / M;
+            minLat[k] = new double[parent]; minLon[k] = new double[parent];
+            maxLat[k] = new double[parent]; maxLon[k] = new double[parent];
+            for (int p = 0; p < parent; p++) {
+                double a = Double.POSITIVE_INFINITY, b = Double.POSITIVE_INFINITY;
+                double c = Double.NEGATIVE_INFINITY, d = Double.NEGATIVE_INFINITY;
+                for (int j = p * M; j < Math.min((p + 1) * M, sz); j++) {
+                    a = Math.min(a, minLat[k-1][j]); b = Math.min(b, minLon[k-1][j]);
+                    c = Math.max(c, maxLat[k-1][j]); d = Math.max(d, maxLon[k-1][j]);
+                }
+                minLat[k][p] = a; minLon[k][p] = b; maxLat[k][p] = c; maxLon[k][p] = d;
+            }
+            sz = parent;
+        }
+    }
+
+    // STR: sort by center lon, cut into vertical slices of ~sqrt(n/M)*M
+    // tiles, sort each slice by center lat
+
+    private static Tile[] strOrder(List<Tile> list)
+    {
+        Tile[] t = list.toArray(new Tile[0]);
+        int n = t.length;
+        if (n <= M) return t;
+        Arrays.sort(t, Comparator.comparingDouble(x -> x.w + x.e));
+        int leaves = (n + M - 1) / M;
+        int slices = (int) Math.ceil(Math.sqrt(leaves));
+        int perSlice = slices * M;
+        for (int from = 0; from < n; from += perSlice) {
+            Arrays.sort(t, from, Math.min(n, from + perSlice), Comparator.comparingDouble(x -> x.s + x.n));
+        }
+        return t;
+    }
+
+    public File getDirectory() { return dir; }
+    public int size() { return tiles.length; }
+    public List<Tile> getTiles() { return Arrays.asList(tiles); }
+
+    // all tiles whose bounds contain lat,lon
+
+    public List<Tile> tilesAt(double lat, double lon)
+    {
+        List<Tile> out = new ArrayList<>(4);
+        if (tiles.length == 0) return out;
+        int top = minLat.length - 1;
+        int[][] stack = stacks.get();
+        int[] stackL = stack[0], stackI = stack[1];
+        int sp = 0;
+        for (int i = 0; i < minLat[top].length; i++) { stackL[sp] = top; stackI[sp++] = i; }
+        while (sp > 0) {
+            int k = stackL[--sp], i = stackI[sp];
+            if (lat < minLat[k][i] || lat > maxLat[k][i] || lon < minLon[k][i] || lon > maxLon[k][i]) continue;
+            if (k == 0) {
+                out.add(tiles[i]);
+                continue;
+            }
+            int below = minLat[k-1].length;
+            for (int j = i * M; j < Math.min((i + 1) * M, below); j++) {
+                stackL[sp] = k - 1; stackI[sp++] = j;
+            }
+        }
+        return out;
+    }
+
+    // tiles covering lat,lon, most preferred first: best dataset rank,
+    // then finest resolution, then the tile whose edges are farthest from
+    // the point (so we stay away from seams where IDW loses neighbours)
+
+    public List<Tile> rankedTilesAt(double lat, double lon)
+    {
+        List<Tile> hits = tilesAt(lat, lon);
+        if (hits.size() > 1) {
+            hits.sort((a, b) -> {
+                if (a.rank != b.rank) return Integer.compare(a.rank, b.rank);
+                int c = Double.compare(a.resolution, b.resolution);
+                if (c != 0) return c;
+                return Double.compare(edgeDistance(b, lat, lon), edgeDistance(a, lat, lon));
+            });
+        }
+        return hits;
+    }
+
+    // the preferred tile covering lat,lon or null
+
+    public Tile bestTileAt(double lat, double lon)
+    {
+        List<Tile> hits = rankedTilesAt(lat, lon);
+        return hits.isEmpty() ? null : hits.get(0);
+    }
+
+    private static double edgeDistance(Tile t, double lat, double lon)
+    {
+        return Math.min(Math.min(lat - t.s, t.n - lat), Math.min(lon - t.w, t.e - lon));
+    }
+
+    // ---- dataset helpers
+
+    public static int datasetRank(String ext)
+    {
+        switch (ext.toLowerCase()) {
+        case "max":   return 0;
+        case "3dep":  return 1;
+        case "cop30":
+        case "eudtm": return 2;
+        case "srtm":
+        case "dt2":   return 3;
+        default:      return 4;
+        }
+    }
+
+    public static double nominalResolution(String ext)
+    {
+        switch (ext.toLowerCase()) {
+        case "max":   return 0.5;
+        case "3dep":  return 10.0;
+        case "cop30":
+        case "eudtm":
+        case "srtm":
+        case "dt2":   return 30.0;
+        case "dt3":   return 10.0;
+        default:      return Double.NaN;
+        }
+    }
+
+    // worth opening to see if it's a DEM; DemScan picks files by this too.
+    // .dt1 is left out since MaxarDtmReader refuses DTED1.
+
+    static boolean looksLikeDemExtension(String ext)
+    {
+        return datasetRank(ext) < 4 || ext.equalsIgnoreCase("tif") || ext.equalsIgnoreCase("tiff")
+            || ext.equalsIgnoreCase("dt3");
+    }
+
+    // a file scan() indexes or, failing that, records as skipped; none of
+    // our sidecars (.grid, .grid.tmp, .pyr, .demscan.jsonl, .demcatalog)
+    // passes
+
+    static boolean isDemName(String name)
+    {
+        if (DEM_NAME.matcher(name).matches()) return true;
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && looksLikeDemExtension(name.substring(dot + 1));
+    }
+
+    // ---- scanning and persistence
+
+    // load the saved catalog if it's current, otherwise scan and save
+
+    public static DemCatalog open(File dir) throws IOException
+    {
+        File idx = new File(dir, INDEX_NAME);
+        if (idx.isFile()) {
+            try {
+                return load(dir, idx);
+            } catch (IOException e) {
+                System.err.println("[DemCatalog] ignoring stale or bad index "+idx+": "+e.getMessage());
+            }
+        }
+        DemCatalog c = scan(dir);
+        try {
+            c.save(idx);
+        } catch (IOException e) {
+            System.err.println("[DemCatalog] could not save "+idx+": "+e.getMessage());
+        }
+        return c;
+    }
+
+    public static DemCatalog scan(File dir) throws IOException
+    {
+        File[] files = dir.listFiles();
+        if (files == null) throw new IOException("Not a directory: "+dir);
+        Map<String,DemScan.Entry> probed = DemScan.read(new File(dir, DemScan.INDEX_NAME));
+        List<Tile> list = new ArrayList<>(files.length);
+        List<Skipped> skipped = new ArrayList<>();
+        for (File f : files) {
+            if (!f.isFile()) continue;
+            Tile t = tileFor(f, probed.get(f.getName()));
+            if (t != null) {
+                list.add(t);
+            } else if (isDemName(f.getName())) {
+                skipped.add(new Skipped(f.getName(), f.length(), f.lastModified()));
+            }
+        }
+        return new DemCatalog(dir, list, skipped);
+    }
+
+    // bounds from the name if it follows our convention, else from
+    // DemScan's entry for it if that's current, else open it
+
+    static Tile tileFor(File f, DemScan.Entry scanned)
+    {
+        String name = f.getName();
+        Matcher m = DEM_NAME.matcher(name);
+        if (m.matches()) {
+            try {
+                double s = Double.parseDouble(m.group(1)), w = Double.parseDouble(m.group(2));
+                double n = Double.parseDouble(m.group(3)), e = Double.parseDouble(m.group(4));
+                String ext = m.group(5);
+                if (s < n && w < e) {
+                    return new Tile(f.getPath(), ext, s, w, n, e, nominalResolution(ext), f.length(), f.lastModified());
+                }
+            } catch (NumberFormatException ignore) { }
+        }
+
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) return null;
+        String ext = name.substring(dot + 1);
+        if (!looksLikeDemExtension(ext)) return null;
+
+        if (scanned != null && scanned.size == f.length() && scanned.lastModified == f.lastModified()) {
+            if (scanned.error != null || Double.isNaN(scanned.s)) {
+                System.err.println("[DemCatalog] skipping "+name+": "
+                                   +(scanned.error != null ? scanned.error : "no georeference"));
+                return null;
+            }
+            double res = "dted".equals(scanned.dataset) ? nominalResolution(ext) : scanned.resolution;
+            return new Tile(f.getPath(), ext, scanned.s, scanned.w, scanned.n, scanned.e, res,
+                            scanned.size, scanned.lastModified);
+        }
+
+        // header only; no need to decode the raster for its extent
+        try {
+            DemProbe p = DemProbe.probe(f);
+            if (!p.isGeoreferenced()) {
+                System.err.println("[DemCatalog] skipping "+name+": no georeference");
+                return null;
+            }
+            double res = p.isDTED ? nominalResolution(ext) : p.getResolutionMeters();
+            return new Tile(f.getPath(), ext, p.s, p.w, p.n, p.e, res, p.size, p.lastModified);
+        } catch (Exception e) {
+            System.err.println("[DemCatalog] skipping "+name+": "+e.getMessage());
+            return null;
+        }
+    }
+
+    public void save(File idx) throws IOException
+    {
+        File tmp = new File(idx.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(tiles.length);
+            for (Tile t : tiles) {
+                out.writeUTF(new File(t.path).getName());
+                out.writeUTF(t.extension);
+                out.writeDouble(t.s); out.writeDouble(t.w);
+                out.writeDouble(t.n); out.writeDouble(t.e);
+                out.writeDouble(t.resolution);
+                out.writeLong(t.size);
+                out.writeLong(t.lastModified);
+            }
+            out.writeInt(skipped.size());
+            for (Skipped k : skipped) {
+                out.writeUTF(k.name);
+                out.writeLong(k.size);
+                out.writeLong(k.lastModified);
+            }
+        }
+        if (!tmp.renameTo(idx)) {
+            tmp.delete();
+            throw new IOException("Could not write "+idx);
+        }
+    }
+
+    // the saved catalog, or IOException if it isn't current: a file in it
+    // changed or went away, or a DEM file was added since
+
+    public static DemCatalog load(File dir, File idx) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(idx)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                throw new IOException("not a DemCatalog index");
+            }
+            int n = in.readInt();
+            List<Tile> list = new ArrayList<>(n);
+            Set<String> names = new HashSet<>(2 * n);
+            for (int i = 0; i < n; i++) {
+                String name = in.readUTF();
+                String ext = in.readUTF();
+                double s = in.readDouble(), w = in.readDouble(), no = in.readDouble(), e = in.readDouble();
+                double res = in.readDouble();
+                long size = in.readLong(), mtime = in.readLong();
+                File f = new File(dir, name);
+                if (f.length() != size || f.lastModified() != mtime) {
+                    throw new IOException(name+" changed since it was indexed");
+                }
+                list.add(new Tile(new File(dir, name).getPath(), ext, s, w, no, e, res, size, mtime));
+                names.add(name);
+            }
+            int k = in.readInt();
+            List<Skipped> skipped = new ArrayList<>(k);
+            for (int i = 0; i < k; i++) {
+                String name = in.readUTF();
+                long size = in.readLong(), mtime = in.readLong();
+                File f = new File(dir, name);
+                if (f.length() != size || f.lastModified() != mtime) {
+                    throw new IOException(name+" changed since it was indexed");
+                }
+                skipped.add(new Skipped(name, size, mtime));
+                names.add(name);
+            }
+
+            // anything gone has failed its stat above; look for additions
+            String[] listing = dir.list();
+            if (listing == null) throw new IOException("Not a directory: "+dir);
+            for (String name : listing) {
+                if (isDemName(name) && !names.contains(name) && new File(dir, name).isFile()) {
+                    throw new IOException(name+" added since the directory was indexed");
+                }
+            }
+            return new DemCatalog(dir, list, skipped);
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 1) {
+            System.err.println("Usage: java DemCatalog [-rescan] <dem dir> [lat lon]...");
+            System.exit(1);
+        }
+        System.setProperty("slf4j.internal.verbosity", "ERROR");
+        OpenAthenaCore.CacheDir = Paths.get("/");
+
+        int i = 0;
+        boolean rescan = false;
+        if (args[i].equals("-rescan")) { rescan = true; i++; }
+        File dir = new File(args[i++]);
+
+        long t0 = System.nanoTime();
+        DemCatalog cat;
+        if (rescan) {
+            cat = scan(dir);
+            cat.save(new File(dir, INDEX_NAME));
+        } else {
+            cat = open(dir);
+        }
+        long t1 = System.nanoTime();
+        System.out.println("DemCatalog: "+cat.size()+" tiles in "+((t1 - t0) / 1_000_000)+" ms");
+
+        while (i + 1 < args.length) {
+            double lat = Double.parseDouble(args[i]), lon = Double.parseDouble(args[i+1]);
+            i += 2;
+            t0 = System.nanoTime();
+            List<Tile> hits = cat.tilesAt(lat, lon);
+            Tile best = cat.bestTileAt(lat, lon);
+            t1 = System.nanoTime();
+            System.out.printf("(%.6f, %.6f): %d tiles, %.1f us%n", lat, lon, hits.size(), (t1 - t0) / 1000.0);
+            for (Tile t : hits) System.out.println("   "+t);
+            System.out.println("   best: "+best);
+        }
+    }
+
+} // DemCatalog
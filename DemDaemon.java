@@ -0,0 +1,311 @@
+// DemDaemon.java
+// long-lived elevation and geoid lookup server on a local socket
+// javac -cp ".:lib/*" DemDaemon.java
+// java -cp ".:lib/*" DemDaemon [-port N | -unix path] [-mb N] [-mode primitive|mapped|sidecar]
+//                              [-geoid egm2008.pgm] [-preload] <dem dir>
+//
+// Every lookupAltitude.sh/terraintalt.sh style call either starts a JVM
+// and opens a DEM or goes through the REST server.  DemDaemon keeps a
+// DemMosaic (open MaxarDtmReaders, LRU by decoded bytes) and the shared
+// geoid models (GeoidRegistry) resident and answers on a loopback TCP
+// port (default 7373) or a Unix domain socket.  Only local clients can
+// connect; there is no authentication.
+//
+// Protocol: ASCII lines in, one answer line out per request, in order.
+//
+//   alt <lat> <lon>                WGS84 ellipsoidal height of the terrain
+//   alt <lat> <lon> egm96|egm2008  terrain height above that geoid
+//   geoid egm96|egm2008 <lat> <lon>  geoid height N (meters above WGS84)
+//   stats                          counters
+//   ping
+//   quit                           answer nothing more and close
+//
+// Answers are "ok <value>" (meters, 3 decimals), "ok <text>" or
+// "err <reason>".  Requests may be pipelined: a client can write any
+// number of lines before reading.  Answers are buffered and flushed
+// once the lines already received are used up, so a batch costs one
+// write instead of one per line.  Each connection gets its own thread;
+// DemMosaic and the geoid providers are safe to share.
+//
+// demq.sh is a shell client.
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.agilesrc.dem4j.exceptions.CorruptTerrainException;
+
+import com.openathena.core.EGMOffsetProvider;
+import com.openathena.core.OpenAthenaCore;
+import com.openathena.core.RequestedValueOOBException;
+
+public class DemDaemon implements AutoCloseable
+{
+    public static int defaultPort = 7373;
+
+    private final DemMosaic mosaic;
+    private final LongAdder queries = new LongAdder(), errors = new LongAdder();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final long started = System.currentTimeMillis();
+    private final ExecutorService pool = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "DemDaemon-conn");
+        t.setDaemon(true);
+        return t;
+    });
+    private ServerSocketChannel server;
+    private Path unixPath;
+
+    public DemDaemon(DemMosaic mosaic)
+    {
+        this.mosaic = mosaic;
+    }
+
+    public long getQueries() { return queries.sum(); }
+    public long getErrors() { return errors.sum(); }
+    public int getConnections() { return connections.get(); }
+
+    // bind to 127.0.0.1:port
+
+    public void bindTcp(int port) throws IOException
+    {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    // bind to a Unix domain socket; a socket file left by a previous run
+    // is removed first, anything else there is an error
+
+    public void bindUnix(String path) throws IOException
+    {
+        Path p = Paths.get(path);
+        if (Files.exists(p)) {
+            if (Files.isRegularFile(p) || Files.isDirectory(p)) {
+                throw new IOException(path+" exists and is not a socket");
+            }
+            Files.delete(p);
+        }
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(p));
+        unixPath = p;
+    }
+
+    public SocketAddress getAddress() throws IOException
+    {
+        return server.getLocalAddress();
+    }
+
+    // accept until the server channel is closed
+
+    public void serve() throws IOException
+    {
+        while (server.isOpen()) {
+            SocketChannel ch;
+            try {
+                ch = server.accept();
+            } catch (IOException e) {
+                if (!server.isOpen()) break;
+                throw e;
+            }
+            // answers are flushed whole; don't hold them back for acks
+            if (unixPath == null) ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            pool.execute(() -> connection(ch));
+        }
+    }
+
+    private void connection(SocketChannel ch)
+    {
+        connections.incrementAndGet();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(ch),
+                                                                          StandardCharsets.US_ASCII), 1 << 16);
+             Writer out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(ch),
+                                                                    StandardCharsets.US_ASCII), 1 << 16)) {
+            StringBuilder sb = new StringBuilder(64);
+            String line;
+            while ((line = in.readLine()) != null) {
+                sb.setLength(0);
+                if (!answer(line, sb)) break;
+                sb.append('\n');
+                out.append(sb);
+                // socket streams report nothing available, so this flushes
+                // once the lines from the last read are all answered
+                if (!in.ready()) out.flush();
+            }
+        } catch (IOException e) {
+            // client went away
+        } finally {
+            connections.decrementAndGet();
+        }
+    }
+
+    // one request line into sb; false for quit
+
+    boolean answer(String line, StringBuilder sb)
+    {
+        String[] w = line.trim().split("\\s+");
+        queries.increment();
+        try {
+            switch (w[0].toLowerCase()) {
+            case "alt": {
+                if (w.length != 3 && w.length != 4) return err(sb, "usage: alt lat lon [egm96|egm2008]");
+                double lat = Double.parseDouble(w[1]), lon = Double.parseDouble(w[2]);
+                double h = mosaic.getAltFromLatLon(lat, lon);
+                if (w.length == 4) {
+                    EGMOffsetProvider g = geoid(w[3]);
+                    if (g == null) return err(sb, "unknown geoid "+w[3]);
+                    h -= g.getEGMOffsetAtLatLon(lat, lon);
+                }
+                return ok(sb, h);
+            }
+            case "geoid": {
+                if (w.length != 4) return err(sb, "usage: geoid egm96|egm2008 lat lon");
+                EGMOffsetProvider g = geoid(w[1]);
+                if (g == null) return err(sb, "unknown geoid "+w[1]);
+                return ok(sb, g.getEGMOffsetAtLatLon(Double.parseDouble(w[2]), Double.parseDouble(w[3])));
+            }
+            case "stats":
+                sb.append("ok queries=").append(queries.sum()).append(" errors=").append(errors.sum())
+                  .append(" connections=").append(connections.get())
+                  .append(" readers=").append(mosaic.getOpenReaders())
+                  .append(" mb=").append(mosaic.getOpenBytes() >> 20)
+                  .append(" opens=").append(mosaic.getOpens())
+                  .append(" hits=").append(mosaic.getHits())
+                  .append(" evictions=").append(mosaic.getEvictions())
+                  .append(" uptime=").append((System.currentTimeMillis() - started) / 1000);
+                return true;
+            case "ping":
+                sb.append("ok pong");
+                return true;
+            case "quit":
+                return false;
+            default:
+                return err(sb, w[0].isEmpty() ? "empty request" : "unknown request "+w[0]);
+            }
+        } catch (NumberFormatException e) {
+            return err(sb, "bad number");
+        } catch (RequestedValueOOBException e) {
+            return err(sb, "no coverage");
+        } catch (CorruptTerrainException e) {
+            return err(sb, "corrupt terrain");
+        } catch (RuntimeException e) {
+            return err(sb, String.valueOf(e.getMessage()).replace('\n', ' '));
+        }
+    }
+
+    private static EGMOffsetProvider geoid(String name)
+    {
+        for (GeoidRegistry.Model m : GeoidRegistry.Model.values()) {
+            if (m.name().equalsIgnoreCase(name)) return GeoidRegistry.get(m);
+        }
+        return null;
+    }
+
+    private boolean err(StringBuilder sb, String why)
+    {
+        errors.increment();
+        sb.append("err ").append(why);
+        return true;
+    }
+
+    // fixed 3 decimals without String.format
+    private boolean ok(StringBuilder sb, double v)
+    {
+        if (Double.isNaN(v)) return err(sb, "no value");
+        sb.append("ok ");
+        long mm = Math.round(v * 1000);
+        if (mm < 0) { sb.append('-'); mm = -mm; }
+        long frac = mm % 1000;
+        sb.append(mm / 1000).append('.');
+        if (frac < 100) sb.append('0');
+        if (frac < 10) sb.append('0');
+        sb.append(frac);
+        return true;
+    }
+
+    @Override public void close()
+    {
+        try {
+            if (server != null) server.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+        pool.shutdownNow();
+        mosaic.close();
+        if (unixPath != null) {
+            try {
+                Files.deleteIfExists(unixPath);
+            } catch (IOException e) {
+                System.err.println("[DemDaemon] could not remove "+unixPath+": "+e.getMessage());
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        String usage = "Usage: java DemDaemon [-port N | -unix path] [-mb N] [-mode primitive|mapped|sidecar]"
+            + " [-geoid egm2008.pgm] [-preload] <dem dir>";
+        System.setProperty("slf4j.internal.verbosity", "ERROR");
+        OpenAthenaCore.CacheDir = Paths.get("/");
+        OpenAthenaCore core = new OpenAthenaCore();
+
+        int port = defaultPort;
+        String unix = null;
+        long maxBytes = DemMosaic.defaultMaxBytes;
+        MaxarDtmReader.LoadMode mode = MaxarDtmReader.LoadMode.PRIMITIVE;
+        boolean preload = false;
+        int i = 0;
+        while (i < args.length && args[i].startsWith("-")) {
+            if (args[i].equals("-port") && i + 1 < args.length) port = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-unix") && i + 1 < args.length) unix = args[++i];
+            else if (args[i].equals("-mb") && i + 1 < args.length) maxBytes = Long.parseLong(args[++i]) * 1024 * 1024;
+            else if (args[i].equals("-mode") && i + 1 < args.length) mode = MaxarDtmReader.LoadMode.valueOf(args[++i].toUpperCase());
+            else if (args[i].equals("-geoid") && i + 1 < args.length) GeoidRegistry.egm2008Pgm = args[++i];
+            else if (args[i].equals("-preload")) preload = true;
+            else {
+                System.err.println(usage);
+                System.exit(1);
+            }
+            i++;
+        }
+        // RASTERS serializes every lookup on a reader (see DemMosaic)
+        if (i >= args.length || mode == MaxarDtmReader.LoadMode.RASTERS) {
+            System.err.println(usage);
+            System.exit(1);
+        }
+
+        long t0 = System.nanoTime();
+        DemCatalog cat = DemCatalog.open(new File(args[i]));
+        if (preload) GeoidRegistry.preload(GeoidRegistry.Model.values());
+        long t1 = System.nanoTime();
+
+        DemDaemon d = new DemDaemon(new DemMosaic(cat, maxBytes, mode));
+        if (unix != null) d.bindUnix(unix);
+        else d.bindTcp(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(d::close));
+        System.out.println("DemDaemon: "+cat.size()+" tiles, ready in "+((t1 - t0) / 1_000_000)
+                           +" ms, listening on "+d.getAddress());
+        if (preload) GeoidRegistry.report(System.out);
+        d.serve();
+    }
+
+} // DemDaemon
@@ -0,0 +1,337 @@
+// DemMosaic.java
+// one getAltFromLatLon over a directory of DEM tiles
+// javac -cp ".:lib/*" DemMosaic.java
+// java -cp ".:lib/*" DemMosaic [-mb N] [-mode primitive|mapped|sidecar] <dem dir> [lat lon]...
+//
+// Wraps many MaxarDtmReaders behind a single lookup.  Tiles covering a
+// point come from DemCatalog, most preferred first
+//   Maxar > 3DEP > COP30/EU_DTM > SRTM/DTED2
+// and the first one that has a value wins.  Near a tile edge the IDW
+// window borrows pixels from whatever tile covers them (see
+// MaxarDtmReader.getAltFromLatLon(lat,lon,EdgeSampler)) so elevations
+// don't step at seams.  Each thread has one reusable EdgeSampler (Seam);
+// the neighbouring tile is found on the first off-tile pixel and kept
+// for the rest of that lookup, so the catalog is searched again only
+// when a pixel falls outside it (a corner).
+//
+// Open readers are kept in an LRU bounded by decoded bytes rather than
+// by count, since one Maxar tile can outweigh a hundred SRTM tiles.
+// Readers evicted while another thread is still using them are closed
+// when that thread lets go.  MAPPED/SIDECAR readers keep decoding tiles
+// after they open, so the budget is also re-checked every
+// BUDGET_CHECK_EVERY releases, not just when a reader is opened.
+//
+// A tile that fails to open isn't retried until its file changes (size
+// or mtime, e.g. DemDownloader finished writing it) or
+// failedRetryMillis has passed.  Safe to share across threads.
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.agilesrc.dem4j.exceptions.CorruptTerrainException;
+
+import com.openathena.core.OpenAthenaCore;
+import com.openathena.core.RequestedValueOOBException;
+
+public class DemMosaic implements AutoCloseable
+{
+    public static long defaultMaxBytes = 512L * 1024 * 1024;
+    // how long a tile that failed to open is left alone if its file
+    // doesn't change
+    public static long failedRetryMillis = 60_000;
+
+    private static final int BUDGET_CHECK_EVERY = 64;
+
+    private final DemCatalog catalog;
+    private final long maxBytes;
+    private final MaxarDtmReader.LoadMode mode;
+
+    // an open reader and how many lookups are using it right now
+    private static final class Open {
+        final DemCatalog.Tile tile;
+        final MaxarDtmReader reader;
+        int users;
+        boolean evicted;
+        Open(DemCatalog.Tile tile, MaxarDtmReader reader) { this.tile = tile; this.reader = reader; }
+    }
+
+    // a tile that couldn't be opened, and the file as it was then
+    private static final class Failed {
+        final long length, lastModified, at;
+        Failed(File f) { length = f.length(); lastModified = f.lastModified(); at = System.currentTimeMillis(); }
+    }
+
+    // access-ordered: eldest entry is least recently used; guarded by this
+    private final LinkedHashMap<String,Open> open = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String,Failed> failed = new ConcurrentHashMap<>();
+    private long opens, hits, evictions, releases;
+    private boolean closed;
+
+    // the EdgeSampler passed to readers, one per thread: the tile being
+    // looked up and the neighbour its off-tile pixels came from, held
+    // (acquired) until that lookup finishes
+    private final class Seam implements MaxarDtmReader.EdgeSampler {
+        DemCatalog.Tile self;
+        Open neighbour;
+
+        @Override public double altAt(double lat, double lon) { return edgeAlt(this, lat, lon); }
+
+        void done()
+        {
+            if (neighbour != null) release(neighbour);
+            neighbour = null;
+            self = null;
+        }
+    }
+    private final ThreadLocal<Seam> seams = ThreadLocal.withInitial(() -> new Seam());
+
+    public DemMosaic(DemCatalog catalog)
+    {
+        this(catalog, defaultMaxBytes, MaxarDtmReader.LoadMode.PRIMITIVE);
+    }
+
+    public DemMosaic(DemCatalog catalog, long maxBytes, MaxarDtmReader.LoadMode mode)
+    {
+        this.catalog = catalog;
+        this.maxBytes = maxBytes;
+        this.mode = mode;
+    }
+
+    public DemCatalog getCatalog() { return catalog; }
+    public long getMaxBytes() { return maxBytes; }
+    public synchronized int getOpenReaders() { return open.size(); }
+    public synchronized long getOpens() { return opens; }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getEvictions() { return evictions; }
+
+    public synchronized long getOpenBytes()
+    {
+        long sum = 0;
+        for (Open o : open.values()) sum += o.reader.getDecodedBytes();
+        return sum;
+    }
+
+    // WGS84 HAE altitude at lat,lon from the best tile that has one
+
+    public double getAltFromLatLon(double lat, double lon) throws RequestedValueOOBException, CorruptTerrainException
+    {
+        List<DemCatalog.Tile> tiles = catalog.rankedTilesAt(lat, lon);
+        CorruptTerrainException corrupt = null;
+        Seam seam = seams.get();
+        for (DemCatalog.Tile t : tiles) {
+            Open o = acquire(t);
+            if (o == null) continue;
+            seam.self = t;
+            try {
+                double alt = o.reader.getAltFromLatLon(lat, lon, seam);
+                if (!Double.isNaN(alt)) return alt;
+            } catch (RequestedValueOOBException e) {
+                // filename bounds can be a hair larger than the raster; try the next
+            } catch (CorruptTerrainException e) {
+                // void here (DTED -32767 etc.); a lower ranked tile may have it
+                corrupt = e;
+            } finally {
+                seam.done();
+                release(o);
+            }
+        }
+        if (corrupt != null) throw corrupt;
+        throw new RequestedValueOOBException("No DEM tile covers requested point", lat, lon);
+    }
+
+    // elevation for a pixel just off tile seam.self: from the neighbour
+    // this lookup already found if it covers the pixel, else from the best
+    // other tile that does, which then becomes the neighbour
+
+    private double edgeAlt(Seam seam, double lat, double lon)
+    {
+        Open n = seam.neighbour;
+        if (n != null && n.tile.contains(lat, lon)) {
+            double v = altOrNaN(n, lat, lon);
+            if (!Double.isNaN(v)) return v;
+        }
+        for (DemCatalog.Tile t : catalog.rankedTilesAt(lat, lon)) {
+            if (t == seam.self || (n != null && t == n.tile)) continue;
+            Open o = acquire(t);
+            if (o == null) continue;
+            double v = altOrNaN(o, lat, lon);
+            if (Double.isNaN(v)) {
+                release(o);
+                continue;
+            }
+            if (n != null) release(n);
+            seam.neighbour = o;
+            return v;
+        }
+        return Double.NaN;
+    }
+
+    private static double altOrNaN(Open o, double lat, double lon)
+    {
+        try {
+            return o.reader.getAltFromLatLon(lat, lon);
+        } catch (RequestedValueOOBException | CorruptTerrainException e) {
+            return Double.NaN;
+        }
+    }
+
+    // an open reader for t with its use count bumped, or null if it
+    // can't be opened; callers must release()
+
+    private Open acquire(DemCatalog.Tile t)
+    {
+        synchronized (this) {
+            if (closed) throw new IllegalStateException("DemMosaic is closed");
+            Open o = open.get(t.path);
+            if (o != null) {
+                o.users++;
+                hits++;
+                return o;
+            }
+        }
+        if (stillFailed(t)) return null;
+
+        // open outside the lock; it can take a while for big tiles
+        MaxarDtmReader r;
+        try {
+            r = new MaxarDtmReader(t.getFile(), mode);
+        } catch (Exception e) {
+            System.err.println("[DemMosaic] can't open "+t.path+": "+e.getMessage());
+            failed.put(t.path, new Failed(t.getFile()));
+            return null;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                // close() ran while we were opening; don't leave r behind
+                r.close();
+                throw new IllegalStateException("DemMosaic is closed");
+            }
+            Open o = open.get(t.path);
+            if (o != null) {
+                // another thread beat us to it
+                r.close();
+                o.users++;
+                hits++;
+                return o;
+            }
+            o = new Open(t, r);
+            o.users = 1;
+            open.put(t.path, o);
+            opens++;
+            evict(o);
+            return o;
+        }
+    }
+
+    // true if t failed to open and its file hasn't changed since, nor
+    // has failedRetryMillis passed
+
+    private boolean stillFailed(DemCatalog.Tile t)
+    {
+        Failed f = failed.get(t.path);
+        if (f == null) return false;
+        File file = t.getFile();
+        if (file.length() == f.length && file.lastModified() == f.lastModified
+            && System.currentTimeMillis() - f.at < failedRetryMillis) {
+            return true;
+        }
+        failed.remove(t.path, f);
+        return false;
+    }
+
+    private synchronized void release(Open o)
+    {
+        o.users--;
+        if (o.evicted && o.users == 0) o.reader.close();
+        // readers grow as they decode; catch up with that now and then
+        if (++releases % BUDGET_CHECK_EVERY == 0) evict(null);
+    }
+
+    // drop least recently used readers until under budget; keep is the
+    // one just opened and always stays (null: the most recently used)
+
+    private void evict(Open keep)
+    {
+        long total = 0;
+        Open last = null;
+        for (Open o : open.values()) {
+            total += o.reader.getDecodedBytes();
+            last = o;
+        }
+        if (keep == null) keep = last;
+        Iterator<Open> it = open.values().iterator();
+        while (total > maxBytes && it.hasNext()) {
+            Open o = it.next();
+            if (o == keep) continue;
+            it.remove();
+            total -= o.reader.getDecodedBytes();
+            o.evicted = true;
+            evictions++;
+            if (o.users == 0) o.reader.close();
+        }
+    }
+
+    @Override public synchronized void close()
+    {
+        closed = true;
+        for (Open o : open.values()) {
+            o.evicted = true;
+            if (o.users == 0) o.reader.close();
+        }
+        open.clear();
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        String usage = "Usage: java DemMosaic [-mb N] [-mode primitive|mapped|sidecar] <dem dir> [lat lon]...";
+        if (args.length < 1) {
+            System.err.println(usage);
+            System.exit(1);
+        }
+        System.setProperty("slf4j.internal.verbosity", "ERROR");
+        OpenAthenaCore.CacheDir = Paths.get("/");
+        OpenAthenaCore core = new OpenAthenaCore();
+
+        long maxBytes = defaultMaxBytes;
+        MaxarDtmReader.LoadMode mode = MaxarDtmReader.LoadMode.PRIMITIVE;
+        int i = 0;
+        while (i < args.length && args[i].startsWith("-")) {
+            if (args[i].equals("-mb")) maxBytes = Long.parseLong(args[++i]) * 1024 * 1024;
+            else if (args[i].equals("-mode")) mode = MaxarDtmReader.LoadMode.valueOf(args[++i].toUpperCase());
+            i++;
+        }
+        // readers are shared across threads; RASTERS lookups all take
+        // one lock per reader, so it isn't offered here
+        if (mode == MaxarDtmReader.LoadMode.RASTERS) {
+            System.err.println(usage);
+            System.exit(1);
+        }
+
+        DemCatalog cat = DemCatalog.open(new File(args[i++]));
+        try (DemMosaic mosaic = new DemMosaic(cat, maxBytes, mode)) {
+            while (i + 1 < args.length) {
+                double lat = Double.parseDouble(args[i]), lon = Double.parseDouble(args[i+1]);
+                i += 2;
+                long t0 = System.nanoTime();
+                try {
+                    double alt = mosaic.getAltFromLatLon(lat, lon);
+                    long t1 = System.nanoTime();
+                    DemCatalog.Tile best = cat.bestTileAt(lat, lon);
+                    System.out.printf("(%.6f, %.6f): %.3f m (WGS84)  %s  %.1f us%n", lat, lon, alt,
+                                      best == null ? "" : best.getFile().getName(), (t1 - t0) / 1000.0);
+                } catch (RequestedValueOOBException e) {
+                    System.out.printf("(%.6f, %.6f): no coverage%n", lat, lon);
+                }
+            }
+            System.out.println("readers open "+mosaic.getOpenReaders()+", "+(mosaic.getOpenBytes() >> 20)+" MB; opens "
+                               +mosaic.getOpens()+", hits "+mosaic.getHits()+", evictions "+mosaic.getEvictions());
+        }
+    }
+
+} // DemMosaic
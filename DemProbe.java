@@ -0,0 +1,382 @@
+// DemProbe.java
+// header-only DEM metadata: bounds, CRS and vertical datum without decoding rasters
+// javac -cp ".:lib/*" DemProbe.java
+// java -cp ".:lib/*" DemProbe <file or dir>...
+//
+// Constructing a MaxarDtmReader reads the whole TIFF, decodes the rasters,
+// sets up CRS transforms and loads a geoid just to learn a tile's extent.
+// DemProbe reads only the first IFD (TiffIfd) and the handful of tags the
+// reader uses for georeferencing
+//   ImageWidth/Length, ModelPixelScale 33550, ModelTiepoint 33922,
+//   ModelTransformation 34264, GeoKeyDirectory 34735, GDAL_METADATA 42112
+// or, for DTED, the 80 byte UHL record.  It follows the same rules as
+// MaxarDtmReader (GDAL GeoTransform, then scale+tiepoint, then 4x4 matrix;
+// GeoKeys before GDAL metadata for CRS; same center anchoring) so bounds
+// agree with what the reader would report.  Projected tiles have their
+// corners taken to WGS84 with proj4j; nothing else is initialized.
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.locationtech.proj4j.CRSFactory;
+import org.locationtech.proj4j.CoordinateReferenceSystem;
+import org.locationtech.proj4j.CoordinateTransform;
+import org.locationtech.proj4j.CoordinateTransformFactory;
+import org.locationtech.proj4j.ProjCoordinate;
+
+public final class DemProbe
+{
+    public final String path;
+    public final long size, lastModified;
+    public final boolean isDTED;
+    public final boolean isMaxar;          // has GDAL metadata, as MaxarDtmReader decides
+    public final int width, height;
+    public final String horizontalCRS;     // e.g. "EPSG:4326", null if not found
+    public final String verticalCRS;       // e.g. "EPSG:3855", "EPSG:0" if unknown
+    public final boolean centerAnchored;
+    public final String gdalMetadata;      // GDAL_METADATA XML, null if none
+
+    // corner-based affine, GDAL order: x = a0 + a1*col + a2*row, y = b0 + b1*col + b2*row
+    private final double a0, a1, a2, b0, b1, b2;
+
+    // WGS84 bounds in degrees; NaN if the tile isn't georeferenced
+    public final double s, w, n, e;
+
+    private static final int KEY_GeographicType = 2048;
+    private static final int KEY_ProjectedCSType = 3072;
+    private static final int KEY_VerticalCSType = 4096;
+    private static final int UHL_LENGTH = 80;
+
+    private static final Pattern GDAL_EPSG = Pattern.compile("EPSG\\s*:\\s*(\\d{3,6})");
+    private static final Pattern GDAL_VDATUM =
+        Pattern.compile("vertical[-_ ]?datum[^>]*>\\s*([^<\\s]+)", Pattern.CASE_INSENSITIVE);
+
+    private DemProbe(File f, boolean isDTED, boolean isMaxar, int width, int height,
+                     String horizontalCRS, String verticalCRS, boolean centerAnchored, String gdalMetadata,
+                     double[] affine, double s, double w, double n, double e)
+    {
+        this.path = f.getPath();
+        this.size = f.length();
+        this.lastModified = f.lastModified();
+        this.isDTED = isDTED;
+        this.isMaxar = isMaxar;
+        this.width = width;
+        this.height = height;
+        this.horizontalCRS = horizontalCRS;
+        this.verticalCRS = verticalCRS;
+        this.centerAnchored = centerAnchored;
+        this.gdalMetadata = gdalMetadata;
+        this.a0 = affine[0]; this.a1 = affine[1]; this.a2 = affine[2];
+        this.b0 = affine[3]; this.b1 = affine[4]; this.b2 = affine[5];
+        this.s = s; this.w = w; this.n = n; this.e = e;
+    }
+
+    public File getFile() { return new File(path); }
+    public boolean isGeoreferenced() { return !Double.isNaN(s); }
+
+    // GDAL-style geotransform {a0, a1, a2, b0, b1, b2}; a copy
+    public double[] getGeoTransform() { return new double[] { a0, a1, a2, b0, b1, b2 }; }
+
+    // rough meters per pixel in y, for ranking tiles of the same dataset
+    public double getResolutionMeters()
+    {
+        if (!isGeoreferenced() || height <= 0) return Double.NaN;
+        return (n - s) * 111_320.0 / height;
+    }
+
+    // probe a DTED or GeoTIFF file; IOException if it's neither
+
+    public static DemProbe probe(File f) throws IOException
+    {
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            byte[] uhl = new byte[UHL_LENGTH];
+            int got = ch.read(ByteBuffer.wrap(uhl), 0);
+            if (got >= 3 && uhl[0] == 'U' && uhl[1] == 'H' && uhl[2] == 'L') {
+                if (got < UHL_LENGTH) throw new IOException("Truncated DTED UHL record");
+                return probeDted(f, uhl);
+            }
+            return probeTiff(f, TiffIfd.readFirst(ch));
+        }
+    }
+
+    // DTED User Header Label: origin is the SW post, intervals in tenths
+    // of arc seconds, then number of longitude lines and latitude points
+
+    private static DemProbe probeDted(File f, byte[] uhl) throws IOException
+    {
+        double lon0 = dms(uhl, 4, 3), lat0 = dms(uhl, 12, 3);
+        double lonInt = field(uhl, 20, 4) / 36000.0, latInt = field(uhl, 24, 4) / 36000.0;
+        int cols = (int) field(uhl, 47, 4), rows = (int) field(uhl, 51, 4);
+        if (cols < 2 || rows < 2 || lonInt <= 0 || latInt <= 0) throw new IOException("Bad DTED UHL record");
+
+        double w = lon0, s = lat0;
+        double e = lon0 + (cols - 1) * lonInt, n = lat0 + (rows - 1) * latInt;
+        // posts are points; affine maps post centers like the reader's DTED path
+        double[] affine = { w - 0.5 * lonInt, lonInt, 0, n + 0.5 * latInt, 0, -latInt };
+        return new DemProbe(f, true, false, cols, rows, "EPSG:4326", "EPSG:5773", true, null, affine, s, w, n, e);
+    }
+
+    private static DemProbe probeTiff(File f, TiffIfd ifd) throws IOException
+    {
+        int width = (int) ifd.getLong(TiffIfd.TAG_ImageWidth, 0);
+        int height = (int) ifd.getLong(TiffIfd.TAG_ImageLength, 0);
+        String gdal = ifd.getAscii(TiffIfd.TAG_GDAL_METADATA);
+        if (gdal != null && !gdal.contains("<GDALMetadata>")) gdal = null;
+        int[] gk = ifd.getShorts(TiffIfd.TAG_GeoKeyDirectory);
+        if (!looksLikeGeoKeyDirectory(gk)) gk = null;
+        double[] scale = ifd.getDoubles(TiffIfd.TAG_ModelPixelScale);
+        double[] tie = ifd.getDoubles(TiffIfd.TAG_ModelTiepoint);
+        double[] m16 = ifd.getDoubles(TiffIfd.TAG_ModelTransformation);
+
+        Boolean areaOrPoint = areaOrPoint(ifd, gdal);
+        boolean pixelIsPoint = areaOrPoint != null && areaOrPoint;
+        boolean centerTie = tie != null && tie.length >= 2 && near(tie[0], 0.5) && near(tie[1], 0.5);
+        boolean centerAnchored = (areaOrPoint != null) ? areaOrPoint : centerTie;
+
+        String hcrs = horizontalCRS(gk, gdal);
+        String vcrs = verticalCRS(gk, gdal);
+        double[] affine = affine(gdal, scale, tie, m16, pixelIsPoint || centerTie);
+
+        double s = Double.NaN, w = Double.NaN, n = Double.NaN, e = Double.NaN;
+        if (affine != null && hcrs != null && width > 0 && height > 0) {
+            double[] b = wgs84Bounds(affine, width, height, centerAnchored, hcrs);
+            if (b != null) { w = b[0]; s = b[1]; e = b[2]; n = b[3]; }
+        }
+        if (affine == null) affine = new double[] { Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN };
+        return new DemProbe(f, false, gdal != null, width, height, hcrs, vcrs, centerAnchored, gdal, affine, s, w, n, e);
+    }
+
+    // same preference order as MaxarDtmReader.tryBuildAffineRobust
+
+    private static double[] affine(String gdal, double[] scale, double[] tie, double[] m16, boolean center)
+    {
+        double[] gt = gdalGeoTransform(gdal);
+        if (gt != null) return gt;
+
+        if (scale != null && scale.length >= 2 && tie != null && tie.length >= 6) {
+            double sx = scale[0], sy = scale[1];
+            double originX = tie[3] - tie[0] * sx;
+            double originY = tie[4] + tie[1] * sy;
+            if (center) {
+                originX -= 0.5 * sx;
+                originY += 0.5 * sy;
+            }
+            return new double[] { originX, sx, 0.0, originY, 0.0, -sy };
+        }
+
+        if (m16 != null && m16.length == 16) {
+            double a1 = m16[0], a2 = m16[1], a0 = m16[3];
+            double b1 = m16[4], b2 = m16[5], b0 = m16[7];
+            return new double[] { a0 - 0.5 * a1 - 0.5 * a2, a1, a2, b0 - 0.5 * b1 - 0.5 * b2, b1, b2 };
+        }
+        return null;
+    }
+
+    // corners as MaxarDtmReader.getBoundsDataCRS picks them, then to WGS84;
+    // returns {west, south, east, north}
+
+    private static double[] wgs84Bounds(double[] a, int width, int height, boolean center, String hcrs)
+    {
+        double x0 = center ? -0.5 : 0.0, y0 = x0;
+        double x1 = center ? width - 0.5 : width, y1 = center ? height - 0.5 : height;
+        double[][] px = { { x0, y0 }, { x1, y0 }, { x0, y1 }, { x1, y1 } };
+
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (double[] p : px) {
+            double x = a[0] + a[1] * p[0] + a[2] * p[1];
+            double y = a[3] + a[4] * p[0] + a[5] * p[1];
+            minX = Math.min(minX, x); maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y); maxY = Math.max(maxY, y);
+        }
+        if (hcrs.equals("EPSG:4326")) return new double[] { minX, minY, maxX, maxY };
+
+        CoordinateTransform toWgs;
+        try {
+            toWgs = toWgs84(hcrs);
+        } catch (RuntimeException ex) {
+            System.err.println("[DemProbe] unknown CRS "+hcrs+": "+ex.getMessage());
+            return null;
+        }
+        double[][] xy = { { minX, minY }, { minX, maxY }, { maxX, minY }, { maxX, maxY } };
+        double west = Double.POSITIVE_INFINITY, east = Double.NEGATIVE_INFINITY;
+        double south = Double.POSITIVE_INFINITY, north = Double.NEGATIVE_INFINITY;
+        ProjCoordinate src = new ProjCoordinate(), dst = new ProjCoordinate();
+        for (double[] p : xy) {
+            src.x = p[0]; src.y = p[1];
+            toWgs.transform(src, dst);
+            west = Math.min(west, dst.x); east = Math.max(east, dst.x);
+            south = Math.min(south, dst.y); north = Math.max(north, dst.y);
+        }
+        return new double[] { west, south, east, north };
+    }
+
+    private static CoordinateTransform toWgs84(String hcrs)
+    {
+        CRSFactory cf = new CRSFactory();
+        // CRS objects themselves aren't shared between threads (see
+        // MaxarDtmReader.copyCrs); EpsgParams keeps only the parameters
+        CoordinateReferenceSystem data = EpsgParams.create(cf, hcrs);
+        CoordinateReferenceSystem wgs = EpsgParams.create(cf, "EPSG:4326");
+        return new CoordinateTransformFactory().createTransform(data, wgs);
+    }
+
+    // GeoKeys ProjectedCSType/GeographicType, then EPSG:n in GDAL metadata
+
+    private static String horizontalCRS(int[] gk, String gdal)
+    {
+        int v = geoKey(gk, KEY_ProjectedCSType);
+        if (v < 0) v = geoKey(gk, KEY_GeographicType);
+        if (v >= 0) return "EPSG:" + v;
+        if (gdal != null) {
+            Matcher m = GDAL_EPSG.matcher(gdal);
+            if (m.find()) return "EPSG:" + m.group(1);
+        }
+        return null;
+    }
+
+    // VerticalCSType GeoKey, then Maxar/Vricon GDAL hints; "EPSG:0" means
+    // go by the dataset type as MaxarDtmReader does
+
+    private static String verticalCRS(int[] gk, String gdal)
+    {
+        int v = geoKey(gk, KEY_VerticalCSType);
+        if (v >= 0) return "EPSG:" + v;
+        if (gdal == null) return "EPSG:0";
+
+        if (gdal.toLowerCase().contains("vertical-datum")) {
+            Matcher m = GDAL_VDATUM.matcher(gdal);
+            if (m.find()) {
+                String d = m.group(1).toUpperCase();
+                if (d.contains("EGM2008")) return "EPSG:3855";
+                if (d.contains("EGM96")) return "EPSG:5773";
+                if (d.contains("NAVD88")) return "EPSG:5703";
+                if (d.contains("ELLIPSOID")) {
+                    String r = metadataItem(gdal, "R3DM_DATUM_REALIZATION");
+                    if (r == null) r = metadataItem(gdal, "DATUM_REALIZATION");
+                    if (r != null && r.contains("G1674")) return "EPSG:4979";
+                }
+            }
+        }
+        String r = metadataItem(gdal, "R3DM_DATUM_REALIZATION");
+        if (r != null && r.contains("G1674")) return "EPSG:4979";
+        return "EPSG:0";
+    }
+
+    // first inline value for keyId, or -1
+
+    private static int geoKey(int[] gk, int keyId)
+    {
+        if (gk == null) return -1;
+        int numKeys = gk[3], idx = 4;
+        for (int k = 0; k < numKeys && (idx + 3) < gk.length; k++, idx += 4) {
+            if (gk[idx] == keyId && gk[idx+1] == 0 && gk[idx+2] == 1) return gk[idx+3];
+        }
+        return -1;
+    }
+
+    private static boolean looksLikeGeoKeyDirectory(int[] s)
+    {
+        return s != null && s.length >= 4 && s[0] == 1 && s[1] == 1 && s[2] == 0;
+    }
+
+    // AREA_OR_POINT from GDAL metadata, else from any ASCII tag; null if unsaid
+
+    private static Boolean areaOrPoint(TiffIfd ifd, String gdal) throws IOException
+    {
+        String v = metadataItem(gdal, "AREA_OR_POINT");
+        if (v != null) return v.trim().equalsIgnoreCase("Point");
+        for (TiffIfd.Entry en : ifd.getEntries().values()) {
+            if (en.type != 2 || en.count > 65536) continue;
+            String u = ifd.getAscii(en.tag).toUpperCase();
+            if (u.contains("AREA_OR_POINT=POINT")) return Boolean.TRUE;
+            if (u.contains("AREA_OR_POINT=AREA")) return Boolean.FALSE;
+        }
+        return null;
+    }
+
+    private static double[] gdalGeoTransform(String gdal)
+    {
+        if (gdal == null) return null;
+        int i0 = gdal.indexOf("<GeoTransform>"), i1 = gdal.indexOf("</GeoTransform>");
+        if (i0 < 0 || i1 <= i0) return null;
+        String[] toks = gdal.substring(i0 + 14, i1).trim().split("[,\\s]+");
+        if (toks.length < 6) return null;
+        double[] gt = new double[6];
+        try {
+            for (int i = 0; i < 6; i++) gt[i] = Double.parseDouble(toks[i]);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+        return gt;
+    }
+
+    private static String metadataItem(String gdal, String name)
+    {
+        if (gdal == null) return null;
+        Matcher m = Pattern.compile("<Item\\s+name=\""+Pattern.quote(name)+"\"[^>]*>(.*?)</Item>",
+                                    Pattern.CASE_INSENSITIVE | Pattern.DOTALL).matcher(gdal);
+        return m.find() ? m.group(1).trim() : null;
+    }
+
+    private static boolean near(double v, double tgt) { return Math.abs(v - tgt) < 1e-9; }
+
+    // DDDMMSSH at off, ddd digits of degrees
+
+    private static double dms(byte[] b, int off, int ddd) throws IOException
+    {
+        double deg = field(b, off, ddd), min = field(b, off + ddd, 2), sec = field(b, off + ddd + 2, 2);
+        char h = (char) b[off + ddd + 4];
+        double v = deg + min / 60.0 + sec / 3600.0;
+        return (h == 'S' || h == 'W') ? -v : v;
+    }
+
+    private static long field(byte[] b, int off, int len) throws IOException
+    {
+        String s = new String(b, off, len, StandardCharsets.US_ASCII).trim();
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException ex) {
+            throw new IOException("Bad DTED UHL field '"+s+"'");
+        }
+    }
+
+    @Override public String toString()
+    {
+        return String.format("%s %dx%d %s vert %s%s  S %.6f W %.6f N %.6f E %.6f", new File(path).getName(),
+                             width, height, horizontalCRS, verticalCRS, isMaxar ? " maxar" : (isDTED ? " dted" : ""),
+                             s, w, n, e);
+    }
+
+    public static void main(String[] args)
+    {
+        if (args.length < 1) {
+            System.err.println("Usage: java DemProbe <file or dir>...");
+            System.exit(1);
+        }
+        for (String a : args) {
+            File f = new File(a);
+            File[] files = f.isDirectory() ? f.listFiles() : new File[] { f };
+            if (files == null) continue;
+            java.util.Arrays.sort(files);
+            for (File g : files) {
+                if (!g.isFile()) continue;
+                long t0 = System.nanoTime();
+                try {
+                    DemProbe p = probe(g);
+                    long t1 = System.nanoTime();
+                    System.out.printf("%s  %.1f us%n", p, (t1 - t0) / 1000.0);
+                } catch (IOException ex) {
+                    System.out.println(g.getName()+": not a DEM ("+ex.getMessage()+")");
+                }
+            }
+        }
+    }
+
+} // DemProbe
@@ -0,0 +1,438 @@
+// DemScan.java
+// parallel catalog of a DEM directory from headers only
+// javac -cp ".:lib/*" DemScan.java
+// java -cp ".:lib/*" DemScan [-t threads] [-o out.jsonl] [-nohash] [-full] <dem dir>
+//
+// Walks a DEM directory (recursively), probes each DTED or GeoTIFF
+// header with DemProbe on a bounded thread pool and writes one JSON
+// object per file:
+//   {"file":"DEM_LatLon_...cop30","size":..,"mtime":..,"dataset":"cop30",
+//    "width":..,"height":..,"s":..,"w":..,"n":..,"e":..,"resolution":..,
+//    "hcrs":"EPSG:4326","vcrs":"EPSG:0","sha256":"..."}
+// Files that can't be probed get an "error" field instead so they aren't
+// retried every scan.  Paths are relative to the directory.
+//
+// By default the catalog is <dir>/.demscan.jsonl.  A rescan reads the
+// previous catalog and reuses every line whose size and mtime still
+// match, so only new or changed files are probed and hashed; -full
+// ignores it.  Hashing (SHA-256 of the whole file) is the slow part on
+// a first scan; -nohash leaves it out.
+//
+// DemCatalog.scan reads the same file: a DEM whose bounds aren't in its
+// name is taken from its line here (size and mtime matching) rather than
+// probed again, so running DemScan over a big cache also makes the next
+// DemCatalog rebuild cheap.
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class DemScan
+{
+    public static final String INDEX_NAME = ".demscan.jsonl";
+    public static int defaultThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private static final int HASH_BUFFER = 1 << 20;
+
+    // one catalog line; NaN/null where the header didn't say
+
+    public static final class Entry {
+        public final String file;
+        public final long size, lastModified;
+        public final String dataset;
+        public final int width, height;
+        public final double s, w, n, e, resolution;
+        public final String horizontalCRS, verticalCRS;
+        public final String sha256;
+        public final String error;
+
+        Entry(String file, long size, long lastModified, String dataset, int width, int height,
+              double s, double w, double n, double e, double resolution,
+              String horizontalCRS, String verticalCRS, String sha256, String error) {
+            this.file = file; this.size = size; this.lastModified = lastModified;
+            this.dataset = dataset; this.width = width; this.height = height;
+            this.s = s; this.w = w; this.n = n; this.e = e; this.resolution = resolution;
+            this.horizontalCRS = horizontalCRS; this.verticalCRS = verticalCRS;
+            this.sha256 = sha256; this.error = error;
+        }
+
+        public String toJson()
+        {
+            StringBuilder sb = new StringBuilder(256);
+            sb.append('{');
+            field(sb, "file", file);
+            field(sb, "size", size);
+            field(sb, "mtime", lastModified);
+            if (error != null) {
+                field(sb, "error", error);
+            }
+            else {
+                field(sb, "dataset", dataset);
+                field(sb, "width", width);
+                field(sb, "height", height);
+                field(sb, "s", s);
+                field(sb, "w", w);
+                field(sb, "n", n);
+                field(sb, "e", e);
+                field(sb, "resolution", resolution);
+                field(sb, "hcrs", horizontalCRS);
+                field(sb, "vcrs", verticalCRS);
+            }
+            if (sha256 != null) field(sb, "sha256", sha256);
+            sb.setLength(sb.length() - 1);
+            return sb.append('}').toString();
+        }
+
+        static Entry fromJson(String line) throws IOException
+        {
+            Map<String,Object> m = parseFlatObject(line);
+            return new Entry((String) m.get("file"), num(m, "size", 0).longValue(), num(m, "mtime", 0).longValue(),
+                             (String) m.get("dataset"), num(m, "width", 0).intValue(), num(m, "height", 0).intValue(),
+                             num(m, "s", Double.NaN).doubleValue(), num(m, "w", Double.NaN).doubleValue(),
+                             num(m, "n", Double.NaN).doubleValue(), num(m, "e", Double.NaN).doubleValue(),
+                             num(m, "resolution", Double.NaN).doubleValue(),
+                             (String) m.get("hcrs"), (String) m.get("vcrs"), (String) m.get("sha256"),
+                             (String) m.get("error"));
+        }
+
+        private static Number num(Map<String,Object> m, String k, double dflt)
+        {
+            Object v = m.get(k);
+            return (v instanceof Number) ? (Number) v : Double.valueOf(dflt);
+        }
+    }
+
+    // counts from the last scan()
+    public static final class Stats {
+        public int probed, reused, failed;
+        public long millis;
+        @Override public String toString()
+        {
+            return "probed "+probed+", reused "+reused+", failed "+failed+" in "+millis+" ms";
+        }
+    }
+
+    // scan dir, reusing entries from previous (keyed by file) whose size and
+    // mtime match; results are sorted by file
+
+    public static List<Entry> scan(File dir, Map<String,Entry> previous, int threads, boolean hash, Stats stats)
+        throws IOException
+    {
+        long t0 = System.currentTimeMillis();
+        Path root = dir.toPath();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile)
+                .filter(p -> isCandidate(p.getFileName().toString()))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+
+        List<Entry> out = new ArrayList<>(files.size());
+        List<Future<Entry>> pending = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            for (Path p : files) {
+                String rel = root.relativize(p).toString();
+                File f = p.toFile();
+                Entry old = previous.get(rel);
+                if (old != null && old.size == f.length() && old.lastModified == f.lastModified()
+                    && (!hash || old.sha256 != null)) {
+                    pending.add(CompletableFuture.completedFuture(old));
+                    stats.reused++;
+                }
+                else {
+                    pending.add(pool.submit(() -> probe(f, rel, hash)));
+                    stats.probed++;
+                }
+            }
+            for (Future<Entry> fu : pending) {
+                Entry en = fu.get();
+                if (en.error != null) stats.failed++;
+                out.add(en);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Scan interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Scan failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        stats.millis = System.currentTimeMillis() - t0;
+        return out;
+    }
+
+    // header probe plus optional hash; never throws, failures are recorded
+
+    static Entry probe(File f, String rel, boolean hash)
+    {
+        long size = f.length(), mtime = f.lastModified();
+        String sha = null;
+        try {
+            if (hash) sha = sha256(f);
+            DemProbe p = DemProbe.probe(f);
+            String name = f.getName();
+            String ext = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+            String dataset = p.isDTED ? "dted" : (p.isMaxar ? "max" : ext);
+            return new Entry(rel, size, mtime, dataset, p.width, p.height, p.s, p.w, p.n, p.e,
+                             p.getResolutionMeters(), p.horizontalCRS, p.verticalCRS, sha, null);
+        } catch (IOException | RuntimeException e) {
+            return new Entry(rel, size, mtime, null, 0, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN,
+                             Double.NaN, null, null, sha, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private static boolean isCandidate(String name)
+    {
+        if (name.startsWith(".")) return false;
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) return false;
+        return DemCatalog.looksLikeDemExtension(name.substring(dot + 1));
+    }
+
+    static String sha256(File f) throws IOException
+    {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        ByteBuffer buf = ByteBuffer.allocateDirect(HASH_BUFFER);
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            while (ch.read(buf) >= 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
+            }
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : md.digest()) sb.append(String.format("%02x", b & 0xFF));
+        return sb.toString();
+    }
+
+    // ---- JSON lines in and out
+
+    // previous catalog keyed by file; empty if missing or unreadable
+
+    public static Map<String,Entry> read(File jsonl)
+    {
+        Map<String,Entry> map = new HashMap<>();
+        if (!jsonl.isFile()) return map;
+        try (BufferedReader in = Files.newBufferedReader(jsonl.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) continue;
+                Entry en = Entry.fromJson(line);
+                if (en.file != null) map.put(en.file, en);
+            }
+        } catch (IOException e) {
+            System.err.println("[DemScan] ignoring bad catalog "+jsonl+": "+e.getMessage());
+            map.clear();
+        }
+        return map;
+    }
+
+    // write to a temp file and rename so readers never see half a catalog
+
+    public static void write(List<Entry> entries, File jsonl) throws IOException
+    {
+        File tmp = new File(jsonl.getPath() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+            for (Entry en : entries) {
+                out.write(en.toJson());
+                out.write('\n');
+            }
+        }
+        Files.move(tmp.toPath(), jsonl.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void field(StringBuilder sb, String k, String v)
+    {
+        sb.append('"').append(k).append("\":");
+        if (v == null) {
+            sb.append("null,");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            switch (c) {
+            case '"':  sb.append("\\\""); break;
+            case '\\': sb.append("\\\\"); break;
+            case '\n': sb.append("\\n"); break;
+            case '\r': sb.append("\\r"); break;
+            case '\t': sb.append("\\t"); break;
+            default:
+                if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                else sb.append(c);
+            }
+        }
+        sb.append("\",");
+    }
+
+    private static void field(StringBuilder sb, String k, long v)
+    {
+        sb.append('"').append(k).append("\":").append(v).append(',');
+    }
+
+    // JSON has no NaN; write null
+
+    private static void field(StringBuilder sb, String k, double v)
+    {
+        sb.append('"').append(k).append("\":");
+        if (Double.isNaN(v) || Double.isInfinite(v)) sb.append("null");
+        else sb.append(v);
+        sb.append(',');
+    }
+
+    // just enough JSON for the lines we write: one flat object of
+    // strings, numbers, booleans and nulls.  DemCatalog reads the catalog
+    // through read(); bench.BenchGate has its own parser for JMH's nested
+    // output since a named package can't import from ours
+
+    static Map<String,Object> parseFlatObject(String s) throws IOException
+    {
+        Map<String,Object> m = new HashMap<>();
+        int[] pos = { skipWs(s, 0) };
+        expect(s, pos, '{');
+        if (peek(s, pos) == '}') return m;
+        while (true) {
+            String key = parseString(s, pos);
+            expect(s, pos, ':');
+            char c = peek(s, pos);
+            Object v;
+            if (c == '"') {
+                v = parseString(s, pos);
+            }
+            else {
+                int i = pos[0];
+                while (i < s.length() && ",} \t".indexOf(s.charAt(i)) < 0) i++;
+                String tok = s.substring(pos[0], i);
+                pos[0] = i;
+                if (tok.equals("null")) v = null;
+                else if (tok.equals("true") || tok.equals("false")) v = Boolean.valueOf(tok);
+                else {
+                    try {
+                        v = (tok.indexOf('.') < 0 && tok.indexOf('e') < 0 && tok.indexOf('E') < 0)
+                            ? (Object) Long.valueOf(tok) : (Object) Double.valueOf(tok);
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Bad JSON value '"+tok+"'");
+                    }
+                }
+            }
+            m.put(key, v);
+            c = peek(s, pos);
+            pos[0]++;
+            if (c == '}') return m;
+            if (c != ',') throw new IOException("Bad JSON at "+pos[0]);
+        }
+    }
+
+    private static String parseString(String s, int[] pos) throws IOException
+    {
+        expect(s, pos, '"');
+        StringBuilder sb = new StringBuilder();
+        int i = pos[0];
+        while (i < s.length()) {
+            char c = s.charAt(i++);
+            if (c == '"') {
+                pos[0] = i;
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (i >= s.length()) break;
+            char x = s.charAt(i++);
+            switch (x) {
+            case 'n': sb.append('\n'); break;
+            case 'r': sb.append('\r'); break;
+            case 't': sb.append('\t'); break;
+            case 'b': sb.append('\b'); break;
+            case 'f': sb.append('\f'); break;
+            case 'u':
+                if (i + 4 > s.length()) throw new IOException("Bad JSON escape");
+                sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                i += 4;
+                break;
+            default: sb.append(x);
+            }
+        }
+        throw new IOException("Unterminated JSON string");
+    }
+
+    private static void expect(String s, int[] pos, char c) throws IOException
+    {
+        if (peek(s, pos) != c) throw new IOException("Expected '"+c+"' at "+pos[0]);
+        pos[0]++;
+    }
+
+    // next non-blank char, leaving pos on it
+    private static char peek(String s, int[] pos)
+    {
+        pos[0] = skipWs(s, pos[0]);
+        return pos[0] < s.length() ? s.charAt(pos[0]) : 0;
+    }
+
+    private static int skipWs(String s, int i)
+    {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        return i;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int threads = defaultThreads;
+        File out = null;
+        boolean hash = true, full = false;
+        int i = 0;
+        while (i < args.length && args[i].startsWith("-")) {
+            if (args[i].equals("-t")) threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-o")) out = new File(args[++i]);
+            else if (args[i].equals("-nohash")) hash = false;
+            else if (args[i].equals("-full")) full = true;
+            i++;
+        }
+        if (i >= args.length) {
+            System.err.println("Usage: java DemScan [-t threads] [-o out.jsonl] [-nohash] [-full] <dem dir>");
+            System.exit(1);
+        }
+        File dir = new File(args[i]);
+        if (!dir.isDirectory()) {
+            System.err.println("Not a directory: "+dir);
+            System.exit(1);
+        }
+        if (out == null) out = new File(dir, INDEX_NAME);
+
+        Map<String,Entry> previous = full ? new HashMap<>() : read(out);
+        Stats stats = new Stats();
+        List<Entry> entries = scan(dir, previous, threads, hash, stats);
+        write(entries, out);
+        System.out.println(entries.size()+" files -> "+out+"; "+stats+" ("+threads+" threads)");
+    }
+
+} // DemScan
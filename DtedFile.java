@@ -0,0 +1,311 @@
+// DtedFile.java
+// memory-mapped DTED reader: UHL/DSI/ACC headers and posts by index
+// javac DtedFile.java
+// java DtedFile <file.dt2> [lat lon]...
+//
+// dem4j's FileBasedDTED allocates a Point per query and seeks through a
+// shared RandomAccessFile for every post, so each IDW lookup cost four
+// synchronized file reads.  This class maps the whole file once, checks
+// every data record's sentinel and checksum at open, and afterwards
+// reads posts straight out of the mapping with no allocation or locking;
+// one instance can be shared by many threads.
+//
+// Layout (MIL-PRF-89020B):
+//      0  UHL  80 bytes   origin, intervals, counts
+//     80  DSI  648 bytes  product level, datums
+//    728  ACC  2700 bytes accuracy
+//   3428  data records, one per longitude line, west to east:
+//           1  sentinel 0xAA
+//           3  data block count
+//           2  longitude count
+//           2  latitude count
+//           2 * rows  elevations, south to north, signed magnitude
+//           4  checksum: sum of the preceding bytes of the record
+//
+// Elevations are meters above EGM96 (DSI says "E96").  Voids (-32767)
+// read as NaN.
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+public final class DtedFile implements AutoCloseable
+{
+    // set false to skip checksum validation at open (sentinels are still checked)
+    public static boolean verifyChecksums = true;
+
+    public static final int UHL_LENGTH = 80;
+    public static final int DSI_LENGTH = 648;
+    public static final int ACC_LENGTH = 2700;
+    public static final int DATA_OFFSET = UHL_LENGTH + DSI_LENGTH + ACC_LENGTH;
+    private static final int RECORD_HEADER = 8;
+    private static final int SENTINEL = 0xAA;
+    private static final int VOID = -32767;
+
+    private final File file;
+    private final FileChannel ch;
+    private final MappedByteBuffer map;
+
+    private final double south, west;           // origin, SW post
+    private final double latInterval, lonInterval; // degrees
+    private final int rows, cols;               // latitude points, longitude lines
+    private final int recordLength;
+    private final int level;
+    private final String verticalDatum, horizontalDatum;
+    private final int absVerticalAccuracy;     // meters, -1 if NA
+
+    // per cell row: cos(mid-cell latitude) * lonInterval / latInterval, the
+    // width of a cell in units of its height, for planar IDW
+    private final double[] cellAspect;
+    // 0.1 m (the IDW exact-hit distance) in units of latInterval, squared
+    private final double exactHit2;
+    private static final double METERS_PER_DEGREE = 6371000.0 * Math.PI / 180.0;
+
+    public DtedFile(File file) throws IOException
+    {
+        this.file = file;
+        this.ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long len = ch.size();
+            if (len < DATA_OFFSET) throw new IOException("Not a DTED file (too short): "+file);
+            if (len > Integer.MAX_VALUE) throw new IOException("DTED file too large: "+file);
+            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, len);
+            map.order(ByteOrder.BIG_ENDIAN);
+
+            if (!ascii(0, 3).equals("UHL")) throw new IOException("Not a DTED file (no UHL): "+file);
+            west = dms(4, 3);
+            south = dms(12, 3);
+            lonInterval = number(20, 4) / 36000.0;
+            latInterval = number(24, 4) / 36000.0;
+            cols = number(47, 4);
+            rows = number(51, 4);
+            if (cols < 2 || rows < 2 || lonInterval <= 0 || latInterval <= 0) {
+                throw new IOException("Bad DTED UHL record: "+file);
+            }
+
+            int dsi = UHL_LENGTH;
+            if (!ascii(dsi, 3).equals("DSI")) throw new IOException("Bad DTED DSI record: "+file);
+            level = parseLevel(ascii(dsi + 59, 5), latInterval);
+            verticalDatum = ascii(dsi + 141, 3).trim();
+            horizontalDatum = ascii(dsi + 144, 5).trim();
+
+            int acc = UHL_LENGTH + DSI_LENGTH;
+            if (!ascii(acc, 3).equals("ACC")) throw new IOException("Bad DTED ACC record: "+file);
+            absVerticalAccuracy = optionalNumber(acc + 7, 4);
+
+            recordLength = RECORD_HEADER + 2 * rows + 4;
+            if (DATA_OFFSET + (long) recordLength * cols > len) {
+                throw new IOException("Truncated DTED data records: "+file);
+            }
+            verifyRecords();
+
+            cellAspect = new double[rows - 1];
+            for (int r = 0; r < rows - 1; r++) {
+                double midLat = south + (r + 0.5) * latInterval;
+                cellAspect[r] = Math.cos(Math.toRadians(midLat)) * lonInterval / latInterval;
+            }
+            double hit = 0.1 / (latInterval * METERS_PER_DEGREE);
+            exactHit2 = hit * hit;
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    public File getFile() { return file; }
+    public int getLevel() { return level; }
+    public int getRows() { return rows; }
+    public int getColumns() { return cols; }
+    public double getLatitudeInterval() { return latInterval; }
+    public double getLongitudeInterval() { return lonInterval; }
+    public double getSouth() { return south; }
+    public double getWest() { return west; }
+    public double getNorth() { return south + (rows - 1) * latInterval; }
+    public double getEast() { return west + (cols - 1) * lonInterval; }
+    public String getVerticalDatum() { return verticalDatum; }
+    public String getHorizontalDatum() { return horizontalDatum; }
+    public int getAbsVerticalAccuracy() { return absVerticalAccuracy; }
+
+    // elevation of post (col, row), col west to east and row south to
+    // north from 0; NaN for voids
+
+    public double post(int col, int row)
+    {
+        if (col < 0 || col >= cols || row < 0 || row >= rows) {
+            throw new IndexOutOfBoundsException("post "+col+","+row+" outside "+cols+"x"+rows);
+        }
+        int v = map.getShort(DATA_OFFSET + col * recordLength + RECORD_HEADER + 2 * row) & 0xFFFF;
+        int h = (v & 0x8000) != 0 ? -(v & 0x7FFF) : v;
+        return (h == VOID) ? Double.NaN : h;
+    }
+
+    // fractional column/row of lat,lon; outside [0, cols-1] x [0, rows-1]
+    // when off the tile
+
+    public double colOf(double lon) { return (lon - west) / lonInterval; }
+    public double rowOf(double lat) { return (lat - south) / latInterval; }
+
+    public boolean contains(double lat, double lon)
+    {
+        double c = colOf(lon), r = rowOf(lat);
+        return c >= 0 && r >= 0 && c <= cols - 1 && r <= rows - 1;
+    }
+
+    // nearest post; NaN if void or off the tile
+
+    public double nearest(double lat, double lon)
+    {
+        if (!contains(lat, lon)) return Double.NaN;
+        return post((int) Math.round(colOf(lon)), (int) Math.round(rowOf(lat)));
+    }
+
+    // bilinear between the four surrounding posts, renormalized over any
+    // voids; NaN if all four are void or lat,lon is off the tile
+
+    public double bilinear(double lat, double lon)
+    {
+        if (!contains(lat, lon)) return Double.NaN;
+        double c = colOf(lon), r = rowOf(lat);
+        int c0 = Math.min((int) c, cols - 2), r0 = Math.min((int) r, rows - 2);
+        double fx = c - c0, fy = r - r0;
+        double sum = 0, wsum = 0, z, w;
+        if (!Double.isNaN(z = post(c0, r0)))         { w = (1 - fx) * (1 - fy); sum += w * z; wsum += w; }
+        if (!Double.isNaN(z = post(c0 + 1, r0)))     { w = fx * (1 - fy);       sum += w * z; wsum += w; }
+        if (!Double.isNaN(z = post(c0, r0 + 1)))     { w = (1 - fx) * fy;       sum += w * z; wsum += w; }
+        if (!Double.isNaN(z = post(c0 + 1, r0 + 1))) { w = fx * fy;             sum += w * z; wsum += w; }
+        return wsum > 0 ? sum / wsum : Double.NaN;
+    }
+
+    // inverse distance weighting over the four surrounding posts with a
+    // local equirectangular metric: distances are in cell-local units
+    // (x scaled by cos(lat) per row) instead of haversine meters.  Within
+    // one cell that's accurate far below post spacing, and the common
+    // scale cancels in the normalized weights.  weight = d^-power, taken
+    // as exp(-power/2 * log(d^2)) so there's no sqrt.  A post within 0.1 m
+    // is returned as is; voids are left out; NaN if all four are void or
+    // lat,lon is off the tile
+
+    public double idw(double lat, double lon, double power)
+    {
+        if (!contains(lat, lon)) return Double.NaN;
+        double c = colOf(lon), r = rowOf(lat);
+        int c0 = Math.min((int) c, cols - 2), r0 = Math.min((int) r, rows - 2);
+        double fx = (c - c0) * cellAspect[r0], gx = cellAspect[r0] - fx;
+        double fy = r - r0, gy = 1 - fy;
+        double h = -0.5 * power;
+        double sum = 0, wsum = 0;
+        for (int k = 0; k < 4; k++) {
+            int dc = k & 1, dr = k >> 1;
+            double z = post(c0 + dc, r0 + dr);
+            if (Double.isNaN(z)) continue;
+            double dx = (dc == 0) ? fx : gx, dy = (dr == 0) ? fy : gy;
+            double d2 = dx * dx + dy * dy;
+            if (d2 <= exactHit2) return z;
+            double w = Math.exp(h * Math.log(d2));
+            sum += w * z;
+            wsum += w;
+        }
+        return wsum > 0 ? sum / wsum : Double.NaN;
+    }
+
+    @Override public void close() throws IOException
+    {
+        ch.close();
+    }
+
+    // every record once: sentinel, longitude count and checksum
+
+    private void verifyRecords() throws IOException
+    {
+        for (int c = 0; c < cols; c++) {
+            int base = DATA_OFFSET + c * recordLength;
+            if ((map.get(base) & 0xFF) != SENTINEL) {
+                throw new IOException("Bad DTED record sentinel at column "+c+": "+file);
+            }
+            int lonCount = map.getShort(base + 4) & 0xFFFF;
+            if (lonCount != c) {
+                throw new IOException("DTED record "+c+" has longitude count "+lonCount+": "+file);
+            }
+            if (!verifyChecksums) continue;
+            int sum = 0, end = base + recordLength - 4;
+            for (int i = base; i < end; i++) sum += map.get(i) & 0xFF;
+            if (sum != map.getInt(end)) {
+                throw new IOException("DTED checksum mismatch at column "+c+": "+file);
+            }
+        }
+    }
+
+    // "DTED2" in the DSI, else from the latitude interval (30", 3", 1")
+
+    private static int parseLevel(String dsiLevel, double latInterval)
+    {
+        if (dsiLevel.startsWith("DTED") && Character.isDigit(dsiLevel.charAt(4))) {
+            return dsiLevel.charAt(4) - '0';
+        }
+        double arcsec = latInterval * 3600.0;
+        if (arcsec >= 29.5) return 0;
+        if (arcsec >= 2.5) return 1;
+        return 2;
+    }
+
+    private String ascii(int off, int len)
+    {
+        byte[] b = new byte[len];
+        map.get(off, b);
+        return new String(b, StandardCharsets.US_ASCII);
+    }
+
+    private int number(int off, int len) throws IOException
+    {
+        String s = ascii(off, len).trim();
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad DTED header field '"+s+"' at "+off+": "+file);
+        }
+    }
+
+    private int optionalNumber(int off, int len)
+    {
+        try {
+            return Integer.parseInt(ascii(off, len).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // DDDMMSSH with ddd degree digits
+
+    private double dms(int off, int ddd) throws IOException
+    {
+        double v = number(off, ddd) + number(off + ddd, 2) / 60.0 + number(off + ddd + 2, 2) / 3600.0;
+        char h = (char) map.get(off + ddd + 4);
+        return (h == 'S' || h == 'W') ? -v : v;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 1) {
+            System.err.println("Usage: java DtedFile <file.dt2> [lat lon]...");
+            System.exit(1);
+        }
+        long t0 = System.nanoTime();
+        try (DtedFile d = new DtedFile(new File(args[0]))) {
+            long t1 = System.nanoTime();
+            System.out.printf("DTED%d %dx%d  S %.6f W %.6f N %.6f E %.6f  vert %s horiz %s  open %.1f ms%n",
+                              d.getLevel(), d.getColumns(), d.getRows(), d.getSouth(), d.getWest(),
+                              d.getNorth(), d.getEast(), d.getVerticalDatum(), d.getHorizontalDatum(), (t1 - t0) / 1e6);
+            for (int i = 1; i + 1 < args.length; i += 2) {
+                double lat = Double.parseDouble(args[i]), lon = Double.parseDouble(args[i+1]);
+                System.out.printf("(%.6f, %.6f): nearest %.1f  bilinear %.3f  idw %.3f m (EGM96)%n", lat, lon,
+                                  d.nearest(lat, lon), d.bilinear(lat, lon), d.idw(lat, lon, 1.875));
+            }
+        }
+    }
+
+} // DtedFile
@@ -0,0 +1,307 @@
+// ElevationPyramid.java
+// min/max elevation pyramid over a DEM's sample grid for TerrainProfile
+// javac -cp ".:lib/*" ElevationPyramid.java
+// java -cp ".:lib/*" ElevationPyramid [-rebuild] <dem file>...
+//
+// Level 0 holds the min and max sample of each BLOCK x BLOCK cell block
+// (the (BLOCK+1)^2 samples around it, so edges are shared); each level
+// above merges 2x2 blocks of the one below until one block covers the
+// whole grid.  TerrainProfile walks a ray through the coarsest block it
+// clears and only drops to single cells where the ray comes within a
+// block's max, so long shallow rays over low ground skip most cells
+// (maximum-mipmap height field tracing).  Voids (NaN or below -11000)
+// are left out; a block with no terrain has max -Inf and is always
+// skipped.  Values are in the grid's vertical datum; min is rounded
+// down and max up to float.
+//
+// Pyramids are written next to the DEM so a tile is only scanned once:
+// <dem>.pyr for samples in the source datum, <dem>.<epsg>.pyr for samples
+// converted to another one (an ellipsoidal SIDECAR grid), so opening a
+// tile in both modes doesn't make each rewrite the other's pyramid.
+// Layout, little endian:
+//
+//   0  8 bytes  magic "TTPYR01\n"
+//   8  int      grid width (samples)
+//  12  int      grid height
+//  16  long     source file length
+//  24  long     source file lastModified
+//  32  int      vertical EPSG of samples; 0 = same as source
+//  36  int      block (cells, power of 2)
+//  40  int      levels
+//  44  int      reserved
+//  48  float32  min,max pairs per block, level 0 first, row major
+//
+// A pyramid whose header doesn't match the DEM is rebuilt.
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import com.openathena.core.OpenAthenaCore;
+
+public final class ElevationPyramid
+{
+    public static final String EXT = ".pyr";
+    static final byte[] MAGIC = "TTPYR01\n".getBytes(StandardCharsets.US_ASCII);
+    static final int HEADER = 48;
+
+    // cells per side of a level 0 block; must be a power of 2
+    public static int defaultBlock = 8;
+
+    private static final double MIN_TERRAIN = -11000.0;
+
+    private final int gridW, gridH;
+    private final int block, blockShift, levels;
+    private final int[] lw, lh;
+    private final float[][] mm; // per level: min,max per block
+
+    private ElevationPyramid(int gridW, int gridH, int block)
+    {
+        if (block < 1 || Integer.bitCount(block) != 1) {
+            throw new IllegalArgumentException("Pyramid block "+block+" is not a power of 2");
+        }
+        this.gridW = gridW;
+        this.gridH = gridH;
+        this.block = block;
+        this.blockShift = Integer.numberOfTrailingZeros(block);
+        int w = Math.max(1, (gridW - 1 + block - 1) / block);
+        int h = Math.max(1, (gridH - 1 + block - 1) / block);
+        int n = 1;
+        for (int a = w, b = h; a > 1 || b > 1; a = (a + 1) / 2, b = (b + 1) / 2) n++;
+        this.levels = n;
+        this.lw = new int[n];
+        this.lh = new int[n];
+        this.mm = new float[n][];
+        for (int k = 0; k < n; k++) {
+            lw[k] = w;
+            lh[k] = h;
+            mm[k] = new float[2 * w * h];
+            w = (w + 1) / 2;
+            h = (h + 1) / 2;
+        }
+    }
+
+    // scan every sample of g once
+
+    static ElevationPyramid build(TerrainProfile.Grid g, int block)
+    {
+        ElevationPyramid p = new ElevationPyramid(g.width(), g.height(), block);
+        float[] m0 = p.mm[0];
+        int w0 = p.lw[0];
+        for (int by = 0; by < p.lh[0]; by++) {
+            int r0 = by * block, r1 = Math.min(r0 + block, p.gridH - 1);
+            for (int bx = 0; bx < w0; bx++) {
+                int c0 = bx * block, c1 = Math.min(c0 + block, p.gridW - 1);
+                double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+                for (int r = r0; r <= r1; r++) {
+                    for (int c = c0; c <= c1; c++) {
+                        double v = g.sample(c, r);
+                        if (!(v > MIN_TERRAIN)) continue;
+                        if (v < lo) lo = v;
+                        if (v > hi) hi = v;
+                    }
+                }
+                int i = 2 * (by * w0 + bx);
+                m0[i] = roundDown(lo);
+                m0[i + 1] = roundUp(hi);
+            }
+        }
+        for (int k = 1; k < p.levels; k++) {
+            float[] src = p.mm[k - 1], dst = p.mm[k];
+            int sw = p.lw[k - 1], sh = p.lh[k - 1];
+            for (int by = 0; by < p.lh[k]; by++) {
+                for (int bx = 0; bx < p.lw[k]; bx++) {
+                    float lo = Float.POSITIVE_INFINITY, hi = Float.NEGATIVE_INFINITY;
+                    for (int y = 2 * by; y < Math.min(2 * by + 2, sh); y++) {
+                        for (int x = 2 * bx; x < Math.min(2 * bx + 2, sw); x++) {
+                            int i = 2 * (y * sw + x);
+                            lo = Math.min(lo, src[i]);
+                            hi = Math.max(hi, src[i + 1]);
+                        }
+                    }
+                    int i = 2 * (by * p.lw[k] + bx);
+                    dst[i] = lo;
+                    dst[i + 1] = hi;
+                }
+            }
+        }
+        return p;
+    }
+
+    private static float roundDown(double v)
+    {
+        float f = (float) v;
+        return (f > v) ? Math.nextDown(f) : f;
+    }
+
+    private static float roundUp(double v)
+    {
+        float f = (float) v;
+        return (f < v) ? Math.nextUp(f) : f;
+    }
+
+    // the pyramid for dem: read fileFor() if it matches, otherwise build it
+    // from g and try to write it; a DEM in a read-only directory just gets
+    // an in-memory pyramid
+
+    static ElevationPyramid forFile(File dem, TerrainProfile.Grid g, int verticalEpsg)
+    {
+        File f = fileFor(dem, verticalEpsg);
+        try {
+            ElevationPyramid p = read(f, dem, g.width(), g.height(), verticalEpsg);
+            if (p != null) return p;
+        } catch (IOException e) {
+            System.err.println("[ElevationPyramid] Ignoring unreadable "+f+": "+e.getMessage());
+        }
+        ElevationPyramid p = build(g, defaultBlock);
+        try {
+            p.write(f, dem, verticalEpsg);
+        } catch (IOException e) {
+            System.err.println("[ElevationPyramid] Could not write "+f+": "+e.getMessage());
+        }
+        return p;
+    }
+
+    public static File fileFor(File dem, int verticalEpsg)
+    {
+        return new File(dem.getPath() + (verticalEpsg != 0 ? "."+verticalEpsg : "") + EXT);
+    }
+
+    // every pyramid written for dem, whatever its datum
+
+    static File[] filesFor(File dem)
+    {
+        File dir = dem.getAbsoluteFile().getParentFile();
+        String re = Pattern.quote(dem.getName()) + "(\\.\\d+)?" + Pattern.quote(EXT);
+        File[] fs = (dir == null) ? null : dir.listFiles((d, n) -> n.matches(re));
+        return (fs == null) ? new File[0] : fs;
+    }
+
+    // null if f is missing or was made for another file, size or datum
+
+    static ElevationPyramid read(File f, File dem, int gridW, int gridH, int verticalEpsg) throws IOException
+    {
+        if (!f.isFile() || f.length() < HEADER) return null;
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer hdr = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            while (hdr.hasRemaining() && ch.read(hdr) >= 0) { }
+            hdr.flip();
+            byte[] magic = new byte[MAGIC.length];
+            hdr.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) return null;
+            if (hdr.getInt(8) != gridW || hdr.getInt(12) != gridH) return null;
+            if (hdr.getLong(16) != dem.length() || hdr.getLong(24) != dem.lastModified()) return null;
+            if (hdr.getInt(32) != verticalEpsg) return null;
+            int block = hdr.getInt(36);
+            if (block < 1 || Integer.bitCount(block) != 1) return null;
+            ElevationPyramid p = new ElevationPyramid(gridW, gridH, block);
+            if (hdr.getInt(40) != p.levels || f.length() != HEADER + 4L * p.floats()) return null;
+
+            ByteBuffer body = ByteBuffer.allocate((int) (4L * p.floats())).order(ByteOrder.LITTLE_ENDIAN);
+            while (body.hasRemaining() && ch.read(body) >= 0) { }
+            if (body.hasRemaining()) return null;
+            body.flip();
+            FloatBuffer fb = body.asFloatBuffer();
+            for (int k = 0; k < p.levels; k++) fb.get(p.mm[k]);
+            return p;
+        }
+    }
+
+    // write to a temp file and rename, as MappedGeoTiff does its sidecar
+
+    void write(File f, File dem, int verticalEpsg) throws IOException
+    {
+        File tmp = new File(f.getPath() + ".tmp");
+        try (OutputStream fos = new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16)) {
+            ByteBuffer hdr = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            hdr.put(MAGIC);
+            hdr.putInt(gridW).putInt(gridH);
+            hdr.putLong(dem.length()).putLong(dem.lastModified());
+            hdr.putInt(verticalEpsg).putInt(block).putInt(levels).putInt(0);
+            fos.write(hdr.array());
+            for (int k = 0; k < levels; k++) {
+                ByteBuffer b = ByteBuffer.allocate(4 * mm[k].length).order(ByteOrder.LITTLE_ENDIAN);
+                b.asFloatBuffer().put(mm[k]);
+                fos.write(b.array());
+            }
+        }
+        if (!tmp.renameTo(f)) {
+            tmp.delete();
+            throw new IOException("Could not create "+f);
+        }
+    }
+
+    private long floats()
+    {
+        long n = 0;
+        for (float[] a : mm) n += a.length;
+        return n;
+    }
+
+    public int getLevels() { return levels; }
+    public int getBlock() { return block; }
+    public int getLevelWidth(int level) { return lw[level]; }
+    public int getLevelHeight(int level) { return lh[level]; }
+    public long getBytes() { return 4 * floats(); }
+
+    // log2 of the cells per side of a block at level
+    int shift(int level) { return blockShift + level; }
+
+    // extremes of block (bx, by) at level; a block off the grid has no
+    // terrain (min +Inf, max -Inf)
+
+    public float min(int level, int bx, int by)
+    {
+        if (bx < 0 || by < 0 || bx >= lw[level] || by >= lh[level]) return Float.POSITIVE_INFINITY;
+        return mm[level][2 * (by * lw[level] + bx)];
+    }
+
+    public float max(int level, int bx, int by)
+    {
+        if (bx < 0 || by < 0 || bx >= lw[level] || by >= lh[level]) return Float.NEGATIVE_INFINITY;
+        return mm[level][2 * (by * lw[level] + bx) + 1];
+    }
+
+    // build (or refresh) pyramids for the given DEMs and print them
+
+    public static void main(String[] args) throws Exception
+    {
+        boolean rebuild = false;
+        int i = 0;
+        if (args.length > 0 && args[0].equals("-rebuild")) { rebuild = true; i++; }
+        if (i >= args.length) {
+            System.err.println("Usage: java ElevationPyramid [-rebuild] <dem file>...");
+            System.exit(1);
+        }
+        System.setProperty("slf4j.internal.verbosity", "ERROR");
+        OpenAthenaCore.CacheDir = Paths.get("/");
+        OpenAthenaCore core = new OpenAthenaCore();
+
+        for (; i < args.length; i++) {
+            File f = new File(args[i]);
+            if (rebuild) {
+                for (File pf : filesFor(f)) pf.delete();
+            }
+            try (MaxarDtmReader dem = new MaxarDtmReader(f)) {
+                long t0 = System.nanoTime();
+                ElevationPyramid p = dem.getElevationPyramid();
+                long t1 = System.nanoTime();
+                System.out.printf("%s: %d levels of %d-cell blocks, %d KB, %.1f ms; elevation %.1f .. %.1f%n",
+                                  f.getName(), p.levels, p.block, p.getBytes() / 1024, (t1 - t0) / 1e6,
+                                  p.min(p.levels - 1, 0, 0), p.max(p.levels - 1, 0, 0));
+            }
+        }
+    }
+
+} // ElevationPyramid
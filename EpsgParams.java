@@ -0,0 +1,141 @@
+// EpsgParams.java
+// proj4 parameters for the EPSG codes our DEMs use, without the EPSG database
+// javac -cp ".:lib/*" EpsgParams.java
+// java -cp ".:lib/*" EpsgParams [-verify] [EPSG:n]...
+//
+// CRSFactory.createFromName("EPSG:n") finds the definition by reading
+// proj4j's bundled epsg file line by line; the first call in a JVM
+// costs tens to hundreds of ms and every CLI pays it.  The codes our
+// DEMs actually come in - WGS84 geographic (4326), NAD83 (4269, 3DEP),
+// ETRS89-LAEA (3035, EU-DTM) and WGS84 UTM north/south (326xx, 327xx,
+// Maxar) - are written out here exactly as proj4j's epsg file has them,
+// so create() goes straight to createFromParameters.  Anything else is
+// looked up once by name and remembered for the life of the process.
+//
+// -verify compares every built-in entry with what createFromName gives
+// by transforming a few points through both; run it after upgrading
+// proj4j.
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.locationtech.proj4j.CRSFactory;
+import org.locationtech.proj4j.CoordinateReferenceSystem;
+import org.locationtech.proj4j.CoordinateTransform;
+import org.locationtech.proj4j.CoordinateTransformFactory;
+import org.locationtech.proj4j.ProjCoordinate;
+
+public final class EpsgParams
+{
+    private static final Map<String,String> builtin = new ConcurrentHashMap<>();
+    private static final Map<String,String> resolved = new ConcurrentHashMap<>();
+
+    static {
+        builtin.put("EPSG:4326", "+proj=longlat +datum=WGS84 +no_defs");
+        builtin.put("EPSG:4269", "+proj=longlat +datum=NAD83 +no_defs");
+        builtin.put("EPSG:3035", "+proj=laea +lat_0=52 +lon_0=10 +x_0=4321000 +y_0=3210000 +ellps=GRS80"
+                    + " +towgs84=0,0,0,0,0,0,0 +units=m +no_defs");
+        for (int zone = 1; zone <= 60; zone++) {
+            builtin.put("EPSG:" + (32600 + zone), "+proj=utm +zone=" + zone + " +datum=WGS84 +units=m +no_defs");
+            builtin.put("EPSG:" + (32700 + zone), "+proj=utm +zone=" + zone + " +south +datum=WGS84 +units=m +no_defs");
+        }
+    }
+
+    private EpsgParams() { }
+
+    // proj4 parameter string for an "EPSG:n" name; null if proj4j doesn't
+    // know it either
+
+    public static String get(String name)
+    {
+        String p = builtin.get(name);
+        if (p != null) return p;
+        p = resolved.get(name);
+        if (p != null) return p;
+        CoordinateReferenceSystem crs = new CRSFactory().createFromName(name);
+        p = (crs != null) ? crs.getParameterString() : null;
+        if (p != null && !p.isBlank()) resolved.put(name, p);
+        return p;
+    }
+
+    // CRSFactory.createFromName without the database scan where possible
+
+    public static CoordinateReferenceSystem create(CRSFactory cf, String name)
+    {
+        String p = get(name);
+        if (p == null || p.isBlank()) return cf.createFromName(name);
+        return cf.createFromParameters(name, p);
+    }
+
+    public static boolean isBuiltin(String name) { return builtin.containsKey(name); }
+
+    // a few points inside each built-in CRS's area, both ways through the
+    // database CRS and ours; worst difference in degrees or meters
+
+    static double verify(String name)
+    {
+        CRSFactory cf = new CRSFactory();
+        CoordinateTransformFactory tf = new CoordinateTransformFactory();
+        CoordinateReferenceSystem wgs = cf.createFromName("EPSG:4326");
+        CoordinateReferenceSystem db = cf.createFromName(name);
+        CoordinateReferenceSystem ours = cf.createFromParameters(name, builtin.get(name));
+        CoordinateTransform a = tf.createTransform(wgs, db), b = tf.createTransform(wgs, ours);
+        CoordinateTransform ai = tf.createTransform(db, wgs), bi = tf.createTransform(ours, wgs);
+
+        double lon0 = 0, lat0 = 45;
+        int code = Integer.parseInt(name.substring(5));
+        if (code > 32600 && code <= 32660) { lon0 = -183 + 6 * (code - 32600); lat0 = 40; }
+        if (code > 32700 && code <= 32760) { lon0 = -183 + 6 * (code - 32700); lat0 = -40; }
+        if (code == 3035) { lon0 = 10; lat0 = 52; }
+        if (code == 4269) { lon0 = -95; lat0 = 40; }
+
+        double worst = 0;
+        ProjCoordinate src = new ProjCoordinate(), p1 = new ProjCoordinate(), p2 = new ProjCoordinate();
+        for (double dLat = -2; dLat <= 2; dLat += 2) {
+            for (double dLon = -2; dLon <= 2; dLon += 2) {
+                src.x = lon0 + dLon;
+                src.y = lat0 + dLat;
+                a.transform(src, p1);
+                b.transform(src, p2);
+                worst = Math.max(worst, Math.max(Math.abs(p1.x - p2.x), Math.abs(p1.y - p2.y)));
+                ai.transform(p1, src);
+                bi.transform(p1, p2);
+                worst = Math.max(worst, Math.max(Math.abs(src.x - p2.x), Math.abs(src.y - p2.y)));
+            }
+        }
+        return worst;
+    }
+
+    public static void main(String[] args)
+    {
+        boolean verify = args.length > 0 && args[0].equals("-verify");
+        List<String> names = new ArrayList<>();
+        for (int i = verify ? 1 : 0; i < args.length; i++) names.add(args[i]);
+
+        if (verify) {
+            List<String> all = new ArrayList<>(builtin.keySet());
+            all.sort(null);
+            int bad = 0;
+            for (String n : all) {
+                double d = verify(n);
+                if (d > 1e-9) {
+                    System.out.printf("%s differs from the EPSG database by %.3g%n", n, d);
+                    bad++;
+                }
+            }
+            System.out.println(all.size()+" built-in definitions checked, "+bad+" differ");
+            if (bad > 0) System.exit(1);
+        }
+
+        for (String n : names) {
+            long t0 = System.nanoTime();
+            CoordinateReferenceSystem crs = create(new CRSFactory(), n);
+            long t1 = System.nanoTime();
+            System.out.printf("%s%s: %s  (%.2f ms)%n", n, isBuiltin(n) ? "" : " (database)",
+                              crs.getParameterString(), (t1 - t0) / 1e6);
+        }
+    }
+
+} // EpsgParams
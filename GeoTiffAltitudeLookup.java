@@ -246,8 +246,8 @@ public class GeoTiffAltitudeLookup
             CoordinateTransformFactory transformFactory = new CoordinateTransformFactory();
                 
             if (horizontalCRS != null && !horizontalCRS.equals("EPSG:4326")) {
-                CoordinateReferenceSystem tiffCRS = crsFactory.createFromName(horizontalCRS);
-                CoordinateReferenceSystem wgs84CRS = crsFactory.createFromName("EPSG:4326");
+                CoordinateReferenceSystem tiffCRS = EpsgParams.create(crsFactory, horizontalCRS);
+                CoordinateReferenceSystem wgs84CRS = EpsgParams.create(crsFactory, "EPSG:4326");
                 CoordinateTransform transform = transformFactory.createTransform(tiffCRS, wgs84CRS);
                 ProjCoordinate ulSrc = new ProjCoordinate(ulX,ulY);
                 ProjCoordinate urSrc = new ProjCoordinate(urX,urY);                
@@ -290,8 +290,8 @@ public class GeoTiffAltitudeLookup
             if (horizontalCRS != null && !horizontalCRS.equals("EPSG:4326")) {
                 System.out.println("Converting coordinates to GeoTIFF's CRS: " + horizontalCRS);
 
-                CoordinateReferenceSystem sourceCRS = crsFactory.createFromName("EPSG:4326"); // WGS 84
-                CoordinateReferenceSystem targetCRS = crsFactory.createFromName(horizontalCRS);
+                CoordinateReferenceSystem sourceCRS = EpsgParams.create(crsFactory, "EPSG:4326"); // WGS 84
+                CoordinateReferenceSystem targetCRS = EpsgParams.create(crsFactory, horizontalCRS);
                 CoordinateTransform transform = transformFactory.createTransform(sourceCRS, targetCRS);
 
                 transform.transform(inputCoord, tiffCoord);
@@ -28,9 +28,12 @@
 // mods for use in OpenAthenaCore
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -126,6 +129,8 @@ public final class Geoid
     private final double FLATTENING = 1.0 / 298.257223563;
     private final boolean _cubic;
     private RandomAccessFile _file;
+    // whole PGM mapped read-only when memory mapped; big-endian like the file
+    private ByteBuffer _map;
     private final double _rlonres, _rlatres;
     private final String _description;
     private final String _datetime;
@@ -133,12 +138,25 @@ public final class Geoid
     private final int _width, _height;
     private final long _datastart, _swidth;
     private boolean _threadsafe;
-    private final List<int[]> _data = new ArrayList<>();
+    // cached nodes as unsigned 16-bit values, row-major with stride _xsize
+    private char[] _data;
+    // optional cubic coefficients for cells _cx0.._cx0+_ncx-1 (mod _width)
+    // by _cy0.._cy0+_ncy-1, nterms_ per cell, row-major
+    private double[] _coef;
+    private int _cx0, _cy0, _ncx, _ncy;
     private boolean _cache;
     private int _xoffset, _yoffset, _xsize, _ysize;
-    private int _ix, _iy;
-    private double _v00, _v01, _v10, _v11;
-    private final double[] _t = new double[nterms_];
+
+    // last cell looked up and its bilinear corners or cubic coefficients,
+    // plus scratch for the stencil so height() doesn't allocate
+    private static final class Cursor {
+        int ix = -1, iy = -1;
+        double v00, v01, v10, v11;
+        final double[] t = new double[nterms_];
+        final double[] v = new double[stencilsize_];
+    }
+    private final Cursor _cursor = new Cursor();
+    private final ThreadLocal<Cursor> _cursors = ThreadLocal.withInitial(Cursor::new);
     public static final String DEFAULT_GEOID_PATH;
     public static final String DEFAULT_GEOID_NAME;
 
@@ -163,14 +181,31 @@ public final class Geoid
      *                          specified and non-empty, the file is loaded from the specified directory. Otherwise, the
      *                          default path is used as determined by {@code DefaultGeoidPath()}.</p>
      *
-     *                          <p>If {@code threadsafe} is {@code true}, the dataset is fully loaded into memory, the data
-     *                          file is closed, and single-cell caching is turned off, resulting in a thread-safe {@code Geoid}
-     *                          object.</p>
+     *                          <p>If {@code threadsafe} is {@code true}, the dataset is fully loaded into memory and the data
+     *                          file is closed, resulting in a thread-safe {@code Geoid} object. Each thread keeps its own
+     *                          single-cell cache, so concurrent callers still get the last-cell speedup.</p>
      */
     public Geoid(String name, String filepath, boolean cubic, boolean threadsafe) throws IOException
+    {
+        this(name, filepath, cubic, threadsafe, false);
+    }
+
+    /**
+     * Constructs a Geoid object, optionally memory mapping the data file.
+     *
+     * @param memoryMapped If {@code true}, the PGM file is mapped read-only and grid nodes are read
+     *                     straight from the mapping instead of by seeking and reading the file, so
+     *                     uncached lookups make no system calls. The mapping is immutable, so with
+     *                     {@code threadsafe} the data is not copied into the cache; the mapping is
+     *                     shared instead and the object is ready immediately. This is the
+     *                     preferred way to share one Geoid across many threads.
+     * @see #Geoid(String, String, boolean, boolean)
+     */
+    public Geoid(String name, String filepath, boolean cubic, boolean threadsafe, boolean memoryMapped) throws IOException
     {
         _cubic = cubic;
-        _threadsafe = threadsafe;
+        // set once loading is done; cacheAll() refuses threadsafe objects
+        _threadsafe = false;
         _name = name;
 
         // _dir = path;
@@ -343,12 +378,21 @@ public final class Geoid
         _rlonres = _width / TD;
         _rlatres = (_height - 1) / HD;
         _cache = false;
-        _ix = _width;
-        _iy = _height;
 
-        if (threadsafe) {
-            cacheAll();
+        if (memoryMapped) {
+            // egm2008-1 is ~450MB so a single mapping always suffices
+            try (FileChannel ch = FileChannel.open(Paths.get(_filename), StandardOpenOption.READ)) {
+                _map = ch.map(FileChannel.MapMode.READ_ONLY, 0, fileLength);
+            }
             _file.close();
+            _file = null;
+        }
+
+        if (threadsafe) {
+            if (_map == null) {
+                cacheAll();
+                _file.close();
+            }
             _threadsafe = true;
         } else {
             _threadsafe = false;
@@ -377,6 +421,20 @@ public final class Geoid
      *                          and {@code north} must lie within the range [-90°, 90°].</p>
      */
     public void cacheArea(double south, double west, double north, double east) {
+        cacheArea(south, west, north, east, false);
+    }
+
+    /**
+     * Sets up a cache for the specified rectangular area, optionally with precomputed cubic coefficients.
+     *
+     * @param coefficients If {@code true} and the Geoid is cubic, the cubic fit of every grid cell in the
+     *                     area is also computed up front and kept, so a lookup in the area is a single
+     *                     polynomial evaluation with no stencil reads. This costs 80 bytes per cell on top
+     *                     of the samples; use {@link #estimateCacheBytes} to decide whether a region is
+     *                     worth it. Ignored for bilinear interpolation.
+     * @see #cacheArea(double, double, double, double)
+     */
+    public void cacheArea(double south, double west, double north, double east, boolean coefficients) {
         if (_threadsafe) {
             throw new RuntimeException("Attempt to change cache of threadsafe Geoid");
         }
@@ -384,6 +442,101 @@ public final class Geoid
             cacheClear();
             return;
         }
+        int[] ext = cacheExtent(south, west, north, east);
+        _xoffset = ext[0];
+        _yoffset = ext[1];
+        _xsize = ext[2];
+        _ysize = ext[3];
+        int indexWest = _xoffset;
+        int indexNorth = _yoffset;
+        int indexSouth = _yoffset + _ysize - 1;
+
+        if ((long) _xsize * _ysize > Integer.MAX_VALUE) {
+            throw new RuntimeException("Cache area too large");
+        }
+        if (coefficients && _cubic && (long) ext[6] * ext[7] * nterms_ > Integer.MAX_VALUE) {
+            throw new RuntimeException("Coefficient cache area too large");
+        }
+        _cache = false;
+        _coef = null;
+        _data = new char[_xsize * _ysize];
+
+        try {
+            for (int iy = indexNorth; iy <= indexSouth; ++iy) {
+                int iy1 = iy;
+                int iw1 = indexWest;
+                if (iy1 < 0 || iy1 >= _height) {
+                    iy1 = (iy1 < 0) ? -iy1 : 2 * (_height - 1) - iy1;
+                    iw1 += _width / 2;
+                    if (iw1 >= _width) {
+                        iw1 -= _width;
+                    }
+                }
+                int xs1 = min(_width - iw1, _xsize);
+                int row = (iy - indexNorth) * _xsize;
+                if (_map != null) {
+                    readShorts(_map, mappos(iw1, iy1), _data, row, xs1);
+                    if (xs1 < _xsize) {
+                        readShorts(_map, mappos(0, iy1), _data, row + xs1, _xsize - xs1);
+                    }
+                    continue;
+                }
+                filepos(iw1, iy1);
+                readShorts(_file, _data, row, xs1);
+                if (xs1 < _xsize) {
+                    filepos(0, iy1);
+                    readShorts(_file, _data, row + xs1, _xsize - xs1);
+                }
+            }
+            _cache = true;
+        } catch (IOException e) {
+            cacheClear();
+            throw new RuntimeException("Error filling cache: " + e.getMessage());
+        }
+
+        if (coefficients && _cubic) {
+            // stencils read from the cache just filled
+            _cx0 = ext[4];
+            _cy0 = ext[5];
+            _ncx = ext[6];
+            _ncy = ext[7];
+            double[] coef = new double[_ncx * _ncy * nterms_];
+            double[] t = new double[nterms_], v = new double[stencilsize_];
+            for (int ly = 0; ly < _ncy; ly++) {
+                for (int lx = 0; lx < _ncx; lx++) {
+                    int ix = _cx0 + lx;
+                    if (ix >= _width) ix -= _width;
+                    cubicCoefficients(ix, _cy0 + ly, v, t);
+                    System.arraycopy(t, 0, coef, (ly * _ncx + lx) * nterms_, nterms_);
+                }
+            }
+            _coef = coef;
+        }
+    }
+
+    /**
+     * Estimates the memory {@link #cacheArea(double, double, double, double, boolean)} would use for an area.
+     *
+     * @return The bytes needed for the cached samples plus, if {@code coefficients} is {@code true} and the
+     *         Geoid is cubic, the precomputed cell coefficients. Nothing is read or allocated.
+     */
+    public long estimateCacheBytes(double south, double west, double north, double east, boolean coefficients) {
+        if (south > north) {
+            return 0;
+        }
+        int[] ext = cacheExtent(south, west, north, east);
+        long bytes = 2L * ext[2] * ext[3];
+        if (coefficients && _cubic) {
+            bytes += 8L * nterms_ * ext[6] * ext[7];
+        }
+        return bytes;
+    }
+
+    // grid extent of a cache area: {xoffset, yoffset, xsize, ysize} of the
+    // nodes to cache (with the cubic stencil margin) followed by
+    // {x0, y0, nx, ny} of the cells the area covers
+
+    private int[] cacheExtent(double south, double west, double north, double east) {
         south = clampLatitude(south);
         north = clampLatitude(north);
         west = normalizeLongitude(west);
@@ -398,6 +551,12 @@ public final class Geoid
 
         indexNorth = max(0, min(_height - 2, indexNorth));
         indexSouth = max(0, min(_height - 2, indexSouth));
+
+        int cellWest = indexWest < 0 ? indexWest + _width : indexWest;
+        int cellsX = min(_width, indexEast - indexWest + 1);
+        int cellNorth = indexNorth;
+        int cellsY = indexSouth - indexNorth + 1;
+
         indexSouth += 1;
         indexEast += 1;
 
@@ -411,53 +570,17 @@ public final class Geoid
             indexWest = 0;
             indexEast = _width - 1;
         } else {
-            if (indexWest < 0) {
-                indexWest += _width;
-            } else if (indexWest >= _width) {
-                indexWest -= _width;
-            }
-            if (indexEast < 0) {
-                indexEast += _width;
-            } else if (indexEast >= _width) {
-                indexEast -= _width;
-            }
+            // shift both ends together, as GeographicLib does, so an area
+            // straddling the prime meridian keeps a positive width
+            int shift = indexWest < 0 ? _width : (indexWest >= _width ? -_width : 0);
+            indexWest += shift;
+            indexEast += shift;
         }
 
-        _xsize = indexEast - indexWest + 1;
-        _ysize = indexSouth - indexNorth + 1;
-        _xoffset = indexWest;
-        _yoffset = indexNorth;
-
-        _data.clear();
-        for (int iy = 0; iy < _ysize; iy++) {
-            _data.add(new int[_xsize]);
-        }
-
-        try {
-            for (int iy = indexNorth; iy <= indexSouth; ++iy) {
-                int iy1 = iy;
-                int iw1 = indexWest;
-                if (iy1 < 0 || iy1 >= _height) {
-                    iy1 = (iy1 < 0) ? -iy1 : 2 * (_height - 1) - iy1;
-                    iw1 += _width / 2;
-                    if (iw1 >= _width) {
-                        iw1 -= _width;
-                    }
-                }
-                int xs1 = min(_width - iw1, _xsize);
-                filepos(iw1, iy1);
-                int[] rowData = _data.get(iy - indexNorth);
-                readShortsToIntArray(_file, rowData, 0, xs1);
-                if (xs1 < _xsize) {
-                    filepos(0, iy1);
-                    readShortsToIntArray(_file, rowData, xs1, _xsize - xs1);
-                }
-            }
-            _cache = true;
-        } catch (IOException e) {
-            cacheClear();
-            throw new RuntimeException("Error filling cache: " + e.getMessage());
-        }
+        return new int[] {
+            indexWest, indexNorth, indexEast - indexWest + 1, indexSouth - indexNorth + 1,
+            cellWest, cellNorth, cellsX, cellsY
+        };
     }
 
     /**
@@ -466,16 +589,17 @@ public final class Geoid
      * @throws RuntimeException If there is a problem reading the data.
      * @throws RuntimeException If this method is called on a thread-safe Geoid.
      *
-     *                          <p>This method is efficient for data sets with a grid resolution of 5' or coarser. Note that
-     *                          since the cache values are stored as integers in Java (instead of unsigned short in the original
-     *                          implementation), the memory requirements are approximately double compared to the original
-     *                          GeographicLib implementation:</p>
+     *                          <p>The cache is a single {@code char[]} of unsigned 16-bit samples, the same
+     *                          footprint as the original GeographicLib implementation:</p>
      *                          <ul>
-     *                            <li>1' grid: ~900MB</li>
-     *                            <li>2.5' grid: ~144MB</li>
-     *                            <li>5' grid: ~36MB</li>
+     *                            <li>1' grid: ~450MB</li>
+     *                            <li>2.5' grid: ~72MB</li>
+     *                            <li>5' grid: ~18MB</li>
      *                          </ul>
      *                          <p>Consider this when working with large grids to ensure sufficient memory is available.</p>
+     *                          <p>On a memory-mapped Geoid the cache is filled straight from the mapping rather than
+     *                          through per-byte file reads, and is seldom needed at all since uncached reads are
+     *                          already free of system calls.</p>
      */
     public void cacheAll() {
         cacheArea(-QD, 0, QD, TD);
@@ -489,7 +613,8 @@ public final class Geoid
     public void cacheClear() {
         if (!_threadsafe) {
             _cache = false;
-            _data.clear();
+            _data = null;
+            _coef = null;
         }
     }
 
@@ -520,6 +645,104 @@ public final class Geoid
         return height(latitude, longitude);
     }
 
+    /**
+     * Computes geoid heights for many points at once.
+     *
+     * @param latitude  The latitudes of the points (degrees).
+     * @param longitude The longitudes of the points (degrees).
+     * @param out       Receives the height of the geoid above the ellipsoid (meters) for each point;
+     *                  NaN where latitude or longitude is NaN.
+     *
+     *                  <p>With cubic interpolation points are grouped by grid cell so each cell's nodes are
+     *                  read and its cubic fit computed once, however many points fall in it; results are
+     *                  identical to calling {@link #computeGeoidHeight} per point. The per-cell evaluation
+     *                  runs over contiguous arrays with the coefficients held constant so the JIT can
+     *                  vectorize it. Bilinear cells are cheap enough that sorting costs more than it saves,
+     *                  so bilinear points are simply looked up one at a time. Safe to call concurrently on a
+     *                  thread-safe Geoid.</p>
+     */
+    public void computeGeoidHeights(double[] latitude, double[] longitude, double[] out) {
+        int n = latitude.length;
+        if (longitude.length < n || out.length < n) {
+            throw new IllegalArgumentException("latitude, longitude and out must be the same length");
+        }
+
+        // bilinear: four reads and a lerp per point; the last-cell memo in
+        // height() already reuses them and the sort below would cost more
+        if (!_cubic) {
+            for (int i = 0; i < n; i++) {
+                out[i] = height(latitude[i], longitude[i]);
+            }
+            return;
+        }
+
+        // 1) cell and fractional position of every point, packed so a sort
+        //    groups points by cell (cell index < 2^31 for any EGM grid)
+        double[] fx = new double[n], fy = new double[n];
+        long[] order = new long[n];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            double lat = clampLatitude(latitude[i]), lon = longitude[i];
+            if (Double.isNaN(lat) || Double.isNaN(lon)) {
+                out[i] = Double.NaN;
+                continue;
+            }
+            lon = normalizeLongitude(lon);
+            double fractionalX = lon * _rlonres;
+            double fractionalY = -lat * _rlatres;
+            int ix = (int) floor(fractionalX);
+            int iy = min((_height - 1) / 2 - 1, (int) floor(fractionalY));
+            fractionalX -= ix;
+            fractionalY -= iy;
+            iy += (_height - 1) / 2;
+            if (ix < 0) ix += _width;
+            else if (ix >= _width) ix -= _width;
+
+            order[m++] = (((long) iy * _width + ix) << 32) | i;
+            fx[i] = fractionalX;
+            fy[i] = fractionalY;
+        }
+        Arrays.sort(order, 0, m);
+
+        // 2) per cell: cubic fit once, then evaluate the run of points.
+        //    x/y/h are the run gathered contiguously
+        double[] t = new double[nterms_], v = new double[stencilsize_];
+        double[] x = new double[min(m, 1024)], y = new double[x.length], h = new double[x.length];
+        for (int start = 0; start < m; ) {
+            long cell = order[start] >>> 32;
+            int end = start + 1;
+            while (end < m && (order[end] >>> 32) == cell && end - start < x.length) end++;
+            int iy = (int) (cell / _width), ix = (int) (cell % _width);
+            int len = end - start;
+            for (int k = 0; k < len; k++) {
+                int i = (int) order[start + k];
+                x[k] = fx[i];
+                y[k] = fy[i];
+            }
+
+            // runs longer than the buffer are split, so the next chunk of
+            // the same cell refits; rare and still correct
+            int ci = (_coef == null) ? -1 : coefIndex(ix, iy);
+            if (ci >= 0) {
+                System.arraycopy(_coef, ci, t, 0, nterms_);
+            } else {
+                cubicCoefficients(ix, iy, v, t);
+            }
+            double t0 = t[0], t1 = t[1], t2 = t[2], t3 = t[3], t4 = t[4];
+            double t5 = t[5], t6 = t[6], t7 = t[7], t8 = t[8], t9 = t[9];
+            for (int k = 0; k < len; k++) {
+                double px = x[k], py = y[k];
+                double c = t0 + px * (t1 + px * (t3 + px * t6)) + py * (t2 + px * (t4 + px * t7) + py * (t5 + px * t8 + py * t9));
+                h[k] = _offset + _scale * c;
+            }
+
+            for (int k = 0; k < len; k++) {
+                out[(int) order[start + k]] = h[k];
+            }
+            start = end;
+        }
+    }
+
     public String getDescription() {
         return _description;
     }
@@ -564,10 +787,19 @@ public final class Geoid
         return _threadsafe;
     }
 
+    public boolean isMemoryMapped() {
+        return _map != null;
+    }
+
     public boolean isCacheEnabled() {
         return _cache;
     }
 
+    // bytes held by the sample cache and any precomputed coefficients
+    public long getCacheBytes() {
+        return ((_data == null) ? 0 : 2L * _data.length) + ((_coef == null) ? 0 : 8L * _coef.length);
+    }
+
     public double getEquatorialRadius() {
         return EQUATORIAL_RADIUS;
     }
@@ -616,6 +848,11 @@ public final class Geoid
         }
     }
 
+    // byte offset of node ix,iy in the mapped file
+    private int mappos(int ix, int iy) {
+        return (int) (_datastart + pixel_size_ * ((long) iy * _swidth + (long) ix));
+    }
+
     private double rawval(int ix, int iy) {
         if (ix < 0) ix += _width;
         else if (ix >= _width) ix -= _width;
@@ -627,7 +864,7 @@ public final class Geoid
             }
             localIx -= _xoffset;
             if (localIx >= 0 && localIx < _xsize) {
-                return _data.get(iy - _yoffset)[localIx];
+                return _data[(iy - _yoffset) * _xsize + localIx];
             }
         }
 
@@ -635,6 +872,10 @@ public final class Geoid
             iy = (iy < 0) ? -iy : 2 * (_height - 1) - iy;
             ix += (ix < _width / 2 ? 1 : -1) * (_width / 2);
         }
+        if (_map != null) {
+            // absolute get: no shared position, safe from any thread
+            return _map.getChar(mappos(ix, iy));
+        }
         try {
             filepos(ix, iy);
             int hi = _file.read();
@@ -666,100 +907,111 @@ public final class Geoid
         if (ix < 0) ix += _width;
         else if (ix >= _width) ix -= _width;
 
-        double v00 = 0, v01 = 0, v10 = 0, v11 = 0;
-        double[] localT = new double[nterms_];
-
-        boolean sameCell = !_threadsafe && (ix == _ix && iy == _iy);
+        // threadsafe objects only share immutable data, so each thread keeps
+        // its own last cell
+        Cursor cur = _threadsafe ? _cursors.get() : _cursor;
+        boolean sameCell = (ix == cur.ix && iy == cur.iy);
 
         if (!_cubic) {
             if (!sameCell) {
-                v00 = rawval(ix, iy);
-                v01 = rawval(ix + 1, iy);
-                v10 = rawval(ix, iy + 1);
-                v11 = rawval(ix + 1, iy + 1);
-            } else {
-                v00 = _v00;
-                v01 = _v01;
-                v10 = _v10;
-                v11 = _v11;
+                cur.v00 = rawval(ix, iy);
+                cur.v01 = rawval(ix + 1, iy);
+                cur.v10 = rawval(ix, iy + 1);
+                cur.v11 = rawval(ix + 1, iy + 1);
+                cur.ix = ix;
+                cur.iy = iy;
             }
-        } else {
-            if (!sameCell) {
-                double[] v = new double[stencilsize_];
-                int k = 0;
-                v[k++] = rawval(ix, iy - 1);
-                v[k++] = rawval(ix + 1, iy - 1);
-                v[k++] = rawval(ix - 1, iy);
-                v[k++] = rawval(ix, iy);
-                v[k++] = rawval(ix + 1, iy);
-                v[k++] = rawval(ix + 2, iy);
-                v[k++] = rawval(ix - 1, iy + 1);
-                v[k++] = rawval(ix, iy + 1);
-                v[k++] = rawval(ix + 1, iy + 1);
-                v[k++] = rawval(ix + 2, iy + 1);
-                v[k++] = rawval(ix, iy + 2);
-                v[k++] = rawval(ix + 1, iy + 2);
-
-                int[] c3x;
-                int c0x;
-                if (iy == 0) {
-                    c3x = c3n_;
-                    c0x = c0n_;
-                } else if (iy == _height - 2) {
-                    c3x = c3s_;
-                    c0x = c0s_;
-                } else {
-                    c3x = c3_;
-                    c0x = c0_;
-                }
+            double a = (1 - fractionalX) * cur.v00 + fractionalX * cur.v01;
+            double b = (1 - fractionalX) * cur.v10 + fractionalX * cur.v11;
+            double c = (1 - fractionalY) * a + fractionalY * b;
+            return _offset + _scale * c;
+        }
 
-                for (int i = 0; i < nterms_; i++) {
-                    double sum = 0;
-                    for (int j = 0; j < stencilsize_; j++) {
-                        sum += v[j] * c3x[nterms_ * j + i];
-                    }
-                    localT[i] = sum / c0x;
-                }
-            } else {
-                System.arraycopy(_t, 0, localT, 0, nterms_);
-            }
+        double[] t = cur.t;
+        int c = (_coef == null) ? -1 : coefIndex(ix, iy);
+        if (c >= 0) {
+            double[] k = _coef;
+            double h = k[c] + fractionalX * (k[c+1] + fractionalX * (k[c+3] + fractionalX * k[c+6])) + fractionalY * (k[c+2] + fractionalX * (k[c+4] + fractionalX * k[c+7]) + fractionalY * (k[c+5] + fractionalX * k[c+8] + fractionalY * k[c+9]));
+            return _offset + _scale * h;
+        }
+        if (!sameCell) {
+            cubicCoefficients(ix, iy, cur.v, t);
+            cur.ix = ix;
+            cur.iy = iy;
         }
 
-        double hVal;
-        if (!_cubic) {
-            double a = (1 - fractionalX) * v00 + fractionalX * v01;
-            double b = (1 - fractionalX) * v10 + fractionalX * v11;
-            double c = (1 - fractionalY) * a + fractionalY * b;
-            hVal = _offset + _scale * c;
-            if (!sameCell) {
-                _ix = ix;
-                _iy = iy;
-                _v00 = v00;
-                _v01 = v01;
-                _v10 = v10;
-                _v11 = v11;
-            }
+        double h = t[0] + fractionalX * (t[1] + fractionalX * (t[3] + fractionalX * t[6])) + fractionalY * (t[2] + fractionalX * (t[4] + fractionalX * t[7]) + fractionalY * (t[5] + fractionalX * t[8] + fractionalY * t[9]));
+        return _offset + _scale * h;
+    }
+
+    // offset of cell ix,iy in _coef or -1 if it isn't precomputed
+
+    private int coefIndex(int ix, int iy) {
+        int ly = iy - _cy0;
+        if (ly < 0 || ly >= _ncy) return -1;
+        int lx = ix - _cx0;
+        if (lx < 0) lx += _width;
+        if (lx >= _ncx) return -1;
+        return (ly * _ncx + lx) * nterms_;
+    }
+
+    // fit the cubic for cell ix,iy from its 12-node stencil; v is scratch,
+    // t receives the nterms_ coefficients
+
+    private void cubicCoefficients(int ix, int iy, double[] v, double[] t) {
+        int k = 0;
+        v[k++] = rawval(ix, iy - 1);
+        v[k++] = rawval(ix + 1, iy - 1);
+        v[k++] = rawval(ix - 1, iy);
+        v[k++] = rawval(ix, iy);
+        v[k++] = rawval(ix + 1, iy);
+        v[k++] = rawval(ix + 2, iy);
+        v[k++] = rawval(ix - 1, iy + 1);
+        v[k++] = rawval(ix, iy + 1);
+        v[k++] = rawval(ix + 1, iy + 1);
+        v[k++] = rawval(ix + 2, iy + 1);
+        v[k++] = rawval(ix, iy + 2);
+        v[k++] = rawval(ix + 1, iy + 2);
+
+        int[] c3x;
+        int c0x;
+        if (iy == 0) {
+            c3x = c3n_;
+            c0x = c0n_;
+        } else if (iy == _height - 2) {
+            c3x = c3s_;
+            c0x = c0s_;
         } else {
-            double h = localT[0] + fractionalX * (localT[1] + fractionalX * (localT[3] + fractionalX * localT[6])) + fractionalY * (localT[2] + fractionalX * (localT[4] + fractionalX * localT[7]) + fractionalY * (localT[5] + fractionalX * localT[8] + fractionalY * localT[9]));
-            hVal = _offset + _scale * h;
-            if (!sameCell) {
-                _ix = ix;
-                _iy = iy;
-                System.arraycopy(localT, 0, _t, 0, nterms_);
+            c3x = c3_;
+            c0x = c0_;
+        }
+
+        for (int i = 0; i < nterms_; i++) {
+            double sum = 0;
+            for (int j = 0; j < stencilsize_; j++) {
+                sum += v[j] * c3x[nterms_ * j + i];
             }
+            t[i] = sum / c0x;
         }
-        return hVal;
     }
 
-    private static void readShortsToIntArray(RandomAccessFile randomAccessFile, int[] destination, int offset, int length) throws IOException {
+    // bulk copy of big-endian 16-bit samples; the duplicate keeps the
+    // shared mapping's position untouched
+    private static void readShorts(ByteBuffer map, int pos, char[] destination, int offset, int length) {
+        ByteBuffer b = map.duplicate();
+        b.position(pos);
+        b.asCharBuffer().get(destination, offset, length);
+    }
+
+    private static void readShorts(RandomAccessFile randomAccessFile, char[] destination, int offset, int length) throws IOException {
+        byte[] bytes = new byte[2 * length];
+        try {
+            randomAccessFile.readFully(bytes);
+        } catch (EOFException e) {
+            throw new RuntimeException("Error reading file - unexpected EOF");
+        }
         for (int index = 0; index < length; index++) {
-            int high = randomAccessFile.read();
-            int low = randomAccessFile.read();
-            if (high < 0 || low < 0) {
-                throw new RuntimeException("Error reading file - unexpected EOF");
-            }
-            int val = ((high & 0xFF) << 8) | (low & 0xFF);
-            destination[offset + index] = val;
+            destination[offset + index] = (char) (((bytes[2 * index] & 0xFF) << 8) | (bytes[2 * index + 1] & 0xFF));
         }
     }
 
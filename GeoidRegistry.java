@@ -0,0 +1,244 @@
+// GeoidRegistry.java
+// one shared, lazily loaded geoid offset provider per model per process
+// javac -cp ".:lib/*" GeoidRegistry.java
+// java -cp ".:lib/*" GeoidRegistry [-pgm egm2008.pgm] [egm96|egm2008]... lat lon
+//
+// Every MaxarDtmReader used to make its own EGM96OffsetAdapter or
+// EGM2008OffsetAdapter in testVerticalDatum, and loading the geoid grid
+// is most of what makes opening a 3dep/cop30/eudtm tile slow.  With
+// hundreds of tiles open that load and its memory are repeated for
+// every one.  Readers now ask this registry instead; it hands out one
+// provider per Model that loads the real adapter the first time an
+// offset is actually looked up (or up front with preload()) and never
+// again.
+//
+// Where a GeographicLib geoid grid is on disk (egm2008Pgm, egm96Pgm;
+// by default geoids/egm2008-1.pgm and geoids/egm96-5.pgm) the model is a
+// thread-safe memory-mapped Geoid, looked up without any lock, so
+// readers on geoid-datum DEMs scale across threads like ellipsoidal
+// ones.  Otherwise it falls back to the core adapter, which isn't
+// documented as thread-safe, so the shared provider serializes lookups
+// to it.
+//
+// forDataType() picks the model from the data type's vertical datum
+// (GeoTiffDataType.getVertDatum()) the same way MaxarDtmReader maps a
+// file's vertical CRS, without calling getOffsetProvider(), which would
+// build a whole adapter per data type.
+//
+// A mapped Geoid also reads nothing up front, so the first lookup costs
+// a few page faults rather than the adapter's load, which is what a CLI
+// run once per point wants.  Cubic interpolation on the 1' EGM2008 grid
+// is within a few cm of the full model; the 2.5' and 5' grids are
+// smaller but less accurate (see Geoid).
+//
+// report() gives load time, approximate heap taken by the load (used
+// heap before and after, so other threads allocating at the same time
+// inflate it) and lookup counts per model.
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.openathena.core.EGM2008OffsetAdapter;
+import com.openathena.core.EGM96OffsetAdapter;
+import com.openathena.core.EGMOffsetProvider;
+import com.openathena.core.GeoTiffDataType;
+import com.openathena.core.OpenAthenaCore;
+
+public final class GeoidRegistry
+{
+    public enum Model { EGM96, EGM2008 }
+
+    private static final Map<Model,Shared> shared = new EnumMap<>(Model.class);
+
+    // GeographicLib .pgm grids to map instead of EGM2008OffsetAdapter and
+    // EGM96OffsetAdapter; null (or a missing file) keeps the adapter.
+    // Set before first use.
+    public static final String defaultEgm2008Pgm = "geoids/egm2008-1.pgm";
+    public static final String defaultEgm96Pgm = "geoids/egm96-5.pgm";
+    public static String egm2008Pgm = defaultEgm2008Pgm;
+    public static String egm96Pgm = defaultEgm96Pgm;
+
+    static {
+        for (Model m : Model.values()) shared.put(m, new Shared(m));
+    }
+
+    private GeoidRegistry() { }
+
+    // the process-wide provider for model; cheap, nothing is loaded yet
+
+    public static EGMOffsetProvider get(Model model)
+    {
+        return shared.get(model);
+    }
+
+    // the shared provider for the model a data type's heights are relative
+    // to, or null if it has none or we can't tell; nothing is loaded
+
+    public static EGMOffsetProvider forDataType(GeoTiffDataType type)
+    {
+        if (type == null) return null;
+        Model m = forVerticalDatum(type.getVertDatum());
+        return (m == null) ? null : get(m);
+    }
+
+    // the geoid model for a vertical CRS name, as MaxarDtmReader treats
+    // them: EGM96 for EPSG:5773, EGM2008 for EPSG:3855, NAVD88 (5703, which
+    // EGM2008 approximates) and WGS84 HAE (4979, so EGM altitudes can
+    // still be given); null otherwise
+
+    public static Model forVerticalDatum(String epsg)
+    {
+        if (epsg == null) return null;
+        switch (epsg) {
+        case "EPSG:5773": return Model.EGM96;
+        case "EPSG:3855":
+        case "EPSG:5703":
+        case "EPSG:4979": return Model.EGM2008;
+        default:          return null;
+        }
+    }
+
+    // load now instead of on the first lookup, e.g. at server startup
+
+    public static void preload(Model... models)
+    {
+        for (Model m : models) shared.get(m).provider();
+    }
+
+    public static boolean isLoaded(Model model) { return shared.get(model).delegate != null; }
+    public static long getLoadMillis(Model model) { return shared.get(model).loadNanos / 1_000_000; }
+    public static long getLoadBytes(Model model) { return shared.get(model).loadBytes; }
+    public static long getLookups(Model model) { return shared.get(model).lookups.sum(); }
+
+    public static void report(PrintStream out)
+    {
+        for (Model m : Model.values()) {
+            Shared s = shared.get(m);
+            if (s.delegate == null) {
+                out.printf("%-8s not loaded%n", m);
+            }
+            else {
+                out.printf("%-8s loaded in %d ms, ~%d MB heap, %d lookups%n", m, s.loadNanos / 1_000_000,
+                           s.loadBytes / (1024 * 1024), s.lookups.sum());
+            }
+        }
+    }
+
+    private static final class Shared implements EGMOffsetProvider
+    {
+        final Model model;
+        final LongAdder lookups = new LongAdder();
+        volatile EGMOffsetProvider delegate;
+        // set before delegate is published
+        boolean threadSafe;
+        volatile long loadNanos, loadBytes;
+
+        Shared(Model model)
+        {
+            this.model = model;
+        }
+
+        EGMOffsetProvider provider()
+        {
+            EGMOffsetProvider p = delegate;
+            return (p != null) ? p : load();
+        }
+
+        private synchronized EGMOffsetProvider load()
+        {
+            if (delegate == null) {
+                Runtime rt = Runtime.getRuntime();
+                long used0 = rt.totalMemory() - rt.freeMemory();
+                long t0 = System.nanoTime();
+                EGMOffsetProvider p = (model == Model.EGM2008) ?
+                    mapped(egm2008Pgm, defaultEgm2008Pgm, "EGM2008OffsetAdapter") :
+                    mapped(egm96Pgm, defaultEgm96Pgm, "EGM96OffsetAdapter");
+                threadSafe = (p != null);
+                if (p == null) p = (model == Model.EGM96) ? new EGM96OffsetAdapter() : new EGM2008OffsetAdapter();
+                loadNanos = System.nanoTime() - t0;
+                loadBytes = Math.max(0, rt.totalMemory() - rt.freeMemory() - used0);
+                delegate = p;
+            }
+            return delegate;
+        }
+
+        @Override public double getEGMOffsetAtLatLon(double lat, double lon)
+        {
+            EGMOffsetProvider p = provider();
+            lookups.increment();
+            if (threadSafe) return p.getEGMOffsetAtLatLon(lat, lon);
+            synchronized (this) {
+                return p.getEGMOffsetAtLatLon(lat, lon);
+            }
+        }
+    }
+
+    // pgm mapped read-only, or null to use the adapter; Geoid with
+    // threadsafe and memoryMapped shares the mapping and copies nothing,
+    // so this is immediate and needs no lock.  A missing default grid is
+    // the normal case and isn't reported
+    private static EGMOffsetProvider mapped(String pgm, String dflt, String adapter)
+    {
+        if (pgm == null) return null;
+        if (!new File(pgm).isFile()) {
+            if (!pgm.equals(dflt)) {
+                System.err.println("[GeoidRegistry] No geoid file "+pgm+"; using "+adapter);
+            }
+            return null;
+        }
+        try {
+            Geoid g = new Geoid(new File(pgm).getName().replaceFirst("\\.pgm$", ""), pgm, true, true, true);
+            return g::computeGeoidHeight;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[GeoidRegistry] Could not map "+pgm+": "+e.getMessage()+"; using "+adapter);
+            return null;
+        }
+    }
+
+    // load the named models (default both), look one point up and report;
+    // -pgm file sets egm2008Pgm
+
+    public static void main(String[] args) throws Exception
+    {
+        System.setProperty("slf4j.internal.verbosity", "ERROR");
+        OpenAthenaCore.CacheDir = Paths.get("/");
+        OpenAthenaCore core = new OpenAthenaCore();
+
+        int i = 0;
+        if (args.length > 1 && args[0].equals("-pgm")) {
+            egm2008Pgm = args[1];
+            i = 2;
+        }
+        EnumMap<Model,Boolean> want = new EnumMap<>(Model.class);
+        for (; i < args.length; i++) {
+            Model m = null;
+            for (Model x : Model.values()) if (x.name().equalsIgnoreCase(args[i])) m = x;
+            if (m == null) break;
+            want.put(m, true);
+        }
+        if (want.isEmpty()) for (Model m : Model.values()) want.put(m, true);
+        if (i + 1 >= args.length) {
+            System.err.println("Usage: java GeoidRegistry [-pgm egm2008.pgm] [egm96|egm2008]... lat lon");
+            System.exit(1);
+        }
+        double lat = Double.parseDouble(args[i]), lon = Double.parseDouble(args[i + 1]);
+
+        for (Model m : want.keySet()) {
+            EGMOffsetProvider p = get(m);
+            double a = p.getEGMOffsetAtLatLon(lat, lon);
+            // a second reader's provider is the same object and costs nothing
+            long t0 = System.nanoTime();
+            double b = get(m).getEGMOffsetAtLatLon(lat, lon);
+            long t1 = System.nanoTime();
+            System.out.printf("%s offset at (%.6f, %.6f): %.3f m (again %.3f m in %.1f us)%n",
+                              m, lat, lon, a, b, (t1 - t0) / 1000.0);
+        }
+        report(System.out);
+    }
+
+} // GeoidRegistry
@@ -0,0 +1,126 @@
+// IdwWeightTable.java
+// precomputed 3x3 IDW weights for MaxarDtmReader's GeoTiff lookups
+// javac IdwWeightTable.java
+// java IdwWeightTable [power]
+//
+// With radius 1 the IDW weights of the 9 pixels around a lookup depend
+// only on where the point falls inside its pixel (fx, fy in [0,1)), so
+// they can be computed once.  The table holds the normalized weights on
+// a (Q+1)x(Q+1) lattice, Q = 256, as floats (~2.4 MB); a lookup blends
+// the four surrounding lattice entries bilinearly and dots them with the
+// 9 samples: no sqrt or pow.  Weights are normalized over the full 3x3,
+// so callers fall back to the exact IDW near raster edges.
+//
+// Blending normalized weights is not the same as normalizing blended
+// ones; the error is largest right next to a pixel center where the
+// center weight rises steeply.  main() prints the worst weight error;
+// TestIdwWeightTable reports it in meters on real DEMs.
+
+public final class IdwWeightTable
+{
+    public static final int Q = 256;
+    private static final int STRIDE = 9;
+
+    private final double power;
+    private final float[] w;
+
+    private static volatile IdwWeightTable cached;
+
+    private IdwWeightTable(double power)
+    {
+        this.power = power;
+        this.w = new float[(Q + 1) * (Q + 1) * STRIDE];
+        double[] tmp = new double[STRIDE];
+        for (int iy = 0; iy <= Q; iy++) {
+            for (int ix = 0; ix <= Q; ix++) {
+                exactWeights((double) ix / Q, (double) iy / Q, power, tmp);
+                int b = (iy * (Q + 1) + ix) * STRIDE;
+                for (int k = 0; k < STRIDE; k++) w[b + k] = (float) tmp[k];
+            }
+        }
+    }
+
+    // shared table for power; rebuilt only if asked for a different one
+
+    public static IdwWeightTable forPower(double power)
+    {
+        IdwWeightTable t = cached;
+        if (t == null || t.power != power) {
+            t = new IdwWeightTable(power);
+            cached = t;
+        }
+        return t;
+    }
+
+    public double getPower() { return power; }
+
+    // normalized IDW weights of the 3x3 block around a point at (fx, fy)
+    // inside the center pixel, row major from the top-left neighbour; the
+    // same distances idwAtPixel uses (to pixel centers, epsilon 1e-12)
+
+    public static void exactWeights(double fx, double fy, double power, double[] out)
+    {
+        double sum = 0;
+        for (int k = 0; k < STRIDE; k++) {
+            double dc = fx - 0.5 - (k % 3 - 1);
+            double dr = fy - 0.5 - (k / 3 - 1);
+            double d2 = dc * dc + dr * dr;
+            if (d2 <= 1e-24) {
+                java.util.Arrays.fill(out, 0, STRIDE, 0.0);
+                out[k] = 1.0;
+                return;
+            }
+            out[k] = 1.0 / Math.pow(Math.sqrt(d2), power);
+            sum += out[k];
+        }
+        for (int k = 0; k < STRIDE; k++) out[k] /= sum;
+    }
+
+    // IDW of the 9 samples v (row major, top-left first) at (fx, fy) in
+    // [0,1] inside the center pixel
+
+    public double interpolate(double fx, double fy, double[] v)
+    {
+        double x = fx * Q, y = fy * Q;
+        int ix = Math.min((int) x, Q - 1), iy = Math.min((int) y, Q - 1);
+        double tx = x - ix, ty = y - iy;
+        double a00 = (1 - tx) * (1 - ty), a10 = tx * (1 - ty), a01 = (1 - tx) * ty, a11 = tx * ty;
+        int b00 = (iy * (Q + 1) + ix) * STRIDE, b10 = b00 + STRIDE;
+        int b01 = b00 + (Q + 1) * STRIDE, b11 = b01 + STRIDE;
+        float[] w = this.w;
+        double sum = 0;
+        for (int k = 0; k < STRIDE; k++) {
+            sum += v[k] * (a00 * w[b00 + k] + a10 * w[b10 + k] + a01 * w[b01 + k] + a11 * w[b11 + k]);
+        }
+        return sum;
+    }
+
+    // worst absolute weight error against exactWeights over a fine grid
+
+    public static void main(String[] args)
+    {
+        double power = (args.length > 0) ? Double.parseDouble(args[0]) : 1.875;
+        long t0 = System.nanoTime();
+        IdwWeightTable t = forPower(power);
+        long t1 = System.nanoTime();
+        System.out.printf("Q %d, %d KB, built in %.1f ms%n", Q, t.w.length * 4 / 1024, (t1 - t0) / 1e6);
+
+        double[] exact = new double[STRIDE], unit = new double[STRIDE];
+        double worst = 0, wfx = 0, wfy = 0;
+        int steps = 2000;
+        for (int i = 0; i <= steps; i++) {
+            for (int j = 0; j <= steps; j++) {
+                double fx = (double) i / steps, fy = (double) j / steps;
+                exactWeights(fx, fy, power, exact);
+                for (int k = 0; k < STRIDE; k++) {
+                    java.util.Arrays.fill(unit, 0.0);
+                    unit[k] = 1.0;
+                    double e = Math.abs(t.interpolate(fx, fy, unit) - exact[k]);
+                    if (e > worst) { worst = e; wfx = fx; wfy = fy; }
+                }
+            }
+        }
+        System.out.printf("max weight error %.2e at (%.4f, %.4f)%n", worst, wfx, wfy);
+    }
+
+} // IdwWeightTable
@@ -0,0 +1,622 @@
+// MappedGeoTiff.java
+// lazily decoded, memory-mapped access to band 0 of a GeoTiff DEM
+// javac MappedGeoTiff.java TiffIfd.java
+// java MappedGeoTiff [-sidecar] <dem.tif> [col row]...
+//
+// mil.nga.tiff readRasters() decodes the whole image onto the heap
+// before we can look up a single elevation; for large Maxar and 3DEP
+// tiles that dominates both open time and heap.  This class maps the
+// file with FileChannel.map and only decodes the strips/tiles a lookup
+// touches.  Decoded tiles are kept as float[] in a small cache bounded
+// by decoded bytes; hits are lock-free so one instance can be shared by
+// many threads, and eviction drops the least recently used tile
+// (approximately; use stamps are updated without synchronization).
+//
+// Optionally the whole raster can be decoded once into an uncompressed
+// sidecar file (<dem>.grid) which later runs map and read directly with
+// no decoding or copying.  Sidecar layout, little endian:
+//
+//   0  8 bytes  magic "TTGRID1\n"
+//   8  int      width
+//  12  int      height
+//  16  long     source file length
+//  24  long     source file lastModified
+//  32  int      vertical EPSG of samples; 0 = same as source
+//  36  int      vertical EPSG the samples were converted from when
+//               different from the source's (e.g. 5773 for EGM96
+//               heights baked to WGS84 HAE); 0 = not recorded
+//  40  float32  width*height samples, row major
+//
+// A sidecar over 2GB is mapped as several buffers of 2^k whole rows
+// each, so a lookup finds its buffer with a shift.
+//
+// Handles: uncompressed, LZW (5), Deflate (8, 32946), PackBits (32773);
+// predictors 1, 2 and 3; 8/16/32/64-bit int and float samples; strips
+// or tiles; chunky or planar.  Anything else throws IOException and the
+// caller should fall back to mil.nga.tiff.
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public class MappedGeoTiff implements AutoCloseable
+{
+    public static final String SIDECAR_EXT = ".grid";
+    static final byte[] SIDECAR_MAGIC = "TTGRID1\n".getBytes(StandardCharsets.US_ASCII);
+    static final int SIDECAR_HEADER = 40;
+
+    // default bound on decoded tiles held per file
+    public static long defaultCacheBytes = 64L * 1024 * 1024;
+
+    private final File file;
+    private FileChannel ch;
+    private MappedByteBuffer map;  // whole source file, if < 2GB
+
+    private int width, height;
+
+    // source layout
+    private ByteOrder order;
+    private int bitsPerSample, bytesPerSample, samplesPerPixel, sampleFormat;
+    private int compression, predictor, planar;
+    private int blockW, blockH, blocksAcross, blocksDown;
+    private long[] blockOffsets, blockByteCounts;
+    private boolean tiled;
+
+    // sidecar; when set, samples come straight from here.  grid[k]
+    // holds rows k<<gridShift .. ((k+1)<<gridShift)-1; grid[0] also
+    // holds the header, so gridBase is SIDECAR_HEADER there and 0 after
+    private MappedByteBuffer[] grid;
+    private int gridShift, gridMask;
+    private int gridVerticalEpsg, gridFromEpsg;
+
+    private final long maxCacheBytes;
+    private final AtomicLong cachedBytes = new AtomicLong();
+    private final AtomicLong tilesDecoded = new AtomicLong();
+    private final ConcurrentHashMap<Integer,Tile> cache = new ConcurrentHashMap<>();
+    private final Object evictLock = new Object();
+    private long useTick = 0; // racy on purpose; only orders evictions
+
+    private static final class Tile {
+        final float[] data;
+        long lastUse;
+        Tile(float[] data) { this.data = data; }
+    }
+
+    public MappedGeoTiff(File file) throws IOException
+    {
+        this(file, defaultCacheBytes);
+    }
+
+    public MappedGeoTiff(File file, long maxCacheBytes) throws IOException
+    {
+        this.file = file;
+        this.maxCacheBytes = maxCacheBytes;
+        this.ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            parseLayout();
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    // open a GeoTiff; if useSidecar, map <file>.grid, creating it first if
+    // it is missing or stale
+
+    public static MappedGeoTiff open(File file, boolean useSidecar) throws IOException
+    {
+        MappedGeoTiff m = new MappedGeoTiff(file);
+        if (useSidecar) {
+            try {
+                File side = sidecarFor(file);
+                if (sidecarRowShift(m.width) < 0) {
+                    // a single row won't fit in one mapping; don't decode
+                    // and write a sidecar we could never use
+                    System.err.println("[MappedGeoTiff] "+file+" too wide for a sidecar; using tiles");
+                }
+                else if (!m.mapSidecar(side)) {
+                    m.writeSidecar(side, 0);
+                    if (!m.mapSidecar(side)) {
+                        System.err.println("[MappedGeoTiff] Could not map sidecar "+side+"; using tiles");
+                    }
+                }
+            } catch (IOException e) {
+                m.close();
+                throw e;
+            }
+        }
+        return m;
+    }
+
+    public static File sidecarFor(File file)
+    {
+        return new File(file.getPath() + SIDECAR_EXT);
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public File getFile() { return file; }
+    public int getBlockWidth() { return blockW; }
+    public int getBlockHeight() { return blockH; }
+    public boolean isSidecar() { return grid != null; }
+    public int getSidecarVerticalEpsg() { return gridVerticalEpsg; }
+    public int getSidecarFromEpsg() { return gridFromEpsg; }
+    public long getCachedBytes() { return cachedBytes.get(); }
+    public long getTilesDecoded() { return tilesDecoded.get(); }
+
+    // band 0 value at col,row; caller guarantees in range
+
+    public double sample(int col, int row)
+    {
+        if (grid != null) {
+            int k = row >>> gridShift;
+            int base = (k == 0) ? SIDECAR_HEADER : 0;
+            return grid[k].getFloat(base + 4 * ((row & gridMask) * width + col));
+        }
+        int bx = col / blockW, by = row / blockH;
+        float[] t = block(by * blocksAcross + bx);
+        return t[(row - by * blockH) * blockW + (col - bx * blockW)];
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        cache.clear();
+        cachedBytes.set(0);
+        map = null;
+        grid = null;
+        if (ch != null) {
+            ch.close();
+            ch = null;
+        }
+    }
+
+    // ---- layout
+
+    private void parseLayout() throws IOException
+    {
+        TiffIfd ifd = TiffIfd.readFirst(ch);
+        order = ifd.getByteOrder();
+
+        width  = (int) ifd.getLong(TiffIfd.TAG_ImageWidth, 0);
+        height = (int) ifd.getLong(TiffIfd.TAG_ImageLength, 0);
+        if (width <= 0 || height <= 0) throw new IOException("Bad image size");
+
+        bitsPerSample   = (int) ifd.getLong(TiffIfd.TAG_BitsPerSample, 1);
+        samplesPerPixel = (int) ifd.getLong(TiffIfd.TAG_SamplesPerPixel, 1);
+        sampleFormat    = (int) ifd.getLong(TiffIfd.TAG_SampleFormat, 1);
+        compression     = (int) ifd.getLong(TiffIfd.TAG_Compression, 1);
+        predictor       = (int) ifd.getLong(TiffIfd.TAG_Predictor, 1);
+        planar          = (int) ifd.getLong(TiffIfd.TAG_PlanarConfig, 1);
+
+        if (bitsPerSample != 8 && bitsPerSample != 16 && bitsPerSample != 32 && bitsPerSample != 64) {
+            throw new IOException("Unsupported BitsPerSample "+bitsPerSample);
+        }
+        bytesPerSample = bitsPerSample / 8;
+        if (sampleFormat == 3 && bitsPerSample < 32) throw new IOException("Unsupported float size "+bitsPerSample);
+        if (compression != 1 && compression != 5 && compression != 8
+            && compression != 32946 && compression != 32773) {
+            throw new IOException("Unsupported compression "+compression);
+        }
+
+        tiled = ifd.has(TiffIfd.TAG_TileWidth);
+        if (tiled) {
+            blockW = (int) ifd.getLong(TiffIfd.TAG_TileWidth, 0);
+            blockH = (int) ifd.getLong(TiffIfd.TAG_TileLength, 0);
+            blockOffsets    = ifd.getLongs(TiffIfd.TAG_TileOffsets);
+            blockByteCounts = ifd.getLongs(TiffIfd.TAG_TileByteCounts);
+        }
+        else {
+            blockW = width;
+            blockH = (int) Math.min(height, ifd.getLong(TiffIfd.TAG_RowsPerStrip, height));
+            blockOffsets    = ifd.getLongs(TiffIfd.TAG_StripOffsets);
+            blockByteCounts = ifd.getLongs(TiffIfd.TAG_StripByteCounts);
+        }
+        if (blockW <= 0 || blockH <= 0 || blockOffsets == null || blockByteCounts == null) {
+            throw new IOException("Missing strip/tile layout");
+        }
+        blocksAcross = (width  + blockW - 1) / blockW;
+        blocksDown   = (height + blockH - 1) / blockH;
+        if (blockOffsets.length < blocksAcross * blocksDown) {
+            throw new IOException("Too few strip/tile offsets");
+        }
+
+        if (ch.size() <= Integer.MAX_VALUE) {
+            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            map.order(order);
+        }
+    }
+
+    // ---- decoded block cache
+
+    private float[] block(int index)
+    {
+        Tile t = cache.get(index);
+        if (t != null) {
+            t.lastUse = ++useTick;
+            return t.data;
+        }
+
+        // miss: decode outside any lock; if two threads race on the same
+        // block one result is simply dropped
+        float[] data;
+        try {
+            data = decodeBlock(index);
+        } catch (IOException | DataFormatException e) {
+            throw new IllegalStateException("Error decoding "+file+" block "+index+": "+e.getMessage(), e);
+        }
+        t = new Tile(data);
+        t.lastUse = ++useTick;
+        Tile prev = cache.putIfAbsent(index, t);
+        if (prev != null) return prev.data;
+
+        tilesDecoded.incrementAndGet();
+        if (cachedBytes.addAndGet(4L * data.length) > maxCacheBytes) {
+            evict(index);
+        }
+        return data;
+    }
+
+    private void evict(int keep)
+    {
+        synchronized (evictLock) {
+            while (cachedBytes.get() > maxCacheBytes && cache.size() > 1) {
+                Integer victim = null;
+                Tile vt = null;
+                for (Map.Entry<Integer,Tile> e : cache.entrySet()) {
+                    if (e.getKey() == keep) continue;
+                    if (vt == null || e.getValue().lastUse < vt.lastUse) {
+                        victim = e.getKey();
+                        vt = e.getValue();
+                    }
+                }
+                if (victim == null) break;
+                if (cache.remove(victim, vt)) {
+                    cachedBytes.addAndGet(-4L * vt.data.length);
+                }
+            }
+        }
+    }
+
+    private ByteBuffer compressedBytes(long off, long len) throws IOException
+    {
+        if (map != null) {
+            ByteBuffer b = map.duplicate();
+            b.position((int) off).limit((int) (off + len));
+            return b.slice();
+        }
+        return ch.map(FileChannel.MapMode.READ_ONLY, off, len);
+    }
+
+    // decode one strip/tile of band 0 into floats, blockW x blockH
+
+    private float[] decodeBlock(int index) throws IOException, DataFormatException
+    {
+        int rowsInBlock = blockH;
+        if (!tiled) {
+            rowsInBlock = Math.min(blockH, height - (index / blocksAcross) * blockH);
+        }
+        int spp = (planar == 2) ? 1 : samplesPerPixel;  // planar: band 0 blocks come first
+        int rowBytes = blockW * spp * bytesPerSample;
+        int expected = rowBytes * rowsInBlock;
+
+        byte[] raw = new byte[expected];
+        long len = blockByteCounts[index];
+        if (len > 0) {
+            ByteBuffer src = compressedBytes(blockOffsets[index], len);
+            switch (compression) {
+            case 1:     src.get(raw, 0, Math.min(expected, src.remaining())); break;
+            case 5:     lzwDecode(src, raw); break;
+            case 8:
+            case 32946: inflate(src, raw); break;
+            case 32773: packBitsDecode(src, raw); break;
+            }
+        }
+
+        if (predictor == 2) undoHorizontalPredictor(raw, rowBytes, rowsInBlock, spp);
+        else if (predictor == 3) raw = undoFloatPredictor(raw, rowBytes, rowsInBlock, spp);
+
+        float[] out = new float[blockW * blockH];
+        ByteBuffer bb = ByteBuffer.wrap(raw).order(predictor == 3 ? ByteOrder.BIG_ENDIAN : order);
+        int stride = spp * bytesPerSample;
+        int n = blockW * rowsInBlock;
+        for (int i = 0; i < n; i++) {
+            out[i] = (float) readSample(bb, i * stride);
+        }
+        return out;
+    }
+
+    private double readSample(ByteBuffer bb, int pos)
+    {
+        switch (sampleFormat) {
+        case 3:
+            return (bytesPerSample == 4) ? bb.getFloat(pos) : bb.getDouble(pos);
+        case 2:
+            switch (bytesPerSample) {
+            case 1: return bb.get(pos);
+            case 2: return bb.getShort(pos);
+            case 4: return bb.getInt(pos);
+            default: return bb.getLong(pos);
+            }
+        default:
+            switch (bytesPerSample) {
+            case 1: return bb.get(pos) & 0xFF;
+            case 2: return bb.getShort(pos) & 0xFFFF;
+            case 4: return bb.getInt(pos) & 0xFFFFFFFFL;
+            default: return bb.getLong(pos);
+            }
+        }
+    }
+
+    // ---- decompressors
+
+    private static void inflate(ByteBuffer src, byte[] dst) throws DataFormatException
+    {
+        Inflater inf = new Inflater();
+        try {
+            inf.setInput(src);
+            int n = 0;
+            while (n < dst.length && !inf.finished()) {
+                int r = inf.inflate(dst, n, dst.length - n);
+                if (r == 0 && (inf.needsInput() || inf.needsDictionary())) break;
+                n += r;
+            }
+        } finally {
+            inf.end();
+        }
+    }
+
+    // TIFF LZW: MSB-first codes, 9..12 bits, 256 = clear, 257 = EOI,
+    // code width bumps one entry early
+
+    private static void lzwDecode(ByteBuffer src, byte[] dst)
+    {
+        final int CLEAR = 256, EOI = 257;
+        int[] prefix = new int[4096];
+        byte[] suffix = new byte[4096];
+        byte[] first  = new byte[4096];
+        byte[] stack  = new byte[4096];
+        for (int i = 0; i < 256; i++) { suffix[i] = (byte) i; first[i] = (byte) i; prefix[i] = -1; }
+
+        int next = 258, codeLen = 9, old = -1;
+        int out = 0;
+        long bitBuf = 0;
+        int bitCount = 0;
+
+        while (out < dst.length) {
+            while (bitCount < codeLen) {
+                if (!src.hasRemaining()) return;
+                bitBuf = (bitBuf << 8) | (src.get() & 0xFF);
+                bitCount += 8;
+            }
+            int code = (int) ((bitBuf >>> (bitCount - codeLen)) & ((1 << codeLen) - 1));
+            bitCount -= codeLen;
+
+            if (code == EOI) return;
+            if (code == CLEAR) {
+                next = 258; codeLen = 9; old = -1;
+                continue;
+            }
+
+            int emit;
+            byte firstByte;
+            if (code < next) {
+                emit = code;
+                firstByte = first[code];
+            } else if (code == next && old >= 0) {
+                emit = -1; // KwKwK case
+                firstByte = first[old];
+            } else {
+                return; // corrupt stream
+            }
+
+            if (emit >= 0) {
+                int sp = 0;
+                for (int c = emit; c >= 0 && sp < stack.length; c = prefix[c]) stack[sp++] = suffix[c];
+                while (sp > 0 && out < dst.length) dst[out++] = stack[--sp];
+            } else {
+                int sp = 0;
+                for (int c = old; c >= 0 && sp < stack.length; c = prefix[c]) stack[sp++] = suffix[c];
+                while (sp > 0 && out < dst.length) dst[out++] = stack[--sp];
+                if (out < dst.length) dst[out++] = firstByte;
+            }
+
+            if (old >= 0 && next < 4096) {
+                prefix[next] = old;
+                suffix[next] = firstByte;
+                first[next]  = first[old];
+                next++;
+            }
+            old = code;
+
+            if (next + 1 >= (1 << codeLen) && codeLen < 12) codeLen++;
+        }
+    }
+
+    private static void packBitsDecode(ByteBuffer src, byte[] dst)
+    {
+        int out = 0;
+        while (out < dst.length && src.hasRemaining()) {
+            int n = src.get();
+            if (n >= 0) {
+                for (int i = 0; i <= n && out < dst.length && src.hasRemaining(); i++) dst[out++] = src.get();
+            } else if (n != -128) {
+                byte b = src.get();
+                for (int i = 0; i < 1 - n && out < dst.length; i++) dst[out++] = b;
+            }
+        }
+    }
+
+    // ---- predictors
+
+    private void undoHorizontalPredictor(byte[] raw, int rowBytes, int rows, int spp)
+    {
+        ByteBuffer bb = ByteBuffer.wrap(raw).order(order);
+        int stride = spp * bytesPerSample;
+        for (int r = 0; r < rows; r++) {
+            int base = r * rowBytes;
+            for (int p = base + stride; p < base + rowBytes; p += bytesPerSample) {
+                int q = p - stride;
+                switch (bytesPerSample) {
+                case 1: raw[p] = (byte) (raw[p] + raw[q]); break;
+                case 2: bb.putShort(p, (short) (bb.getShort(p) + bb.getShort(q))); break;
+                case 4: bb.putInt(p, bb.getInt(p) + bb.getInt(q)); break;
+                case 8: bb.putLong(p, bb.getLong(p) + bb.getLong(q)); break;
+                }
+            }
+        }
+    }
+
+    // floating point predictor: bytes differenced across the row, then
+    // split into byte planes, most significant first; result is big endian
+
+    private byte[] undoFloatPredictor(byte[] raw, int rowBytes, int rows, int spp)
+    {
+        byte[] out = new byte[raw.length];
+        int samples = rowBytes / bytesPerSample;
+        int stride = spp;
+        for (int r = 0; r < rows; r++) {
+            int base = r * rowBytes;
+            for (int i = base + stride; i < base + rowBytes; i++) raw[i] = (byte) (raw[i] + raw[i - stride]);
+            for (int s = 0; s < samples; s++) {
+                for (int b = 0; b < bytesPerSample; b++) {
+                    out[base + s * bytesPerSample + b] = raw[base + b * samples + s];
+                }
+            }
+        }
+        return out;
+    }
+
+    // ---- sidecar
+
+    // decode every block and write an uncompressed float32 sidecar;
+    // verticalEpsg != 0 marks samples that are no longer in the source datum
+
+    public void writeSidecar(File side, int verticalEpsg) throws IOException
+    {
+        writeSidecar(side, verticalEpsg, 0, null);
+    }
+
+    // as above but each sample is passed through adjust(col,row,value)
+    // first, converting it from fromEpsg to verticalEpsg
+
+    public void writeSidecar(File side, int verticalEpsg, int fromEpsg, SampleAdjuster adjust) throws IOException
+    {
+        File tmp = new File(side.getPath() + ".tmp");
+        try (OutputStream fos = new BufferedOutputStream(new FileOutputStream(tmp), 1 << 20)) {
+            ByteBuffer hdr = ByteBuffer.allocate(SIDECAR_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            hdr.put(SIDECAR_MAGIC);
+            hdr.putInt(width).putInt(height);
+            hdr.putLong(file.length()).putLong(file.lastModified());
+            hdr.putInt(verticalEpsg).putInt(verticalEpsg != 0 ? fromEpsg : 0);
+            fos.write(hdr.array());
+
+            ByteBuffer row = ByteBuffer.allocate(4 * width).order(ByteOrder.LITTLE_ENDIAN);
+            for (int r = 0; r < height; r++) {
+                row.clear();
+                for (int c = 0; c < width; c++) {
+                    double v = sample(c, r);
+                    if (adjust != null) v = adjust.adjust(c, r, v);
+                    row.putFloat((float) v);
+                }
+                fos.write(row.array(), 0, row.position());
+            }
+        }
+        if (!tmp.renameTo(side)) {
+            tmp.delete();
+            throw new IOException("Could not create sidecar "+side);
+        }
+    }
+
+    public interface SampleAdjuster {
+        double adjust(int col, int row, double value);
+    }
+
+    // map a sidecar if it matches this source; false if missing or stale
+
+    boolean mapSidecar(File side) throws IOException
+    {
+        if (!side.isFile() || side.length() != SIDECAR_HEADER + 4L * width * height) return false;
+        int shift = sidecarRowShift(width);
+        if (shift < 0) return false;
+        try (FileChannel sc = FileChannel.open(side.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer hdr = ByteBuffer.allocate(SIDECAR_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            while (hdr.hasRemaining() && sc.read(hdr, hdr.position()) > 0) { }
+            if (hdr.hasRemaining()) return false;
+            byte[] magic = new byte[SIDECAR_MAGIC.length];
+            hdr.get(0, magic);
+            if (!Arrays.equals(magic, SIDECAR_MAGIC)) return false;
+            if (hdr.getInt(8) != width || hdr.getInt(12) != height) return false;
+            if (hdr.getLong(16) != file.length() || hdr.getLong(24) != file.lastModified()) return false;
+
+            int rowsPer = 1 << shift;
+            MappedByteBuffer[] g = new MappedByteBuffer[(height + rowsPer - 1) >>> shift];
+            for (int k = 0; k < g.length; k++) {
+                long r0 = (long) k << shift;
+                long rows = Math.min(rowsPer, height - r0);
+                long off = (k == 0) ? 0 : SIDECAR_HEADER + 4L * width * r0;
+                long len = 4L * width * rows + ((k == 0) ? SIDECAR_HEADER : 0);
+                g[k] = sc.map(FileChannel.MapMode.READ_ONLY, off, len);
+                g[k].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            gridVerticalEpsg = hdr.getInt(32);
+            gridFromEpsg = hdr.getInt(36);
+            gridShift = shift;
+            gridMask = rowsPer - 1;
+            grid = g;
+        }
+        // decoded tiles are no longer needed
+        cache.clear();
+        cachedBytes.set(0);
+        return true;
+    }
+
+    // log2 of the rows per sidecar buffer: the most rows (a power of two)
+    // that fit in one mapping along with the header; -1 if a single row
+    // won't
+
+    static int sidecarRowShift(int width)
+    {
+        long rows = (Integer.MAX_VALUE - SIDECAR_HEADER) / (4L * width);
+        if (rows < 1) return -1;
+        return 63 - Long.numberOfLeadingZeros(rows);
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        boolean sidecar = false;
+        int i = 0;
+        if (args.length > 0 && args[0].equals("-sidecar")) { sidecar = true; i++; }
+        if (i >= args.length) {
+            System.err.println("Usage: java MappedGeoTiff [-sidecar] <dem.tif> [col row]...");
+            System.exit(1);
+        }
+        long t0 = System.nanoTime();
+        try (MappedGeoTiff m = MappedGeoTiff.open(new File(args[i++]), sidecar)) {
+            long t1 = System.nanoTime();
+            System.out.println("MappedGeoTiff: "+m.getWidth()+" x "+m.getHeight()+" opened in "
+                               +((t1-t0)/1_000_000)+" ms, sidecar "+m.isSidecar());
+            while (i + 1 < args.length) {
+                int c = Integer.parseInt(args[i]), r = Integer.parseInt(args[i+1]);
+                i += 2;
+                System.out.printf("(%d,%d) = %.3f%n", c, r, m.sample(c, r));
+            }
+            System.out.println("MappedGeoTiff: tiles decoded "+m.getTilesDecoded()+", cached bytes "+m.getCachedBytes());
+        }
+    }
+
+} // MappedGeoTiff
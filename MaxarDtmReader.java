@@ -1,7 +1,7 @@
 // ReadMaxarDtm.java
 // Bobby Krupczak
 // with ChatGPT help
-// javac -cp "lib/*" MaxarDtmReader.java
+// javac -cp ".:lib/*" MaxarDtmReader.java
 // java -cp ".:lib/*" MaxarDtmReader 
 
 // MaxarDtmReader.java – robust DTM reader using mil.nga.tiff that will
@@ -29,6 +29,7 @@
 // see this webpage for various WGS84 variants
 // https://support.esri.com/en-us/knowledge-base/wgs-1984-is-not-what-you-think-000036058
 
+import mil.nga.tiff.FieldType;
 import mil.nga.tiff.FileDirectory;
 import mil.nga.tiff.FileDirectoryEntry;
 import mil.nga.tiff.TiffReader;
@@ -37,10 +38,7 @@ import mil.nga.tiff.TIFFImage;
 import mil.nga.tiff.util.TiffException;
 
 import com.agilesrc.dem4j.dted.DTEDLevelEnum;
-import com.agilesrc.dem4j.dted.impl.FileBasedDTED;
 import com.agilesrc.dem4j.exceptions.CorruptTerrainException;
-import com.agilesrc.dem4j.exceptions.InvalidValueException;
-import com.agilesrc.dem4j.Point;
 
 import org.locationtech.proj4j.CRSFactory;
 import org.locationtech.proj4j.CoordinateReferenceSystem;
@@ -52,8 +50,12 @@ import java.io.File;
 import java.nio.file.Path;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.nio.file.Paths;
@@ -61,8 +63,6 @@ import java.util.Arrays;
 
 import com.openathena.core.GeoTiffDataType;
 import com.openathena.core.EGMOffsetProvider;
-import com.openathena.core.EGM96OffsetAdapter;
-import com.openathena.core.EGM2008OffsetAdapter;
 import com.openathena.core.OpenAthenaCore;
 import com.openathena.core.RequestedValueOOBException;
 import com.openathena.core.MathUtils;
@@ -80,9 +80,63 @@ public class MaxarDtmReader implements AutoCloseable
 
     private static final double idwPower = 1.875d;
 
+    // how the elevation samples are held once a GeoTiff is opened
+    // RASTERS   - keep mil.nga.tiff Rasters and box every sample (original behavior)
+    // PRIMITIVE - copy band 0 into a flat float[] or short[] once at open;
+    //             falls back to RASTERS if the sample format isn't supported
+    // MAPPED    - don't decode at open; mmap the file and decode only the
+    //             tiles/strips lookups touch (see MappedGeoTiff); the
+    //             header comes from DemProbe and mil.nga.tiff isn't used
+    // SIDECAR   - like MAPPED but decode once into <file>.grid and map that
+    //             on later opens; MAPPED/SIDECAR fall back to PRIMITIVE.
+    //             If the sidecar was baked to WGS84 HAE (see
+    //             writeEllipsoidalSidecar) no geoid is loaded or applied
+    public enum LoadMode { RASTERS, PRIMITIVE, MAPPED, SIDECAR }
+
+    // how DTED posts are interpolated
+    // HAVERSINE_IDW - IDW over the 4 surrounding posts with haversine
+    //                 distances (original behavior, the default)
+    // PLANAR_IDW    - same weights in a cell-local equirectangular metric,
+    //                 no trig per lookup (see DtedFile.idw); TestDtedIdw
+    //                 checks it stays within 1 cm of HAVERSINE_IDW
+    // BILINEAR      - bilinear over the 4 surrounding posts
+    public enum DtedInterpolation { HAVERSINE_IDW, PLANAR_IDW, BILINEAR }
+    public static DtedInterpolation defaultDtedInterpolation = DtedInterpolation.HAVERSINE_IDW;
+    private volatile DtedInterpolation dtedInterpolation = defaultDtedInterpolation;
+
+    // GeoTiff 3x3 IDW from precomputed weights (IdwWeightTable) instead of
+    // sqrt/pow per pixel; off by default, TestIdwWeightTable reports the error
+    public static boolean defaultUseIdwWeightTable = false;
+    private volatile IdwWeightTable idwTable = defaultUseIdwWeightTable ? IdwWeightTable.forPower(idwPower) : null;
+
+    // vertical EPSG recorded in baked sidecars; lattice spacing in pixels
+    // for the geoid offsets baked into them
+    private static final int WGS84_HAE_EPSG = 4979;
+    private static final int BAKE_STEP = 16;
+
+    // min/max pyramid for TerrainProfile (see ElevationPyramid), kept in
+    // <file>[.<epsg>].pyr; built on first trace, or at open if defaultLoadPyramid
+    public static boolean defaultLoadPyramid = false;
+    private volatile ElevationPyramid pyramid;
+
     private FileDirectory dir;
     private Rasters rasters;
 
+    // band 0 copied out of rasters, row-major, index = row*width + col
+    // only one of these is non-null; shorts are stored signed and
+    // gridOffset re-centers unsigned 16-bit samples
+    private float[] gridF;
+    private short[] gridS;
+    private double gridOffset = 0.0;
+    private MappedGeoTiff mapped;
+    private LoadMode loadMode = LoadMode.PRIMITIVE;
+    // SIDECAR mode mapped a sidecar whose samples already have the geoid
+    // applied (see writeEllipsoidalSidecar); lookups skip the geoid
+    private boolean bakedEllipsoidal = false;
+    // vertical datum the baked samples came from, e.g. "EPSG:5773"; null
+    // for sidecars written before it was recorded
+    private String bakedFromDatum;
+
     private int width, height;
 
     // Affine: x = a0 + a1*col + a2*row; y = b0 + b1*col + b2*row
@@ -92,9 +146,16 @@ public class MaxarDtmReader implements AutoCloseable
     private boolean georeferenced;
     private Double noData;
 
-    private String dataEpsg;
-    private CoordinateReferenceSystem dataCRS, wgs84;
-    private CoordinateTransform dataToWgs, wgsToData;
+    // a reader may be shared by many threads once constructed; the only
+    // state that can change after that is the lazily enabled CRS (guarded
+    // by this, published via volatile dataCRS) and per-thread scratch.
+    // proj4j transforms aren't thread-safe so every thread builds its own
+    // from the CRS parameters (see Scratch). mil.nga.tiff Rasters reads
+    // samples by repositioning a shared ByteBuffer, so RASTERS lookups
+    // are serialized on rasters (see sample)
+    private volatile String dataEpsg;
+    private volatile CoordinateReferenceSystem dataCRS;
+    private CoordinateReferenceSystem wgs84;
     private String gdal; // gdalinfo field if present
 
     private Method mGetPixelSampleDouble; // (x,y,band)->double
@@ -109,10 +170,20 @@ public class MaxarDtmReader implements AutoCloseable
     // PixelIsPoint? true = centers, false = corners    
     private boolean centerAnchored = false; 
 
-    private final CRSFactory crsFactory = new CRSFactory();
-    private final CoordinateTransformFactory ctf = new CoordinateTransformFactory();
-    // Tiny cache so we don’t rebuild transforms for repeated calls
-    private Map<String, CoordinateTransform> reprojCache = new java.util.HashMap<>();
+    // per-thread scratch for the lookup path so getAltFromLatLon doesn't
+    // allocate ProjCoordinates or col/row arrays on every call; also holds
+    // this thread's own copies of the WGS84<->data CRS transforms
+    private static final class Scratch {
+        final ProjCoordinate src = new ProjCoordinate();
+        final ProjCoordinate dst = new ProjCoordinate();
+        final double[] rc = new double[2];
+        // DTED IDW neighbours
+        final double[] nLat = new double[4], nLon = new double[4], nElev = new double[4];
+        // GeoTiff 3x3 block for the IDW weight table
+        final double[] block = new double[9];
+        CoordinateTransform wgsToData, dataToWgs;
+    }
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
 
     // once we've picked a directory, keep map of its tag to entry mapping
     private Map<Integer,FileDirectoryEntry> directoryIndexTags = new HashMap<Integer,FileDirectoryEntry>();
@@ -120,7 +191,7 @@ public class MaxarDtmReader implements AutoCloseable
     // corners of the bounding box calculated from the GeoTiff or DTED, not
     // from the filename; lat,lon 
     private double n,s,e,w;
-    protected EGMOffsetProvider offsetProvider = null; // initialized later
+    protected volatile EGMOffsetProvider offsetProvider = null; // initialized later
     
     // DTED params
     public int numRows, numCols;
@@ -129,19 +200,25 @@ public class MaxarDtmReader implements AutoCloseable
     // public params
     protected transient File geofile;
     private transient TIFFImage tiff;
-    private FileBasedDTED dted;
+    private DtedFile dted;
     public boolean isDTED = false;
     public String filepath;
     public String filename;
     public String extension;
     public DTEDLevelEnum dtedLevel = null;
-    public int numAltLookups = 0;
+    private final LongAdder altLookups = new LongAdder();
     // type of GeoTiff this object represents
     public GeoTiffDataType gType;    
     
     public MaxarDtmReader(File geofile) throws Exception
+    {
+        this(geofile, LoadMode.PRIMITIVE);
+    }
+
+    public MaxarDtmReader(File geofile, LoadMode mode) throws Exception
     {
         this.geofile = geofile;
+        this.loadMode = mode;
         
         filepath = geofile.getPath();
         filename = geofile.toPath().getFileName().toString();
@@ -163,6 +240,10 @@ public class MaxarDtmReader implements AutoCloseable
 
             readGeofile(filepath);
         }
+
+        if (defaultLoadPyramid && (isDTED || georeferenced)) {
+            getElevationPyramid();
+        }
     }
 
     // read a GeoTiff file 
@@ -170,9 +251,17 @@ public class MaxarDtmReader implements AutoCloseable
     private void readGeofile(String filepath) throws Exception
     {
         // System.out.println("readGeofile: "+filepath);
-        long t0, t1;
-
 
+        // large DEMs: map the file and take size, georeferencing and CRS
+        // from the first IFD, so TiffReader never pulls the file onto
+        // the heap; if it can't be mapped read it whole as before
+        if (loadMode == LoadMode.MAPPED || loadMode == LoadMode.SIDECAR) {
+            if (readMappedHeader()) {
+                finishGeofile();
+                return;
+            }
+            loadMode = LoadMode.PRIMITIVE;
+        }
 
         tiff = TiffReader.readTiff(geofile);
 
@@ -218,13 +307,80 @@ public class MaxarDtmReader implements AutoCloseable
         // this takes longer for cop30 and not sure why
         this.rasters = dir.readRasters();
 
+        // copy band 0 into a primitive array so lookups don't box;
+        // if we can't, stay with rasters
+        if (loadMode == LoadMode.PRIMITIVE) {
+            if (loadPrimitiveGrid()) {
+                this.rasters = null;
+            }
+            else {
+                loadMode = LoadMode.RASTERS;
+            }
+        }
+
         // Horizontal & vertical CRS/datum detection
         this.horizontalCRS = determineHorizontalCRS(dir);
         this.verticalCRS = determineVerticalCRS(dir);
 
+        finishGeofile();
+
+    } // readGeofile
+
+    // MAPPED/SIDECAR: MappedGeoTiff for the samples and DemProbe (TiffIfd,
+    // same rules as the FileDirectory path above) for everything else;
+    // false, with nothing kept open, if either can't handle the file
+
+    private boolean readMappedHeader()
+    {
+        DemProbe p;
+        try {
+            mapped = MappedGeoTiff.open(geofile, loadMode == LoadMode.SIDECAR);
+            p = DemProbe.probe(geofile);
+        } catch (IOException e) {
+            System.err.println("[MaxarDtmReader] Can't map "+filename+": "+e.getMessage());
+            p = null;
+        }
+        if (p == null || p.isDTED || mapped.getWidth() != p.width || mapped.getHeight() != p.height) {
+            if (mapped != null) {
+                try { mapped.close(); } catch (IOException ignore) {}
+            }
+            mapped = null;
+            return false;
+        }
+
+        this.width = p.width;
+        this.height = p.height;
+        this.centerAnchored = p.centerAnchored;
+        this.gdal = p.gdalMetadata;
+        if (gdal != null) gType = GeoTiffDataType.MAXAR;
+
+        double[] a = p.getGeoTransform();
+        if (!Double.isNaN(a[0])) {
+            setAffine(a[0], a[1], a[2], a[3], a[4], a[5]);
+            this.georeferenced = true;
+        } else {
+            setAffine(0,1,0, 0,0,-1);
+            this.georeferenced = false;
+            System.err.println("[MaxarDtmReader] No georeferencing found; operating in pixel space.");
+        }
+        this.horizontalCRS = p.horizontalCRS;
+        this.verticalCRS = p.verticalCRS;
+        bakedEllipsoidal = mapped.isSidecar() && mapped.getSidecarVerticalEpsg() == WGS84_HAE_EPSG;
+        if (bakedEllipsoidal && mapped.getSidecarFromEpsg() != 0) {
+            bakedFromDatum = "EPSG:"+mapped.getSidecarFromEpsg();
+        }
+        return true;
+    }
+
+    // CRS transforms, WGS84 corners and vertical datum, however the
+    // header was read
+
+    private void finishGeofile()
+    {
         if (georeferenced) {
             // Prefer the horizontal CRS we parsed earlier
-            this.dataEpsg = (this.horizontalCRS != null) ? this.horizontalCRS : detectEpsgRobust(dir);
+            this.dataEpsg = (this.horizontalCRS != null) ? this.horizontalCRS
+                : (dir != null ? detectEpsgRobust(dir) : null);
             if (this.dataEpsg != null) {
                 // this will create transforms
                 enableCrs(this.dataEpsg);
@@ -246,11 +402,11 @@ public class MaxarDtmReader implements AutoCloseable
         // the gType vertical datum; if needed, set offset provider
         
         // takes a long time on 3dep, cop30, eudtm
-        // is this due to size of EGM2008?  Yes
+        // is this due to size of EGM2008?  Yes; GeoidRegistry now
+        // loads each geoid once per process, not once per reader
 
         testVerticalDatum();
-
-    } // readGeofile
+    }
 
     // read/process DTED file and get its parameters
     // only handles DTEDs
@@ -261,21 +417,23 @@ public class MaxarDtmReader implements AutoCloseable
 
         try {
             File geofile = new File(inputFilePath);
-            dted = new FileBasedDTED(geofile);
-            dtedLevel = dted.getDTEDLevel();
+            // headers parsed and checksums verified once here; lookups
+            // read posts straight from the mapping
+            dted = new DtedFile(geofile);
+            dtedLevel = dtedLevelEnum(dted.getLevel());
             
             // System.out.println("DTED level "+dtedLevel);
             
-            if (dtedLevel.equals(DTEDLevelEnum.DTED0) || dtedLevel.equals(DTEDLevelEnum.DTED1)) {
+            if (dted.getLevel() < 2) {
                 System.out.println("DTED2 or DTED3 or higher is required");
                 throw new TiffException("DTED2, 3 or higher is required");
             }
 
             // can always test this against gdalinfo output
-            n = dted.getNorthWestCorner().getLatitude();
-            w = dted.getNorthWestCorner().getLongitude();
-            s = dted.getSouthEastCorner().getLatitude();
-            e = dted.getSouthEastCorner().getLongitude();
+            n = dted.getNorth();
+            w = dted.getWest();
+            s = dted.getSouth();
+            e = dted.getEast();
                 
             latSpacing = dted.getLatitudeInterval();
             lonSpacing = dted.getLongitudeInterval();
@@ -296,6 +454,15 @@ public class MaxarDtmReader implements AutoCloseable
             testVerticalDatum();
         }
         catch (Exception e) {
+            // don't leave the mapping open on a file we refused
+            if (dted != null) {
+                try {
+                    dted.close();
+                } catch (IOException ce) {
+                    e.addSuppressed(ce);
+                }
+                dted = null;
+            }
             throw new TiffException(e.getMessage());
         }
 
@@ -303,14 +470,34 @@ public class MaxarDtmReader implements AutoCloseable
 
     } // readDted
 
+    // dem4j's enum for DtedFile's level; it stops at DTED2, so levels
+    // above that (finer than 1") report as DTED2
+
+    static DTEDLevelEnum dtedLevelEnum(int level)
+    {
+        if (level <= 0) return DTEDLevelEnum.DTED0;
+        if (level == 1) return DTEDLevelEnum.DTED1;
+        return DTEDLevelEnum.DTED2;
+    }
+
     // once DEM has been parsed and loaded, check if vertical CRS was dectected in metadata
     // and possiblyl override default that was based on file extension
     // Maxar DTMs have vertical CRS set in GDAL info
     
     private void testVerticalDatum()
     {
-        // default to gType
-        offsetProvider = gType.getOffsetProvider();
+        // baked sidecar: samples are WGS84 HAE whatever the file says, and
+        // the (slow to load) offset provider is only made if someone asks
+        // for an EGM altitude
+        if (bakedEllipsoidal) {
+            offsetProvider = null;
+            verticalDatum = "EPSG:"+WGS84_HAE_EPSG;
+            return;
+        }
+
+        // default to gType; providers are shared by every reader in the
+        // process and load their geoid on first lookup (GeoidRegistry)
+        offsetProvider = GeoidRegistry.forDataType(gType);
         verticalDatum = gType.getVertDatum();
         
         // look at verticalCRS string and if set, override gType
@@ -323,29 +510,15 @@ public class MaxarDtmReader implements AutoCloseable
 
         // System.out.println("testVerticalDatum: overriding vertical datum with "+verticalCRS);
 
-        switch (verticalCRS) {
-        case "EPSG:3855":
-            offsetProvider = new EGM2008OffsetAdapter();
-            verticalDatum = verticalCRS;
-            break;
-        case "EPSG:5773":
-            offsetProvider = new EGM96OffsetAdapter();
-            verticalDatum = verticalCRS;            
-            break;
-        case "EPSG:5703":
-            // NAVD88 -> EGM2008 is acceptable substitute
-            offsetProvider = new EGM2008OffsetAdapter();
-            verticalDatum = verticalCRS;            
-            break;
-        case "EPSG:4979":
-            // WGS84; no need for offset provider
-            // but we load 2008 so we can also provide egm2008 altitude
-            offsetProvider = new EGM2008OffsetAdapter();
-            verticalDatum = verticalCRS;
-            break;
-        default:
+        // EGM2008 also stands in for NAVD88 and is loaded for WGS84 HAE
+        // DEMs so EGM altitudes can still be given
+        GeoidRegistry.Model m = GeoidRegistry.forVerticalDatum(verticalCRS);
+        if (m == null) {
             System.out.println("Unrecognized vertical datum "+verticalCRS);
+            return;
         }
+        offsetProvider = GeoidRegistry.get(m);
+        verticalDatum = verticalCRS;
         
     } // testVerticalDatum
 
@@ -358,6 +531,23 @@ public class MaxarDtmReader implements AutoCloseable
     public int getHeight() { return height; }
     public boolean isGeoreferenced() { return georeferenced; }
     public String getDataEpsg() { return dataEpsg; }
+    public LoadMode getLoadMode() { return loadMode; }
+    public DtedInterpolation getDtedInterpolation() { return dtedInterpolation; }
+    public void setDtedInterpolation(DtedInterpolation m) { dtedInterpolation = m; }
+    public boolean getUseIdwWeightTable() { return idwTable != null; }
+    public void setUseIdwWeightTable(boolean use) { idwTable = use ? IdwWeightTable.forPower(idwPower) : null; }
+    public long getNumAltLookups() { return altLookups.sum(); }
+
+    // approximate heap/cache bytes held for samples; MAPPED/SIDECAR grow
+    // as tiles are decoded, RASTERS is estimated at 8 bytes per pixel
+    public long getDecodedBytes()
+    {
+        if (isDTED) return geofile.length();
+        if (gridF != null) return 4L * gridF.length;
+        if (gridS != null) return 2L * gridS.length;
+        if (mapped != null) return mapped.getCachedBytes();
+        return 8L * width * height;
+    }
     // public Optional<Double> getNoData() { return Optional.ofNullable(noData); }
     public String getVerticalDatum() { return verticalDatum; }
 
@@ -403,6 +593,7 @@ public class MaxarDtmReader implements AutoCloseable
     public Bounds getBoundsWGS84Old() {
         requireGeoref("Bounds in WGS84");
         Bounds b = getBoundsDataCRS();
+        CoordinateTransform dataToWgs = transforms().dataToWgs;
         ProjCoordinate p1 = transform(dataToWgs, b.minX, b.minY);
         ProjCoordinate p2 = transform(dataToWgs, b.minX, b.maxY);
         ProjCoordinate p3 = transform(dataToWgs, b.maxX, b.minY);
@@ -430,6 +621,7 @@ public class MaxarDtmReader implements AutoCloseable
 
         double west =  Double.POSITIVE_INFINITY, east =  Double.NEGATIVE_INFINITY;
         double south = Double.POSITIVE_INFINITY, north = Double.NEGATIVE_INFINITY;
+        CoordinateTransform dataToWgs = transforms().dataToWgs;
 
         for (double[] p : xy) {
             src.x = p[0]; src.y = p[1];
@@ -446,7 +638,7 @@ public class MaxarDtmReader implements AutoCloseable
     
     private double getElevationProjectedBilinear(double x, double y)
     {
-        double[] rc = pixelFromWorld(x, y);
+        double[] rc = pixelFromWorld(x, y, scratch.get().rc);
         double col = rc[0], row = rc[1];
         if (col < 0 || row < 0 || col > (width-1) || row > (height-1)) return Double.NaN;
 
@@ -454,8 +646,15 @@ public class MaxarDtmReader implements AutoCloseable
         int c1 = Math.min(c0+1, width-1), r1 = Math.min(r0+1, height-1);
         double dc = col - c0, dr = row - r0;
 
-        Double z00 = sample(c0, r0), z10 = sample(c1, r0), z01 = sample(c0, r1), z11 = sample(c1, r1);
-        if (z00==null || z10==null || z01==null || z11==null) return Double.NaN;
+        double z00, z10, z01, z11;
+        if (loadMode != LoadMode.RASTERS) {
+            z00 = sampleGrid(c0, r0); z10 = sampleGrid(c1, r0); z01 = sampleGrid(c0, r1); z11 = sampleGrid(c1, r1);
+        }
+        else {
+            Double d00 = sample(c0, r0), d10 = sample(c1, r0), d01 = sample(c0, r1), d11 = sample(c1, r1);
+            if (d00==null || d10==null || d01==null || d11==null) return Double.NaN;
+            z00 = d00; z10 = d10; z01 = d01; z11 = d11;
+        }
 
         double z0 = z00*(1-dc) + z10*dc;
         double z1 = z01*(1-dc) + z11*dc;
@@ -488,11 +687,16 @@ public class MaxarDtmReader implements AutoCloseable
         requireGeoref("IDW elevation");
 
         // Convert world → pixel coordinates (col,row), fractional.
-        double[] rc = pixelFromWorld(xData, yData);
-        double col = rc[0], row = rc[1];
+        double[] rc = pixelFromWorld(xData, yData, scratch.get().rc);
+        return idwAtPixel(rc[0], rc[1], radius, power, epsilon);
+    }
+
+    // IDW once we have fractional pixel coordinates; NaN if outside
 
-        // If OOB (outside pixel-edge box [0..width]x[0..height]), short-circuit
-        if (col < 0 || row < 0 || col > width || row > height) {
+    private double idwAtPixel(double col, double row, int radius, double power, double epsilon)
+    {
+        // If OOB (outside pixel-edge box [0..width]x[0..height]) or NaN, short-circuit
+        if (!(col >= 0 && row >= 0 && col <= width && row <= height)) {
             return Double.NaN;
         }
 
@@ -505,14 +709,35 @@ public class MaxarDtmReader implements AutoCloseable
         int rMin = Math.max(0, r0 - radius);
         int rMax = Math.min(height - 1, r0 + radius);
 
+        boolean primitive = (loadMode != LoadMode.RASTERS);
+
+        // full 3x3 inside the raster: precomputed weights, a few multiply-adds
+        IdwWeightTable table = idwTable;
+        if (table != null && primitive && radius == 1 && power == table.getPower()
+            && cMax - cMin == 2 && rMax - rMin == 2) {
+            double[] v = scratch.get().block;
+            for (int k = 0, r = rMin; r <= rMax; r++) {
+                for (int c = cMin; c <= cMax; c++) v[k++] = sampleGrid(c, r);
+            }
+            return table.interpolate(col - c0, row - r0, v);
+        }
+
         double wsum = 0.0;
         double vsum = 0.0;
 
         for (int r = rMin; r <= rMax; r++) {
             for (int c = cMin; c <= cMax; c++) {
-                // Fetch the pixel; assume your existing 'sample(c,r)' returns null for NoData/OOB
-                Double v = sample(c, r);
-                if (v == null) continue;
+                double v;
+                if (primitive) {
+                    // r,c already clamped to the raster above
+                    v = sampleGrid(c, r);
+                }
+                else {
+                    // Fetch the pixel; assume your existing 'sample(c,r)' returns null for NoData/OOB
+                    Double d = sample(c, r);
+                    if (d == null) continue;
+                    v = d;
+                }
 
                 // Distance in pixel space to the pixel center:
                 double dc = (col - (c + 0.5));
@@ -536,7 +761,7 @@ public class MaxarDtmReader implements AutoCloseable
 
         return vsum / wsum;
 
-    } // getElevationProjectedIDW
+    } // idwAtPixel
 
     // for a lat,lon, use our EGM96 offset provider to return the lat,lon
     // we should allocate an offsetprovider anyway ?
@@ -545,9 +770,95 @@ public class MaxarDtmReader implements AutoCloseable
     
     public double getEGMOffsetForLatLon(double lat, double lon)
     {
-        return offsetProvider.getEGMOffsetAtLatLon(lat,lon);
+        return geoidOffset(lat,lon);
     }
 
+    // GeoidRegistry's providers are safe to share: mapped geoid grids
+    // take no lock, the core adapters they fall back to are serialized
+    
+    private double geoidOffset(double lat, double lon)
+    {
+        EGMOffsetProvider p = offsetProvider;
+        if (p == null) p = lazyOffsetProvider();
+        return p.getEGMOffsetAtLatLon(lat,lon);
+    }
+
+    // baked tiles skip the provider at open; use the geoid the samples
+    // were baked from, so EGM altitudes match the tile opened unbaked,
+    // or EGM2008 as for EPSG:4979 DEMs if the sidecar doesn't say
+    
+    private synchronized EGMOffsetProvider lazyOffsetProvider()
+    {
+        if (offsetProvider == null) {
+            GeoidRegistry.Model m = GeoidRegistry.forVerticalDatum(bakedFromDatum);
+            offsetProvider = GeoidRegistry.get(m != null ? m : GeoidRegistry.Model.EGM2008);
+        }
+        return offsetProvider;
+    }
+
+    // write the sidecar (<file>.grid) with the geoid offset already added
+    // to every sample so they are WGS84 HAE; opening with LoadMode.SIDECAR
+    // then maps it and never touches the geoid on lookups.  The offset is
+    // evaluated on a lattice every BAKE_STEP pixels and bilinearly
+    // interpolated between (the geoid grid is ~9km so the difference is
+    // far below the DEM's precision).  Returns false, writing nothing, for
+    // DTED or DEMs already in WGS84 HAE.
+
+    public boolean writeEllipsoidalSidecar() throws IOException
+    {
+        if (isDTED || bakedEllipsoidal || !isGeoidVerticalDatum()) return false;
+        requireGeoref("Ellipsoidal sidecar");
+
+        int lw = (width + BAKE_STEP - 1) / BAKE_STEP + 1;
+        int lh = (height + BAKE_STEP - 1) / BAKE_STEP + 1;
+        float[] lattice = new float[lw * lh];
+        Scratch sc = transforms();
+        for (int j = 0; j < lh; j++) {
+            for (int i = 0; i < lw; i++) {
+                worldFromPixel(latticePixel(i, width) + 0.5, latticePixel(j, height) + 0.5, sc.rc);
+                sc.src.x = sc.rc[0];
+                sc.src.y = sc.rc[1];
+                sc.dataToWgs.transform(sc.src, sc.dst);
+                lattice[j * lw + i] = (float) geoidOffset(sc.dst.y, sc.dst.x);
+            }
+        }
+
+        MappedGeoTiff.SampleAdjuster adjust = (col, row, v) -> {
+            int i = Math.min(col / BAKE_STEP, lw - 2), j = Math.min(row / BAKE_STEP, lh - 2);
+            int c0 = latticePixel(i, width), c1 = latticePixel(i + 1, width);
+            int r0 = latticePixel(j, height), r1 = latticePixel(j + 1, height);
+            double fx = (c1 > c0) ? (col - c0) / (double) (c1 - c0) : 0.0;
+            double fy = (r1 > r0) ? (row - r0) / (double) (r1 - r0) : 0.0;
+            double top = lattice[j * lw + i] * (1 - fx) + lattice[j * lw + i + 1] * fx;
+            double bot = lattice[(j + 1) * lw + i] * (1 - fx) + lattice[(j + 1) * lw + i + 1] * fx;
+            return v + top * (1 - fy) + bot * fy;
+        };
+
+        // decode from the GeoTiff itself, not from whatever sidecar we have
+        try (MappedGeoTiff src = new MappedGeoTiff(geofile)) {
+            src.writeSidecar(MappedGeoTiff.sidecarFor(geofile), WGS84_HAE_EPSG, epsgCode(verticalDatum), adjust);
+        }
+        return true;
+    }
+
+    // 5773 for "EPSG:5773"; 0 if it isn't an EPSG code
+    private static int epsgCode(String name)
+    {
+        if (name == null || !name.startsWith("EPSG:")) return 0;
+        try {
+            return Integer.parseInt(name.substring(5));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int latticePixel(int i, int size)
+    {
+        return Math.min(i * BAKE_STEP, size - 1);
+    }
+
+    public boolean isBakedEllipsoidal() { return bakedEllipsoidal; }
+
     // we could be smarter here because many of our altitudes are
     // in EGM but its too easy to just get the altitude in WGS84 and subtract
     // the offset; less code to maintain but potentially calls getEGMOffset twice
@@ -563,137 +874,101 @@ public class MaxarDtmReader implements AutoCloseable
     }
 
     // given a DTED, and lat,lon in decimal degrees, return WGS84 altitude
-    // no interpolation; agilesrc dem4j takes the nearest point and returns that elevation
+    // no interpolation; takes the nearest post and returns that elevation
     
     private double getAltFromLatLonDted(double lat, double lon) throws RequestedValueOOBException, CorruptTerrainException
     {
-            Point point = new Point(lat, lon);
-            try {
-                double EGM96_altitude = this.dted.getElevation(point).getElevation();
-
-                // DTED vertical datum is height above EGM96 geoid, we must convert it to height above WGS84 ellipsoid
-		// re issue #54
-
-                double WGS84_altitude = EGM96_altitude + offsetProvider.getEGMOffsetAtLatLon(lat,lon);
-		
-                return WGS84_altitude;
-		
-            } catch (CorruptTerrainException e) {
-                throw new CorruptTerrainException("The terrain data in the DTED file is corrupt.", e);
-            } catch (InvalidValueException e) {
+            if (!dted.contains(lat, lon)) {
                 throw new RequestedValueOOBException("getAltFromLatLon arguments out of bounds!", lat, lon);
             }
+            double EGM96_altitude = dted.nearest(lat, lon);
+            if (Double.isNaN(EGM96_altitude)) {
+                throw new CorruptTerrainException("The terrain data in the DTED file is void at requested point.");
+            }
+
+            // DTED vertical datum is height above EGM96 geoid, we must convert it to height above WGS84 ellipsoid
+            // re issue #54
+
+            return EGM96_altitude + geoidOffset(lat,lon);
     }
 
     // use inverse distance weight with X neighbors/elevations to calculate altitude
     // if it turns out that the targetLat,targetLon is exact, return that value instead
-    // of IDW
+    // of IDW; NaN (void) neighbors are left out
 
-    private double idwInterpolation(double targetLat, double targetLon, Point[] neighbors, double[] elevations, double power)
+    private double idwInterpolation(double targetLat, double targetLon, double[] lats, double[] lons, double[] elevations, int count, double power)
     {
         double sumWeights = 0.0;
         double sumWeightedElevations = 0.0;
         int i;
 
-        // System.out.println("idwInterpolation: target is "+targetLat+","+targetLon);
-        // System.out.println("idwInterpolation: neighbors are "+neighbors);
-        // System.out.println("idwInterpolation: elevations are "+Arrays.toString(elevations));        
-
-        for (i=0; i<neighbors.length; i++) {
-            // System.out.println("idwInterpolation: neighbor "+i+"  "+neighbors[i].getLatitude()+","+neighbors[i].getLongitude());
+        for (i=0; i<count; i++) {
+            if (Double.isNaN(elevations[i])) continue;
 
-            double distance = MathUtils.haversine(targetLon, targetLat, neighbors[i].getLongitude(), neighbors[i].getLatitude(), elevations[i]);
-            double weight = 1.0d / Math.pow(distance, power);
-
-            // System.out.println("idwInterpolation: distance: "+distance+"  weight: "+weight);
+            double distance = MathUtils.haversine(targetLon, targetLat, lons[i], lats[i], elevations[i]);
 
             // if distance is ~= 0.0 then we got lucky and the point is actually target;
             // if so, return that alt w/o need to interpolate
             if (distance <= 0.1) {
                 return elevations[i];
             }
-            
+
+            double weight = 1.0d / Math.pow(distance, power);
             sumWeights += weight;
             sumWeightedElevations += weight * elevations[i];
         }
 
-        // System.out.println("idwInterpolation: returning "+sumWeightedElevations / sumWeights);
-
-        return sumWeightedElevations / sumWeights;
+        return (sumWeights > 0) ? sumWeightedElevations / sumWeights : Double.NaN;
     }
 
-    // get WGS84 altitude from lat,lon, via DTED, using IDW 
+    // get WGS84 altitude from lat,lon, via DTED, using IDW over the four
+    // surrounding posts; no allocation, no locking
     
     private double getAltFromLatLonDtedIDW(double lat, double lon) throws RequestedValueOOBException, CorruptTerrainException
     {
-        // target point 
-        Point point = new Point(lat, lon);
-            
+        double col = dted.colOf(lon), row = dted.rowOf(lat);
+        if (!(col >= 0 && row >= 0 && col <= dted.getColumns() - 1 && row <= dted.getRows() - 1)) {
+            throw new RequestedValueOOBException("getAltFromLatLon arguments out of bounds!", lat, lon);
+        }
+
         // on DEM edge check, if so just return nearest elevation
         if (lat == getMaxLat() || lat == getMinLat() || lon == getMaxLon() || lon == getMinLon()) {
-            try {
-                double EGM96_altitude = this.dted.getElevation(point).getElevation();
-
-                // DTED vertical datum is height above EGM96 geoid, we must convert it to height above WGS84 ellipsoid
-                // re issue #180, fix incorrect equation for applying geoid offset
-
-                double WGS84_altitude = EGM96_altitude + offsetProvider.getEGMOffsetAtLatLon(lat,lon);
-                return WGS84_altitude;
+            return getAltFromLatLonDted(lat, lon);
+        }
 
-            } catch (CorruptTerrainException e) {
-                throw new CorruptTerrainException("The terrain data in the DTED file is corrupt.", e);
-            } catch (InvalidValueException e) {
-                throw new RequestedValueOOBException("getAltFromLatLon arguments out of bounds!", lat, lon);
+        if (dtedInterpolation != DtedInterpolation.HAVERSINE_IDW) {
+            double alt = (dtedInterpolation == DtedInterpolation.PLANAR_IDW)
+                ? dted.idw(lat, lon, idwPower) : dted.bilinear(lat, lon);
+            if (Double.isNaN(alt)) {
+                throw new CorruptTerrainException("The terrain data in the DTED file is void at requested point.");
             }
+            return alt + geoidOffset(lat, lon);
         }
 
-        // Determine DTED grid resolution based on level
-        // For example, Level 0: 1 arc-second, Level 1: 3 arc-seconds, etc.
-        double gridLatStep = this.dted.getLatitudeInterval();
-        double gridLonStep = this.dted.getLongitudeInterval();
-
-        // Calculate the surrounding grid points
-        double latFloor = Math.floor(lat / gridLatStep) * gridLatStep;
-        double lonFloor = Math.floor(lon / gridLonStep) * gridLonStep;
-
-        // Define the four surrounding points
-        Point p1 = new Point(latFloor, lonFloor);
-        Point p2 = new Point(latFloor, lonFloor + gridLonStep);
-        Point p3 = new Point(latFloor + gridLatStep, lonFloor);
-        Point p4 = new Point(latFloor + gridLatStep, lonFloor + gridLonStep);
+        // surrounding posts; on the north/east edge use the last cell
+        int c0 = Math.min((int) col, dted.getColumns() - 2);
+        int r0 = Math.min((int) row, dted.getRows() - 2);
+        double gridLatStep = dted.getLatitudeInterval();
+        double gridLonStep = dted.getLongitudeInterval();
+        double lat0 = dted.getSouth() + r0 * gridLatStep;
+        double lon0 = dted.getWest() + c0 * gridLonStep;
 
-        try {
-            // Retrieve elevations for the four surrounding points
-            double e1 = this.dted.getElevation(p1).getElevation();
-            double e2 = this.dted.getElevation(p2).getElevation();
-            double e3 = this.dted.getElevation(p3).getElevation();
-            double e4 = this.dted.getElevation(p4).getElevation();
-
-            // Perform IDW interpolation over points 1-4 and elevations 1-4
-            // code taken from Android OpenAthena and ported here
+        Scratch sc = scratch.get();
+        double[] nLat = sc.nLat, nLon = sc.nLon, nElev = sc.nElev;
+        nLat[0] = lat0;               nLon[0] = lon0;               nElev[0] = dted.post(c0, r0);
+        nLat[1] = lat0;               nLon[1] = lon0 + gridLonStep; nElev[1] = dted.post(c0 + 1, r0);
+        nLat[2] = lat0 + gridLatStep; nLon[2] = lon0;               nElev[2] = dted.post(c0, r0 + 1);
+        nLat[3] = lat0 + gridLatStep; nLon[3] = lon0 + gridLonStep; nElev[3] = dted.post(c0 + 1, r0 + 1);
 
-            Point[] neighbors = new Point[] { p1, p2, p3, p4};
-            double[] elevations = new double[] { e1, e2, e3, e4};
-
-            double interpolatedAltitude =  idwInterpolation(lat,lon,neighbors,elevations,idwPower);
+        double interpolatedAltitude = idwInterpolation(lat, lon, nLat, nLon, nElev, 4, idwPower);
+        if (Double.isNaN(interpolatedAltitude)) {
+            throw new CorruptTerrainException("The terrain data in the DTED file is void at requested point.");
+        }
 
-            // System.out.println("interpolatedAltitude is "+interpolatedAltitude);
-            // System.out.println("non interpolated Altitude is "+ dted.getElevation(point).getElevation());
-                
-            // Convert from EGM96 AMSL orthometric height to WGS84 HAE
-            // re issue #180, fix incorrect equation for applying geoid offset
-            
-            double WGS84_altitude = interpolatedAltitude + offsetProvider.getEGMOffsetAtLatLon(lat, lon);
+        // Convert from EGM96 AMSL orthometric height to WGS84 HAE
+        // re issue #180, fix incorrect equation for applying geoid offset
 
-            return WGS84_altitude;
-        
-        } catch (CorruptTerrainException e) {
-            throw new CorruptTerrainException("The terrain data in the DTED file is corrupt.", e);
-        } catch (InvalidValueException e) {
-            throw new RequestedValueOOBException("getAltFromLatLon arguments out of bounds!", lat, lon);
-        } catch (Exception e) {
-            throw new CorruptTerrainException("An unexpected error occurred while processing DTED data.", e);
-        }
+        return interpolatedAltitude + geoidOffset(lat, lon);
     }
 
     // main public API for getting elevation for lat,lon
@@ -704,49 +979,417 @@ public class MaxarDtmReader implements AutoCloseable
 
     public double getAltFromLatLon(double latDeg, double lonDeg) throws RequestedValueOOBException, CorruptTerrainException
     {
+        altLookups.increment();
+
         if (this.isDTED) {
+            // posts come straight from the mapped file; safe to share
             return getAltFromLatLonDtedIDW(latDeg, lonDeg);
         }
         
         requireGeoref("Elevation (lat,lon in WGS84)");
 
-        // Ensure we know/enable the data CRS
-        if (this.dataCRS == null) {
-            // Try, in order: previously detected EPSG, parsed horizontalCRS, or parse now
-            String epsg = (this.dataEpsg != null) ? this.dataEpsg
-                : (this.horizontalCRS != null ? this.horizontalCRS : determineHorizontalCRS(this.dir));
-            if (epsg == null || epsg.isBlank()) {
-                throw new IllegalStateException("Data CRS unknown; cannot reproject from WGS84.");
+        // proj4j expects (lon, lat) when transforming geographic coords
+        Scratch sc = transforms();
+        sc.src.x = lonDeg;
+        sc.src.y = latDeg;
+        sc.wgsToData.transform(sc.src, sc.dst);
+
+        // double alt = getElevationProjectedBilinear(sc.dst.x, sc.dst.y);
+        double alt = getElevationProjectedIDW(sc.dst.x, sc.dst.y);
+
+        if (Double.isNaN(alt)) {
+            throw new RequestedValueOOBException("getAltFromLatLon args out of bounds due to min/max lat/lon!",latDeg,lonDeg);
+        }
+
+        // return must be in WGS84 HAE; EPSG:4979 is WGS84 already
+        if (isGeoidVerticalDatum()) {
+            // offset provider better be set!!
+            double offset = geoidOffset(latDeg,lonDeg);
+            alt = alt + offset;
+        }
+
+        return alt;
+    }
+
+    // the sample lattice for TerrainProfile: GeoTiff pixel centers or DTED
+    // posts at integer (gx, gy), values in this DEM's vertical datum
+
+    TerrainProfile.Grid profileGrid()
+    {
+        if (isDTED) {
+            final DtedFile d = dted;
+            return new TerrainProfile.Grid() {
+                public int width() { return d.getColumns(); }
+                public int height() { return d.getRows(); }
+                public double sample(int gx, int gy) { return d.post(gx, gy); }
+                public double[] toGrid(double lat, double lon, double[] out) {
+                    out[0] = d.colOf(lon); out[1] = d.rowOf(lat); return out;
+                }
+                public double[] toLatLon(double gx, double gy, double[] out) {
+                    out[0] = d.getSouth() + gy * d.getLatitudeInterval();
+                    out[1] = d.getWest() + gx * d.getLongitudeInterval();
+                    return out;
+                }
+                public double toHae(double lat, double lon) { return geoidOffset(lat, lon); }
+            };
+        }
+        requireGeoref("Terrain profile");
+        final boolean primitive = (loadMode != LoadMode.RASTERS);
+        final boolean geoid = isGeoidVerticalDatum();
+        return new TerrainProfile.Grid() {
+            public int width() { return width; }
+            public int height() { return height; }
+            public double sample(int gx, int gy) {
+                if (primitive) return sampleGrid(gx, gy);
+                Double v = sample(gx, gy);
+                return (v == null) ? Double.NaN : v;
+            }
+            public double[] toGrid(double lat, double lon, double[] out) {
+                Scratch sc = transforms();
+                sc.src.x = lon;
+                sc.src.y = lat;
+                sc.wgsToData.transform(sc.src, sc.dst);
+                pixelFromWorld(sc.dst.x, sc.dst.y, out);
+                out[0] -= 0.5;
+                out[1] -= 0.5;
+                return out;
+            }
+            public double[] toLatLon(double gx, double gy, double[] out) {
+                Scratch sc = transforms();
+                worldFromPixel(gx + 0.5, gy + 0.5, out);
+                sc.src.x = out[0];
+                sc.src.y = out[1];
+                sc.dataToWgs.transform(sc.src, sc.dst);
+                out[0] = sc.dst.y;
+                out[1] = sc.dst.x;
+                return out;
+            }
+            public double toHae(double lat, double lon) { return geoid ? geoidOffset(lat, lon) : 0; }
+        };
+    }
+
+    // the min/max pyramid over profileGrid(); read from or written to
+    // <file>.pyr (<file>.4979.pyr for an ellipsoidal sidecar grid) the
+    // first time it's asked for
+
+    public ElevationPyramid getElevationPyramid()
+    {
+        ElevationPyramid p = pyramid;
+        if (p == null) {
+            synchronized (this) {
+                p = pyramid;
+                if (p == null) {
+                    p = ElevationPyramid.forFile(geofile, profileGrid(), bakedEllipsoidal ? WGS84_HAE_EPSG : 0);
+                    pyramid = p;
+                }
             }
-            enableCrs(epsg); // sets dataCRS, wgs84, dataToWgs, wgsToData, dataEpsg
         }
+        return p;
+    }
 
-        // proj4j expects (lon, lat) when transforming geographic coords
-        ProjCoordinate p = transform(this.wgsToData, lonDeg, latDeg);
+    // supplies WGS84 HAE elevation at a lat,lon outside this raster
+    // (from a neighbouring tile), or NaN if there isn't one
+    public interface EdgeSampler {
+        double altAt(double latDeg, double lonDeg);
+    }
 
-        // double alt = getElevationProjectedBilinear(p.x, p.y);
-        double alt = getElevationProjectedIDW(p.x,p.y);
+    // getAltFromLatLon for tiled mosaics: where the 3x3 IDW window runs
+    // off this raster, the missing pixel centers are converted to lat,lon
+    // and asked of edge instead of being dropped, so values are continuous
+    // across tile seams.  Away from the edges (and for DTED, whose cells
+    // share their edge posts) this is just getAltFromLatLon.
 
-        if (Double.isNaN(alt)) {
+    public double getAltFromLatLon(double latDeg, double lonDeg, EdgeSampler edge)
+        throws RequestedValueOOBException, CorruptTerrainException
+    {
+        if (this.isDTED || edge == null) return getAltFromLatLon(latDeg, lonDeg);
+
+        requireGeoref("Elevation (lat,lon in WGS84)");
+        Scratch sc = transforms();
+        sc.src.x = lonDeg;
+        sc.src.y = latDeg;
+        sc.wgsToData.transform(sc.src, sc.dst);
+        pixelFromWorld(sc.dst.x, sc.dst.y, sc.rc);
+        double col = sc.rc[0], row = sc.rc[1];
+
+        int c0 = (int) Math.floor(col), r0 = (int) Math.floor(row);
+        if (!(col >= 0 && row >= 0 && col <= width && row <= height)) {
+            throw new RequestedValueOOBException("getAltFromLatLon args out of bounds due to min/max lat/lon!",latDeg,lonDeg);
+        }
+        if (c0 >= 1 && r0 >= 1 && c0 + 1 < width && r0 + 1 < height) {
+            return getAltFromLatLon(latDeg, lonDeg);
+        }
+        altLookups.increment();
+
+        // neighbours come back as HAE; bring them into our vertical datum
+        // with the offset at the query point (the geoid doesn't change
+        // measurably across one pixel)
+        double offset = isGeoidVerticalDatum() ? geoidOffset(latDeg, lonDeg) : 0.0;
+        boolean primitive = (loadMode != LoadMode.RASTERS);
+        double wsum = 0.0, vsum = 0.0;
+
+        for (int r = r0 - 1; r <= r0 + 1; r++) {
+            for (int c = c0 - 1; c <= c0 + 1; c++) {
+                double v;
+                if (c >= 0 && r >= 0 && c < width && r < height) {
+                    if (primitive) {
+                        v = sampleGrid(c, r);
+                    }
+                    else {
+                        Double d = sample(c, r);
+                        if (d == null) continue;
+                        v = d;
+                    }
+                }
+                else {
+                    worldFromPixel(c + 0.5, r + 0.5, sc.rc);
+                    sc.src.x = sc.rc[0];
+                    sc.src.y = sc.rc[1];
+                    sc.dataToWgs.transform(sc.src, sc.dst);
+                    v = edge.altAt(sc.dst.y, sc.dst.x) - offset;
+                    if (Double.isNaN(v)) continue;
+                }
+
+                double dc = col - (c + 0.5);
+                double dr = row - (r + 0.5);
+                double d2 = dc*dc + dr*dr;
+                if (d2 <= 1e-24) return v + offset;
+                double w = 1.0 / Math.pow(Math.sqrt(d2), idwPower);
+                wsum += w;
+                vsum += w * v;
+            }
+        }
+
+        if (wsum == 0.0) {
             throw new RequestedValueOOBException("getAltFromLatLon args out of bounds due to min/max lat/lon!",latDeg,lonDeg);
         }
+        return vsum / wsum + offset;
+    }
+
+    // WGS84 lat,lon -> fractional col,row of this GeoTiff, written into
+    // colRow[0..1]; no allocation.  Returns false if outside the raster.
+    // Pixel centers are at (c+0.5, r+0.5).
+
+    public boolean pixelFromLatLon(double latDeg, double lonDeg, double[] colRow)
+    {
+        requireGeoref("Pixel (lat,lon in WGS84)");
+        Scratch sc = transforms();
+        sc.src.x = lonDeg;
+        sc.src.y = latDeg;
+        sc.wgsToData.transform(sc.src, sc.dst);
+        pixelFromWorld(sc.dst.x, sc.dst.y, colRow);
+        double col = colRow[0], row = colRow[1];
+        return !(col < 0 || row < 0 || col > width || row > height);
+    }
+
+    // batch version of getAltFromLatLon for profiles/ray marching;
+    // fills out[i] with WGS84 altitude for lats[i],lons[i] and sets bit i
+    // of valid (if not null; length >= (n+63)/64).  Points off the DEM get
+    // NaN and a clear bit instead of an exception.  Returns number of
+    // valid points.
+
+    public int getAltFromLatLon(double[] lats, double[] lons, double[] out, long[] valid)
+        throws CorruptTerrainException
+    {
+        return getAltFromLatLon(lats, lons, out, valid, null);
+    }
 
-        // return must be in WGS84 HAE
+    // as above; if pool is non-null, large batches interpolate in parallel.
+    // Reprojection and geoid offsets stay on the calling thread since
+    // the transforms are per-thread and offset providers are serialized
+
+    public int getAltFromLatLon(double[] lats, double[] lons, double[] out, long[] valid, ForkJoinPool pool)
+        throws CorruptTerrainException
+    {
+        int n = lats.length;
+        if (lons.length < n || out.length < n) {
+            throw new IllegalArgumentException("lats, lons and out must be the same length");
+        }
+        if (valid != null && valid.length < ((n + 63) >>> 6)) {
+            throw new IllegalArgumentException("valid needs (lats.length+63)/64 words");
+        }
+        if (valid != null) {
+            Arrays.fill(valid, 0, Math.min(valid.length, (n + 63) >>> 6), 0L);
+        }
+
+        // DTED: no batch path; per point
+        if (this.isDTED) {
+            int good = 0;
+            for (int i = 0; i < n; i++) {
+                try {
+                    // counts each point itself
+                    out[i] = getAltFromLatLon(lats[i], lons[i]);
+                    if (valid != null) valid[i >>> 6] |= 1L << i;
+                    good++;
+                } catch (RequestedValueOOBException | CorruptTerrainException e) {
+                    // off the tile or a void post
+                    out[i] = Double.NaN;
+                }
+            }
+            return good;
+        }
+
+        requireGeoref("Elevation (lat,lon in WGS84)");
+        altLookups.add(n);
+
+        // 1) reproject everything in one pass; cols/rows stashed in out and
+        //    a second array so we don't allocate per point
+        double[] rows = new double[n];
+        long[] order = new long[n];
+        Scratch sc = transforms();
+        for (int i = 0; i < n; i++) {
+            sc.src.x = lons[i];
+            sc.src.y = lats[i];
+            sc.wgsToData.transform(sc.src, sc.dst);
+            pixelFromWorld(sc.dst.x, sc.dst.y, sc.rc);
+            out[i] = sc.rc[0];
+            rows[i] = sc.rc[1];
+            order[i] = ((long) tileKey(sc.rc[0], sc.rc[1]) << 32) | i;
+        }
+
+        // 2) visit points tile by tile so neighbouring lookups share cache
+        //    lines (or decoded tiles in MAPPED mode)
+        if (n > 64) Arrays.sort(order);
+
+        //    RASTERS samples under one lock (see sample) so it gains
+        //    nothing from the pool; run it on this thread
+        BatchIDW task = new BatchIDW(order, 0, n, out, rows);
+        if (pool != null && n > BatchIDW.THRESHOLD && loadMode != LoadMode.RASTERS) {
+            pool.invoke(task);
+        } else {
+            task.compute();
+        }
+
+        // 3) vertical datum
+        int good = 0;
+        boolean needOffset = isGeoidVerticalDatum();
+        for (int i = 0; i < n; i++) {
+            if (Double.isNaN(out[i])) continue;
+            if (needOffset) out[i] += geoidOffset(lats[i], lons[i]);
+            if (valid != null) valid[i >>> 6] |= 1L << i;
+            good++;
+        }
+        return good;
+    }
+
+    // bucket a pixel into a 64x64 block (or the mapped file's own tiles)
+    // for ordering batch lookups; off-raster points sort last
+
+    private int tileKey(double col, double row)
+    {
+        if (!(col >= 0 && row >= 0 && col <= width && row <= height)) return Integer.MAX_VALUE;
+        int bw = 64, bh = 64;
+        if (mapped != null && !mapped.isSidecar()) {
+            bw = mapped.getBlockWidth();
+            bh = mapped.getBlockHeight();
+        }
+        int across = (width + bw - 1) / bw;
+        return ((int) row / bh) * across + ((int) col / bw);
+    }
+
+    // true if getAltFromLatLon must add a geoid offset to reach WGS84 HAE
+    
+    private boolean isGeoidVerticalDatum()
+    {
         switch (verticalDatum) {
         case "EPSG:3855": // EGM2008
         case "EPSG:5773": // EGM96
         case "EPSG:5703": // NAVD88 -> approx with EGM2008
-            // offset provider better be set!!
-            double offset = offsetProvider.getEGMOffsetAtLatLon(latDeg,lonDeg);
-            alt = alt + offset;
-        case "EPSG:4979":
-            // do nothing as vertical datum is WGS84 already
+            return true;
+        default:
+            return false;
         }
+    }
 
-        return alt;
+    // interpolate a range of the sorted batch; out[] holds cols on the way
+    // in and elevations on the way out
+    
+    private final class BatchIDW extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        static final int THRESHOLD = 4096;
+        final long[] order;
+        final int from, to;
+        final double[] out, rows;
+
+        BatchIDW(long[] order, int from, int to, double[] out, double[] rows) {
+            this.order = order; this.from = from; this.to = to; this.out = out; this.rows = rows;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > THRESHOLD && getPool() != null) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BatchIDW(order, from, mid, out, rows),
+                          new BatchIDW(order, mid, to, out, rows));
+                return;
+            }
+            for (int k = from; k < to; k++) {
+                int i = (int) order[k];
+                out[i] = idwAtPixel(out[i], rows[i], 1, idwPower, 1e-12);
+            }
+        }
+    }
+
+    // this thread's scratch with its transforms built; CRS enabled if needed
+
+    private Scratch transforms()
+    {
+        Scratch sc = scratch.get();
+        if (sc.wgsToData == null) {
+            ensureCrs();
+            CRSFactory cf = new CRSFactory();
+            CoordinateTransformFactory tf = new CoordinateTransformFactory();
+            CoordinateReferenceSystem src = copyCrs(cf, wgs84, "EPSG:4326");
+            CoordinateReferenceSystem dst = copyCrs(cf, dataCRS, dataEpsg);
+            sc.dataToWgs = tf.createTransform(dst, src);
+            sc.wgsToData = tf.createTransform(src, dst);
+        }
+        return sc;
     }
+
+    // rebuild a CRS from its proj4 parameters so threads don't share
+    // projection objects; falls back to the EPSG name
     
-    @Override public void close() {}
+    private static CoordinateReferenceSystem copyCrs(CRSFactory cf, CoordinateReferenceSystem crs, String name)
+    {
+        String params = crs.getParameterString();
+        if (params != null && !params.isBlank()) {
+            return cf.createFromParameters(crs.getName(), params);
+        }
+        return EpsgParams.create(cf, name);
+    }
+
+    // Ensure we know/enable the data CRS
+    
+    private void ensureCrs()
+    {
+        if (this.dataCRS != null) return;
+        synchronized (this) {
+            if (this.dataCRS != null) return;
+            // Try, in order: previously detected EPSG, parsed horizontalCRS, or parse now
+            String epsg = (this.dataEpsg != null) ? this.dataEpsg
+                : (this.horizontalCRS != null ? this.horizontalCRS
+                   : (this.dir != null ? determineHorizontalCRS(this.dir) : null));
+            if (epsg == null || epsg.isBlank()) {
+                throw new IllegalStateException("Data CRS unknown; cannot reproject from WGS84.");
+            }
+            enableCrs(epsg); // sets dataCRS, wgs84, dataEpsg
+        }
+    }
+    
+    @Override public void close()
+    {
+        if (dted != null) {
+            try { dted.close(); } catch (IOException ignore) {}
+            dted = null;
+        }
+        if (mapped != null) {
+            try { mapped.close(); } catch (IOException ignore) {}
+            mapped = null;
+        }
+    }
 
     // internal methods for parsing/manipulating GeoTiff
 
@@ -788,15 +1431,16 @@ public class MaxarDtmReader implements AutoCloseable
         this.inv10 = -b1/det; this.inv11 =  a1/det;
     }
 
+    // transforms themselves are built per thread in transforms();
+    // dataCRS is written last so a non-null dataCRS means all are set
+    
     private void enableCrs(String epsg)
     {
         CRSFactory cf = new CRSFactory();
-        this.dataCRS = cf.createFromName(epsg);
-        this.wgs84   = cf.createFromName("EPSG:4326");
-        CoordinateTransformFactory ctf = new CoordinateTransformFactory();
-        this.dataToWgs = ctf.createTransform(dataCRS, wgs84);
-        this.wgsToData = ctf.createTransform(wgs84, dataCRS);
+        CoordinateReferenceSystem data = EpsgParams.create(cf, epsg);
+        this.wgs84   = EpsgParams.create(cf, "EPSG:4326");
         this.dataEpsg = epsg;
+        this.dataCRS = data;
     }
 
     private void requireGeoref(String op) {
@@ -1245,35 +1889,127 @@ public class MaxarDtmReader implements AutoCloseable
     private Double sample(int col, int row)
     {
         if (col < 0 || row < 0 || col >= width || row >= height) return null;
+        // getPixelSample does position() then a relative get on the
+        // band's buffer; two threads in here can read each other's pixel
+        synchronized (rasters) {
+            try {
+                Number n = rasters.getPixelSample(0,col,row);
+                if (n == null) return null;
+                return n.doubleValue();
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+    
+    // caller guarantees col,row are inside the raster
+    private double sampleGrid(int col, int row)
+    {
+        int i = row * width + col;
+        if (gridF != null) return gridF[i];
+        if (gridS != null) return gridS[i] + gridOffset;
+        return mapped.sample(col, row);
+    }
+
+    // copy band 0 of rasters into gridF or gridS; returns false if the
+    // sample format is one we don't handle so caller can keep using rasters
+    
+    private boolean loadPrimitiveGrid()
+    {
+        FieldType[] types = rasters.getFieldTypes();
+        ByteBuffer[] values = rasters.getSampleValues();
+        if (types == null || types.length == 0 || values == null || values.length == 0 || values[0] == null) {
+            return false;
+        }
+        if (rasters.getWidth() != width || rasters.getHeight() != height) {
+            return false;
+        }
+
+        int n = width * height;
+        ByteBuffer bb = values[0].duplicate().order(values[0].order());
+        bb.rewind();
+        
         try {
-            Number n = rasters.getPixelSample(0,col,row);
-            if (n == null) return null;
-            return n.doubleValue();
-        } catch (Exception e) {
-            return null;
+            switch (types[0]) {
+            case FLOAT:
+                gridF = new float[n];
+                bb.asFloatBuffer().get(gridF);
+                break;
+            case DOUBLE:
+                gridF = new float[n];
+                for (int i = 0; i < n; i++) gridF[i] = (float) bb.getDouble();
+                break;
+            case SSHORT:
+                gridS = new short[n];
+                bb.asShortBuffer().get(gridS);
+                gridOffset = 0.0;
+                break;
+            case SHORT:
+                // unsigned; store shifted into signed range
+                gridS = new short[n];
+                for (int i = 0; i < n; i++) gridS[i] = (short) ((bb.getShort() & 0xFFFF) - 32768);
+                gridOffset = 32768.0;
+                break;
+            case SLONG:
+                gridF = new float[n];
+                for (int i = 0; i < n; i++) gridF[i] = bb.getInt();
+                break;
+            case LONG:
+                gridF = new float[n];
+                for (int i = 0; i < n; i++) gridF[i] = bb.getInt() & 0xFFFFFFFFL;
+                break;
+            case BYTE:
+                gridF = new float[n];
+                for (int i = 0; i < n; i++) gridF[i] = bb.get() & 0xFF;
+                break;
+            case SBYTE:
+                gridF = new float[n];
+                for (int i = 0; i < n; i++) gridF[i] = bb.get();
+                break;
+            default:
+                return false;
+            }
+        } catch (java.nio.BufferUnderflowException e) {
+            gridF = null; gridS = null;
+            return false;
+        }
+
+        // spot check a few pixels against rasters in case the sample
+        // buffer isn't laid out the way we assumed
+        int[][] probes = { {0,0}, {width-1,0}, {0,height-1}, {width-1,height-1}, {width/2,height/2} };
+        for (int[] pr : probes) {
+            Double want = sample(pr[0], pr[1]);
+            double got = sampleGrid(pr[0], pr[1]);
+            if (want == null) continue;
+            if (Double.isNaN(want) && Double.isNaN(got)) continue;
+            if (Math.abs(want - got) > 1e-3 * Math.max(1.0, Math.abs(want))) {
+                System.err.println("[MaxarDtmReader] primitive grid mismatch; using Rasters");
+                gridF = null; gridS = null;
+                return false;
+            }
         }
+        return true;
     }
     
     private double[] worldFromPixel(double col, double row) {
-        return new double[] { a0 + a1*col + a2*row, b0 + b1*col + b2*row };
+        return worldFromPixel(col, row, new double[2]);
     }
     private double[] pixelFromWorld(double x, double y) {
-        double dx = x - a0, dy = y - b0;
-        double col = inv00*dx + inv01*dy;
-        double row = inv10*dx + inv11*dy;
-        return new double[] { col, row };
+        return pixelFromWorld(x, y, new double[2]);
     }
 
-    /** Build or fetch a transform from an input CRS name to the raster's data CRS. */
-    private CoordinateTransform transformFromTo(String srcCrsName, CoordinateReferenceSystem dstCRS) {
-        String key = srcCrsName + "→" + dstCRS.getName();
-        CoordinateTransform ct = reprojCache.get(key);
-        if (ct != null) return ct;
-
-        CoordinateReferenceSystem src = crsFactory.createFromName(srcCrsName);
-        CoordinateTransform xform = ctf.createTransform(src, dstCRS);
-        reprojCache.put(key, xform);
-        return xform;
+    // non-allocating variants; write into out and return it
+    
+    private double[] worldFromPixel(double col, double row, double[] out) {
+        out[0] = a0 + a1*col + a2*row;
+        out[1] = b0 + b1*col + b2*row;
+        return out;
+    }
+    private double[] pixelFromWorld(double x, double y, double[] out) {
+        double dx = x - a0, dy = y - b0;
+        out[0] = inv00*dx + inv01*dy;
+        out[1] = inv10*dx + inv11*dy;
+        return out;
     }
 
     /* ===== Helpers / types ===== */
@@ -1522,7 +2258,7 @@ public class MaxarDtmReader implements AutoCloseable
         OpenAthenaCore core = new OpenAthenaCore();
         
         if (args.length < 1) {
-            System.err.println("Usage: java MaxarDtmReader [-v] <dtm.tif> [lat lon]...");
+            System.err.println("Usage: java MaxarDtmReader [-v] [-geoid egm2008.pgm] [-mode rasters|primitive|mapped|sidecar] <dtm.tif> [lat lon]...");
             System.exit(1);
         }
 
@@ -1535,12 +2271,22 @@ public class MaxarDtmReader implements AutoCloseable
                 System.exit(2);
             }
         }
+        // a mapped GeographicLib grid makes the first EGM2008 lookup cheap
+        if ("-geoid".equalsIgnoreCase(args[i]) && i+2 < args.length) {
+            GeoidRegistry.egm2008Pgm = args[i+1];
+            i += 2;
+        }
+        LoadMode mode = LoadMode.PRIMITIVE;
+        if ("-mode".equalsIgnoreCase(args[i]) && i+2 < args.length) {
+            mode = LoadMode.valueOf(args[i+1].toUpperCase());
+            i += 2;
+        }
         
         File f = new File(args[i++]);
 
         t0 = System.nanoTime();
         
-        try (MaxarDtmReader dtm = new MaxarDtmReader(f)) {
+        try (MaxarDtmReader dtm = new MaxarDtmReader(f, mode)) {
 
             t1 = System.nanoTime();
 
@@ -1561,6 +2307,9 @@ public class MaxarDtmReader implements AutoCloseable
                 System.out.println("MaxarDtmReader: n,s,e,w = "+dtm.n+","+dtm.s+","+dtm.e+","+dtm.w);
                 System.out.println("MaxarDtmReader: isDTED "+dtm.isDTED);
                 System.out.println("MaxarDtmReader: gType is "+dtm.gType);
+                System.out.println("MaxarDtmReader: load mode is "+dtm.getLoadMode());
+                System.out.println("MaxarDtmReader: vertical datum is "+dtm.getVerticalDatum()
+                                   +(dtm.isBakedEllipsoidal() ? " (baked sidecar)" : ""));
                 if (dtm.gdal != null) {
                     System.out.println("MaxarDtmReader: gdal metadata is "+dtm.gdal);
                 }
@@ -1587,6 +2336,7 @@ public class MaxarDtmReader implements AutoCloseable
                     System.out.println("Lon/lat query not available (image unreferenced) "+ex);
                 }
             }
+            if (verbose) GeoidRegistry.report(System.out);
         }
 
     } // Main
@@ -0,0 +1,484 @@
+// TerrainProfile.java
+// ray / terrain intersection and terrain profile by walking DEM cells
+// javac -cp ".:lib/*" TerrainProfile.java
+// java -cp ".:lib/*" TerrainProfile <dem file> lat lon altHAE azimuth depression maxRange [profile]
+//
+// Geolocation marches along the camera ray from the drone until it goes
+// below the terrain.  Doing that with getAltFromLatLon every few meters
+// reprojects WGS84 -> data CRS and runs a 3x3 IDW per step.  Here the
+// ray's ground track is taken into the DEM's sample grid (GeoTiff pixel
+// centers or DTED posts) once per SEGMENT meters and then walked cell by
+// cell with an Amanatides-Woo DDA; in each cell the terrain is the
+// bilinear surface of its four samples and the ray height is a closed
+// form of ground distance, so a step is a handful of flops.
+//
+// Ray height above the ellipsoid at ground distance s along the track:
+//     h(s) = h0 - s * tan(depression) + s^2 / (2R)
+// with R the Gaussian mean radius at the start (earth curvature, no
+// refraction).  Terrain is converted to HAE with the reader's geoid
+// offset, interpolated linearly along each segment.  The track is
+// stepped on the ellipsoid with local meridian/prime-vertical radii,
+// which is fine for the ranges (tens of km) a camera ray covers.
+//
+// The first crossing is refined by bisection inside its cell.  A ray
+// starting below the terrain hits at its first sample.  A ray pointing
+// straight down (gimbal at nadir) has no ground track to walk; it hits
+// the terrain under the start, if that's within maxRange.
+//
+// With the reader's ElevationPyramid (usePyramid), each time the walk
+// enters a new base block it looks for the coarsest block around it
+// that the ray stays above for as long as it is inside, and jumps to
+// where it leaves that block.  Block maxima bound the bilinear cells
+// inside them, so the result is the same as visiting every cell; only
+// Result.cells goes down.  Profiles always visit every cell.
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import com.openathena.core.OpenAthenaCore;
+
+public final class TerrainProfile
+{
+    // ground meters between re-projections of the ground track
+    private static final double SEGMENT = 1000.0;
+    // skip blocks the ray clears using the DEM's min/max pyramid
+    public static boolean usePyramid = true;
+
+    private static final double WGS84_A = 6378137.0;
+    private static final double WGS84_E2 = 6.69437999014e-3;
+    // below this a sample is a void fill (-32767 etc.), not terrain
+    private static final double MIN_TERRAIN = -11000.0;
+    private static final int BISECT = 30;
+
+    // a DEM's sample lattice: samples at integer (gx, gy), values in the
+    // DEM's vertical datum; MaxarDtmReader.profileGrid() supplies one
+
+    interface Grid {
+        int width();
+        int height();
+        double sample(int gx, int gy);                          // NaN if void
+        double[] toGrid(double lat, double lon, double[] out);  // {gx, gy}
+        double[] toLatLon(double gx, double gy, double[] out);  // {lat, lon}
+        double toHae(double lat, double lon);                   // add to samples for WGS84 HAE
+    }
+
+    public static final class Result {
+        public final boolean hit;
+        public final double lat, lon, alt;               // intersection, alt WGS84 HAE
+        public final double groundRange, slantRange;     // meters from start
+        public final int cells;                          // DEM cells visited
+        // profile at every cell boundary the track crossed, if asked for;
+        // ground range (m), terrain and ray WGS84 HAE (m; NaN over voids)
+        public final double[] profileRange, profileTerrain, profileRay;
+
+        Result(boolean hit, double lat, double lon, double alt, double groundRange, double slantRange,
+               int cells, double[] range, double[] terrain, double[] ray) {
+            this.hit = hit; this.lat = lat; this.lon = lon; this.alt = alt;
+            this.groundRange = groundRange; this.slantRange = slantRange; this.cells = cells;
+            this.profileRange = range; this.profileTerrain = terrain; this.profileRay = ray;
+        }
+    }
+
+    // walk from (lat, lon, altHae) along azimuth (degrees from true north)
+    // pointing depression degrees below horizontal for up to maxRange
+    // slant meters
+
+    public static Result trace(MaxarDtmReader dem, double lat, double lon, double altHae,
+                               double azimuthDeg, double depressionDeg, double maxRange, boolean profile)
+    {
+        ElevationPyramid pyr = (usePyramid && !profile) ? dem.getElevationPyramid() : null;
+        return new Walker(dem.profileGrid(), pyr, lat, lon, altHae, azimuthDeg, depressionDeg, profile).run(maxRange);
+    }
+
+    static Result trace(Grid grid, ElevationPyramid pyr, double lat, double lon, double altHae,
+                        double azimuthDeg, double depressionDeg, double maxRange, boolean profile)
+    {
+        return new Walker(grid, profile ? null : pyr, lat, lon, altHae, azimuthDeg, depressionDeg, profile).run(maxRange);
+    }
+
+    private static final class Walker
+    {
+        final Grid g;
+        final ElevationPyramid pyr;
+        final int gw, gh;
+        final double h0, tanDep, cosDep, twoR, sinAz, cosAz;
+        // ground range where the ray is lowest (curvature brings it back up)
+        final double sLow;
+        final boolean keep;
+        final double startLat, startLon;
+
+        // current segment: grid endpoints, ground range at start, length,
+        // HAE offset at both ends
+        double x0, y0, x1, y1, s0, len, off0, off1;
+
+        // DDA state: current cell and segment parameter of its next x and
+        // y boundary
+        int cx, cy;
+        double tMaxX, tMaxY;
+
+        int cells;
+        double[] pr, pt, py;
+        int pn;
+
+        final double[] tmp = new double[2];
+
+        Walker(Grid g, ElevationPyramid pyr, double lat, double lon, double altHae, double az, double dep, boolean keep)
+        {
+            this.g = g;
+            this.pyr = pyr;
+            this.gw = g.width();
+            this.gh = g.height();
+            this.h0 = altHae;
+            double d = Math.toRadians(dep), a = Math.toRadians(az);
+            this.tanDep = Math.tan(d);
+            this.cosDep = Math.cos(d);
+            this.sinAz = Math.sin(a);
+            this.cosAz = Math.cos(a);
+            double sl = Math.sin(Math.toRadians(lat));
+            double w = 1 - WGS84_E2 * sl * sl;
+            double m = WGS84_A * (1 - WGS84_E2) / (w * Math.sqrt(w)), n = WGS84_A / Math.sqrt(w);
+            this.twoR = 2 * Math.sqrt(m * n);
+            this.sLow = tanDep * twoR / 2;
+            this.keep = keep;
+            if (keep) {
+                pr = new double[256]; pt = new double[256]; py = new double[256];
+            }
+            this.startLat = lat;
+            this.startLon = lon;
+        }
+
+        double rayAt(double s) { return h0 - s * tanDep + s * s / twoR; }
+
+        Result run(double maxRange)
+        {
+            double ground = (cosDep > 1e-12) ? maxRange * cosDep : 0;
+            if (!(ground > 0)) return nadir(maxRange);
+            double lat = startLat, lon = startLon;
+            double[] p = g.toGrid(lat, lon, new double[2]);
+            double px = p[0], py0 = p[1];
+            double off = offset(lat, lon);
+            double s = 0;
+
+            while (s < ground) {
+                double step = Math.min(SEGMENT, ground - s);
+                double[] next = destination(lat, lon, step);
+                double nlat = next[0], nlon = next[1];
+                g.toGrid(nlat, nlon, tmp);
+                double noff = offset(nlat, nlon);
+
+                x0 = px; y0 = py0; x1 = tmp[0]; y1 = tmp[1];
+                s0 = s; len = step; off0 = off; off1 = noff;
+                Result r = walkSegment();
+                if (r != null) return r;
+
+                lat = nlat; lon = nlon; px = x1; py0 = y1; off = noff; s += step;
+            }
+            return finish(false, Double.NaN, Double.NaN);
+        }
+
+        // straight down: the bilinear terrain under the start point
+
+        Result nadir(double maxRange)
+        {
+            double[] p = g.toGrid(startLat, startLon, tmp);
+            x0 = x1 = p[0];
+            y0 = y1 = p[1];
+            s0 = 0;
+            len = 0;
+            off0 = off1 = offset(startLat, startLon);
+            int cx = (int) Math.floor(x0), cy = (int) Math.floor(y0);
+            if (cx < 0 || cy < 0 || cx >= gw - 1 || cy >= gh - 1) return finish(false, Double.NaN, Double.NaN);
+            double z00 = g.sample(cx, cy), z10 = g.sample(cx + 1, cy);
+            double z01 = g.sample(cx, cy + 1), z11 = g.sample(cx + 1, cy + 1);
+            if (!(z00 > MIN_TERRAIN && z10 > MIN_TERRAIN && z01 > MIN_TERRAIN && z11 > MIN_TERRAIN)) {
+                record(0, Double.NaN);
+                return finish(false, Double.NaN, Double.NaN);
+            }
+            cells++;
+            double h = terrain(cx, cy, z00, z10, z01, z11, 0);
+            record(0, h);
+            if (h0 - h > maxRange) return finish(false, Double.NaN, Double.NaN);
+            // already under it: hit where it starts, like any other ray
+            double alt = Math.min(h0, h);
+            return finish(true, startLat, startLon, alt, 0, h0 - alt);
+        }
+
+        // geoid offset where the DEM has one; outside it, 0 doesn't matter
+        // since nothing is sampled there
+        double offset(double lat, double lon)
+        {
+            double o = g.toHae(lat, lon);
+            return Double.isNaN(o) ? 0 : o;
+        }
+
+        // step ground meters along the azimuth from lat,lon on the
+        // ellipsoid using local radii
+        double[] destination(double lat, double lon, double step)
+        {
+            double sl = Math.sin(Math.toRadians(lat)), cl = Math.cos(Math.toRadians(lat));
+            double w = 1 - WGS84_E2 * sl * sl;
+            double m = WGS84_A * (1 - WGS84_E2) / (w * Math.sqrt(w)), n = WGS84_A / Math.sqrt(w);
+            double dLat = Math.toDegrees(step * cosAz / m);
+            double dLon = (cl > 1e-12) ? Math.toDegrees(step * sinAz / (n * cl)) : 0;
+            double nlon = lon + dLon;
+            if (nlon > 180) nlon -= 360;
+            if (nlon < -180) nlon += 360;
+            return new double[] { lat + dLat, nlon };
+        }
+
+        // DDA over bilinear cells [cx, cx+1] x [cy, cy+1] along x0,y0 -> x1,y1
+
+        Result walkSegment()
+        {
+            double dx = x1 - x0, dy = y1 - y0;
+            seat((int) Math.floor(x0), (int) Math.floor(y0));
+            int stepX = dx > 0 ? 1 : -1, stepY = dy > 0 ? 1 : -1;
+            int shift = (pyr != null) ? pyr.shift(0) : 0;
+            int lastBx = Integer.MIN_VALUE, lastBy = 0;
+
+            double t = 0;
+            while (t < 1) {
+                if (pyr != null && ((cx >> shift) != lastBx || (cy >> shift) != lastBy)) {
+                    lastBx = cx >> shift;
+                    lastBy = cy >> shift;
+                    double te = skip(t);
+                    if (te > t) {
+                        t = te;
+                        continue;
+                    }
+                }
+                double tNext = Math.max(t, Math.min(1, Math.min(tMaxX, tMaxY)));
+                Result r = cell(cx, cy, t, tNext);
+                if (r != null) return r;
+                t = tNext;
+                if (tMaxX < tMaxY) seat(cx + stepX, cy);
+                else seat(cx, cy + stepY);
+            }
+            return null;
+        }
+
+        // make cx,cy the current cell and find where the track leaves it
+
+        void seat(int cx, int cy)
+        {
+            double dx = x1 - x0, dy = y1 - y0;
+            this.cx = cx;
+            this.cy = cy;
+            tMaxX = (dx != 0) ? ((dx > 0 ? cx + 1 : cx) - x0) / dx : Double.POSITIVE_INFINITY;
+            tMaxY = (dy != 0) ? ((dy > 0 ? cy + 1 : cy) - y0) / dy : Double.POSITIVE_INFINITY;
+        }
+
+        // from the top of the pyramid down, the first block around the
+        // current cell the ray stays above from t until it leaves it; seat
+        // the DDA on the cell beyond that block and return the t where it
+        // was left, or t if no block is cleared
+
+        double skip(double t)
+        {
+            double dx = x1 - x0, dy = y1 - y0;
+            double offMax = Math.max(off0, off1);
+            for (int k = pyr.getLevels() - 1; k >= 0; k--) {
+                int sh = pyr.shift(k);
+                int bx = cx >> sh, by = cy >> sh;
+                float top = pyr.max(k, bx, by);
+                int lo0 = bx << sh, hi0 = (bx + 1) << sh, lo1 = by << sh, hi1 = (by + 1) << sh;
+                double tx = (dx > 0) ? (hi0 - x0) / dx : (dx < 0) ? (lo0 - x0) / dx : Double.POSITIVE_INFINITY;
+                double ty = (dy > 0) ? (hi1 - y0) / dy : (dy < 0) ? (lo1 - y0) / dy : Double.POSITIVE_INFINITY;
+                double te = Math.min(1, Math.min(tx, ty));
+                if (top != Float.NEGATIVE_INFINITY && !(rayMin(t, te) > top + offMax)) continue;
+                if (te >= 1) return 1;
+                if (tx <= ty) {
+                    int ny = (int) Math.floor(y0 + te * dy);
+                    seat(dx > 0 ? hi0 : lo0 - 1, Math.max(lo1, Math.min(hi1 - 1, ny)));
+                }
+                else {
+                    int nx = (int) Math.floor(x0 + te * dx);
+                    seat(Math.max(lo0, Math.min(hi0 - 1, nx)), dy > 0 ? hi1 : lo1 - 1);
+                }
+                return te;
+            }
+            return t;
+        }
+
+        // lowest ray height between segment parameters ta and tb
+        double rayMin(double ta, double tb)
+        {
+            double sa = s0 + ta * len, sb = s0 + tb * len;
+            if (sLow > sa && sLow < sb) return rayAt(sLow);
+            return Math.min(rayAt(sa), rayAt(sb));
+        }
+
+        // one cell between segment parameters ta and tb
+
+        Result cell(int cx, int cy, double ta, double tb)
+        {
+            if (cx < 0 || cy < 0 || cx >= gw - 1 || cy >= gh - 1) return null;
+            double z00 = g.sample(cx, cy), z10 = g.sample(cx + 1, cy);
+            double z01 = g.sample(cx, cy + 1), z11 = g.sample(cx + 1, cy + 1);
+            if (!(z00 > MIN_TERRAIN && z10 > MIN_TERRAIN && z01 > MIN_TERRAIN && z11 > MIN_TERRAIN)) {
+                record(ta, Double.NaN);
+                return null;
+            }
+            cells++;
+
+            double ha = terrain(cx, cy, z00, z10, z01, z11, ta);
+            double da = rayAt(s0 + ta * len) - ha;
+            record(ta, ha);
+
+            // under already: crossed exactly on the boundary, started below
+            // the terrain, or came in from a void or off the DEM below it
+            if (da < 0) return hitAt(ta);
+
+            double tm = 0.5 * (ta + tb);
+            double dm = rayAt(s0 + tm * len) - terrain(cx, cy, z00, z10, z01, z11, tm);
+            double db = rayAt(s0 + tb * len) - terrain(cx, cy, z00, z10, z01, z11, tb);
+            if (dm < 0) return refine(cx, cy, z00, z10, z01, z11, ta, tm);
+
+            // the track is straight in the cell, so bilinear terrain and the
+            // ray are both quadratic in t and so is their difference; the
+            // one through da, dm, db is exact.  If it has a minimum inside
+            // the cell the terrain can poke through there and come back
+            // down before tm or tb
+            double a = 2 * (da - 2 * dm + db);
+            if (a > 0) {
+                double u = (3 * da - 4 * dm + db) / (2 * a);
+                if (u > 0 && u < 1) {
+                    double tx = ta + u * (tb - ta);
+                    if (rayAt(s0 + tx * len) - terrain(cx, cy, z00, z10, z01, z11, tx) < 0) {
+                        // d falls from da to its minimum: one crossing
+                        return refine(cx, cy, z00, z10, z01, z11, ta, tx);
+                    }
+                }
+            }
+            if (db < 0) return refine(cx, cy, z00, z10, z01, z11, tm, tb);
+            return null;
+        }
+
+        // terrain HAE at segment parameter t, inside cell cx,cy
+
+        double terrain(int cx, int cy, double z00, double z10, double z01, double z11, double t)
+        {
+            double x = x0 + t * (x1 - x0) - cx, y = y0 + t * (y1 - y0) - cy;
+            x = Math.max(0, Math.min(1, x));
+            y = Math.max(0, Math.min(1, y));
+            double z = (1 - y) * ((1 - x) * z00 + x * z10) + y * ((1 - x) * z01 + x * z11);
+            return z + off0 + t * (off1 - off0);
+        }
+
+        // first t in [ta, tb] where the ray goes under, by bisection
+
+        Result refine(int cx, int cy, double z00, double z10, double z01, double z11, double ta, double tb)
+        {
+            double lo = ta, hi = tb;
+            for (int i = 0; i < BISECT; i++) {
+                double tm = 0.5 * (lo + hi);
+                double d = rayAt(s0 + tm * len) - terrain(cx, cy, z00, z10, z01, z11, tm);
+                if (d >= 0) lo = tm; else hi = tm;
+            }
+            return hitAt(hi);
+        }
+
+        Result hitAt(double t)
+        {
+            double s = s0 + t * len;
+            double gx = x0 + t * (x1 - x0), gy = y0 + t * (y1 - y0);
+            double[] ll = g.toLatLon(gx, gy, tmp);
+            double alt = rayAt(s);
+            double slant = Math.hypot(s, h0 - alt);
+            return finish(true, ll[0], ll[1], alt, s, slant);
+        }
+
+        Result finish(boolean hit, double lat, double lon)
+        {
+            return finish(hit, lat, lon, Double.NaN, Double.NaN, Double.NaN);
+        }
+
+        Result finish(boolean hit, double lat, double lon, double alt, double ground, double slant)
+        {
+            double[] r = null, t = null, y = null;
+            if (keep) {
+                r = Arrays.copyOf(pr, pn); t = Arrays.copyOf(pt, pn); y = Arrays.copyOf(py, pn);
+            }
+            return new Result(hit, lat, lon, alt, ground, slant, cells, r, t, y);
+        }
+
+        void record(double t, double terrainHae)
+        {
+            if (!keep) return;
+            if (pn == pr.length) {
+                pr = Arrays.copyOf(pr, pn * 2); pt = Arrays.copyOf(pt, pn * 2); py = Arrays.copyOf(py, pn * 2);
+            }
+            double s = s0 + t * len;
+            pr[pn] = s; pt[pn] = terrainHae; py[pn] = rayAt(s);
+            pn++;
+        }
+    }
+
+    // trace, then check against marching getAltFromLatLon in 1 m steps
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 7) {
+            System.err.println("Usage: java TerrainProfile <dem file> lat lon altHAE azimuth depression maxRange [profile]");
+            System.exit(1);
+        }
+        System.setProperty("slf4j.internal.verbosity", "ERROR");
+        OpenAthenaCore.CacheDir = Paths.get("/");
+        OpenAthenaCore core = new OpenAthenaCore();
+
+        double lat = Double.parseDouble(args[1]), lon = Double.parseDouble(args[2]), alt = Double.parseDouble(args[3]);
+        double az = Double.parseDouble(args[4]), dep = Double.parseDouble(args[5]), range = Double.parseDouble(args[6]);
+        boolean profile = args.length > 7;
+
+        try (MaxarDtmReader dem = new MaxarDtmReader(new File(args[0]))) {
+            Result r = null;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < 100; i++) r = trace(dem, lat, lon, alt, az, dep, range, profile);
+            long t1 = System.nanoTime();
+            if (r.hit) {
+                System.out.printf("hit (%.7f, %.7f) %.2f m HAE  ground %.1f m  slant %.1f m  %d cells  %.1f us%n",
+                                  r.lat, r.lon, r.alt, r.groundRange, r.slantRange, r.cells, (t1 - t0) / 100 / 1000.0);
+            }
+            else {
+                System.out.printf("no hit within %.0f m  %d cells  %.1f us%n", range, r.cells, (t1 - t0) / 100 / 1000.0);
+            }
+            if (!profile && usePyramid) {
+                Result q = null;
+                t0 = System.nanoTime();
+                for (int i = 0; i < 100; i++) {
+                    q = new Walker(dem.profileGrid(), null, lat, lon, alt, az, dep, false).run(range);
+                }
+                t1 = System.nanoTime();
+                System.out.printf("without pyramid: %s  %d cells  %.1f us%n",
+                                  q.hit ? String.format("ground %.1f m", q.groundRange) : "no hit",
+                                  q.cells, (t1 - t0) / 100 / 1000.0);
+            }
+            if (profile) {
+                for (int i = 0; i < r.profileRange.length; i++) {
+                    System.out.printf("%10.2f %10.2f %10.2f%n", r.profileRange[i], r.profileTerrain[i], r.profileRay[i]);
+                }
+            }
+
+            // naive: step 1 m along the track with full lookups
+            double tanDep = Math.tan(Math.toRadians(dep)), ground = range * Math.cos(Math.toRadians(dep));
+            Walker w = new Walker(dem.profileGrid(), null, lat, lon, alt, az, dep, false);
+            double la = lat, lo = lon, s = 0, found = Double.NaN;
+            t0 = System.nanoTime();
+            for (; s <= ground; s += 1.0) {
+                double a = w.rayAt(s);
+                try {
+                    if (a < dem.getAltFromLatLon(la, lo)) { found = s; break; }
+                } catch (Exception e) {
+                    // off the DEM
+                }
+                double[] nx = w.destination(la, lo, 1.0);
+                la = nx[0]; lo = nx[1];
+            }
+            t1 = System.nanoTime();
+            System.out.printf("1 m march: %s  %.1f us%n",
+                              Double.isNaN(found) ? "no hit" : String.format("ground %.1f m", found), (t1 - t0) / 1000.0);
+        }
+    }
+
+} // TerrainProfile
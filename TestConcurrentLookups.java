@@ -0,0 +1,126 @@
+// TestConcurrentLookups.java
+// throughput of one shared MaxarDtmReader across 1..N threads
+// javac -cp ".:lib/*" TestConcurrentLookups.java
+// java -cp ".:lib/*" TestConcurrentLookups <dem file> <lookups per thread> [max threads] [mode]
+//
+// Without a mode it runs PRIMITIVE and then RASTERS (which PRIMITIVE
+// falls back to for sample formats it can't copy out).
+// Each thread looks up random points inside the DEM's bounds and checks
+// them against values computed single-threaded beforehand, so a data
+// race shows up as a mismatch rather than just a fast number.  Prints
+// lookups/sec and speedup over one thread; with immutable readers,
+// per-thread transforms and mapped geoid grids this should scale close
+// to linearly up to the number of cores, geoid-datum DEMs included
+// (unless GeoidRegistry has no grid and falls back to an adapter, which
+// is serialized).  RASTERS serializes on the Rasters and won't scale.
+// Prints PASS/FAIL per mode and exits 1 if any lookup differed.
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.openathena.core.OpenAthenaCore;
+
+public class TestConcurrentLookups
+{
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 2) {
+            System.out.println("Usage: java TestConcurrentLookups <dem file> <lookups per thread> [max threads] [rasters|primitive|mapped|sidecar]");
+            return;
+        }
+
+        System.setProperty("slf4j.internal.verbosity", "ERROR");
+        OpenAthenaCore.CacheDir = Paths.get("/");
+        OpenAthenaCore core = new OpenAthenaCore();
+
+        File aFile = new File(args[0]);
+        int perThread = Integer.parseInt(args[1]);
+        int maxThreads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        MaxarDtmReader.LoadMode[] modes = (args.length > 3) ?
+            new MaxarDtmReader.LoadMode[] { MaxarDtmReader.LoadMode.valueOf(args[3].toUpperCase()) } :
+            new MaxarDtmReader.LoadMode[] { MaxarDtmReader.LoadMode.PRIMITIVE, MaxarDtmReader.LoadMode.RASTERS };
+
+        for (MaxarDtmReader.LoadMode mode : modes) {
+            System.out.println(mode+":");
+            long bad = runMode(aFile, mode, perThread, maxThreads);
+            TestSupport.check(mode+": concurrent lookups match single-threaded", bad == 0);
+        }
+        TestSupport.finish();
+    }
+
+    // mismatches over every thread count
+
+    private static long runMode(File aFile, MaxarDtmReader.LoadMode mode, int perThread, int maxThreads) throws Exception
+    {
+        AtomicLong bad = new AtomicLong();
+        try (MaxarDtmReader dtm = new MaxarDtmReader(aFile, mode)) {
+
+            // points well inside the bounds and their expected altitudes
+            int n = 4096;
+            double[] lats = new double[n], lons = new double[n], want = new double[n];
+            Random rnd = new Random(42);
+            double dLat = dtm.getN() - dtm.getS(), dLon = dtm.getE() - dtm.getW();
+            for (int i = 0; i < n; i++) {
+                lats[i] = dtm.getS() + dLat * (0.05 + 0.9 * rnd.nextDouble());
+                lons[i] = dtm.getW() + dLon * (0.05 + 0.9 * rnd.nextDouble());
+                want[i] = dtm.getAltFromLatLon(lats[i], lons[i]);
+            }
+
+            double base = 0.0;
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                double rate = run(dtm, threads, perThread, lats, lons, want, bad);
+                if (threads == 1) base = rate;
+                System.out.printf("%3d threads: %12.0f lookups/sec  speedup %5.2f%n", threads, rate, rate / base);
+            }
+            System.out.println("total lookups "+dtm.getNumAltLookups());
+        }
+        return bad.get();
+    }
+
+    // lookups/sec; lookups that differ from want are added to total
+
+    private static double run(MaxarDtmReader dtm, int threads, int perThread,
+                              double[] lats, double[] lons, double[] want, AtomicLong total) throws Exception
+    {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicLong mismatches = new AtomicLong();
+        Thread[] ts = new Thread[threads];
+        int n = lats.length;
+
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * 997;
+            ts[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        int k = (i + offset) % n;
+                        double alt = dtm.getAltFromLatLon(lats[k], lons[k]);
+                        if (Double.compare(alt, want[k]) != 0) mismatches.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    System.out.println("lookup failed: "+e);
+                    mismatches.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+            ts[t].start();
+        }
+
+        long t0 = System.nanoTime();
+        start.countDown();
+        done.await();
+        long t1 = System.nanoTime();
+
+        if (mismatches.get() != 0) {
+            System.out.println("  "+threads+" threads: "+mismatches.get()+" lookups differed from single-threaded values");
+            total.addAndGet(mismatches.get());
+        }
+        return (double) threads * perThread / ((t1 - t0) / 1e9);
+    }
+
+} // TestConcurrentLookups
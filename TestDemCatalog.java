@@ -0,0 +1,96 @@
+// TestDemCatalog.java
+// check when DemCatalog.open reuses its saved .demcatalog and when it rescans
+// javac -cp ".:lib/*" TestDemCatalog.java
+// java -cp ".:lib/*" TestDemCatalog
+//
+// In a temp directory of DEM_LatLon_* files (bounds from the name, so
+// their contents don't matter) and one .tif that isn't a GeoTiff:
+//  - open() scans, indexes the named tiles and skips the .tif
+//  - writing the tool's own sidecars (.grid, .grid.tmp, .pyr,
+//    .demscan.jsonl) next to them doesn't make it rescan, though it
+//    bumps the directory's mtime
+//  - adding, removing or rewriting a DEM file, or rewriting the skipped
+//    .tif, does
+// A rescan is seen as .demcatalog being written again.
+// Prints PASS/FAIL per check and exits 1 on any failure.
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import com.openathena.core.OpenAthenaCore;
+
+public class TestDemCatalog
+{
+    private static final long OLD = 1_000_000_000_000L;  // 2001
+
+    public static void main(String[] args) throws Exception
+    {
+        System.setProperty("slf4j.internal.verbosity", "ERROR");
+        OpenAthenaCore.CacheDir = Paths.get("/");
+
+        File dir = Files.createTempDirectory("TestDemCatalog").toFile();
+        try {
+            touch(new File(dir, "DEM_LatLon_33_-84_34_-83.srtm"), 10);
+            touch(new File(dir, "DEM_LatLon_33.5_-83.5_33.6_-83.4.max"), 10);
+            touch(new File(dir, "notadem.tif"), 10);
+
+            DemCatalog c = DemCatalog.open(dir);
+            File idx = new File(dir, DemCatalog.INDEX_NAME);
+            TestSupport.check("scan indexes the named tiles and skips the .tif", c.size() == 2 && idx.isFile());
+            TestSupport.check("best tile is the Maxar one",
+                              c.bestTileAt(33.55, -83.45).extension.equals("max"));
+
+            TestSupport.check("reopened unchanged: reused", !rescans(dir, idx));
+
+            touch(new File(dir, "DEM_LatLon_33_-84_34_-83.srtm.grid"), 10);
+            touch(new File(dir, "DEM_LatLon_33_-84_34_-83.srtm.grid.tmp"), 10);
+            touch(new File(dir, "DEM_LatLon_33_-84_34_-83.srtm.pyr"), 10);
+            touch(new File(dir, DemScan.INDEX_NAME), 0);
+            TestSupport.check("sidecars written: reused", !rescans(dir, idx));
+
+            File added = new File(dir, "DEM_LatLon_35_-84_36_-83.cop30");
+            touch(added, 10);
+            TestSupport.check("DEM added: rescanned", rescans(dir, idx) && DemCatalog.open(dir).size() == 3);
+
+            File max = new File(dir, "DEM_LatLon_33.5_-83.5_33.6_-83.4.max");
+            touch(max, 20);
+            TestSupport.check("DEM rewritten: rescanned", rescans(dir, idx));
+
+            touch(new File(dir, "notadem.tif"), 20);
+            TestSupport.check("skipped file rewritten: rescanned", rescans(dir, idx));
+
+            added.delete();
+            TestSupport.check("DEM removed: rescanned", rescans(dir, idx) && DemCatalog.open(dir).size() == 2);
+            TestSupport.check("then reused", !rescans(dir, idx));
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) for (File f : files) f.delete();
+            dir.delete();
+        }
+
+        TestSupport.finish();
+    }
+
+    // backdate .demcatalog, open, and see whether it was written again
+
+    private static boolean rescans(File dir, File idx) throws IOException
+    {
+        if (!idx.setLastModified(OLD)) throw new IOException("can't set mtime on "+idx);
+        DemCatalog.open(dir);
+        return idx.lastModified() != OLD;
+    }
+
+    // n bytes, with a new mtime even within the file system's resolution
+
+    private static void touch(File f, int n) throws IOException
+    {
+        long before = f.lastModified();
+        try (FileOutputStream out = new FileOutputStream(f)) {
+            out.write(new byte[n]);
+        }
+        if (f.lastModified() == before) f.setLastModified(before + 2000);
+    }
+}
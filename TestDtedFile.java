@@ -0,0 +1,240 @@
+// TestDtedFile.java
+// write a synthetic DTED tile and check DtedFile and MaxarDtmReader read it back
+// javac -cp ".:lib/*" TestDtedFile.java
+// java -cp ".:lib/*" TestDtedFile [out.dt2]
+//
+// None of the DEMs in the repo is DTED inside (the DEM_LatLon_*.dt2
+// downloads are GeoTiffs), so this writes one: UHL/DSI/ACC headers and
+// checksummed data records as in MIL-PRF-89020B, with negative posts
+// (signed magnitude), a lone void post and a 2x2 void block.  Then:
+//  - DtedFile gives back the header fields and every post, voids as NaN
+//  - nearest/bilinear/idw return a post at the post, leave voids out
+//    next to one and are NaN inside the void block
+//  - a bad checksum or sentinel is refused at open
+//  - MaxarDtmReader opens it as DTED2, its batch lookup marks a point
+//    in the void block NaN, lookups on the tile edge give the nearest
+//    post, and it refuses a DTED1 tile
+// The tile is left at out.dt2 if given, else deleted.  write() is also
+// used by TestDtedIdw to make tiles to compare interpolations on.
+// Prints PASS/FAIL per check and exits 1 on any failure.
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+
+import com.agilesrc.dem4j.dted.DTEDLevelEnum;
+
+import com.openathena.core.OpenAthenaCore;
+
+public class TestDtedFile
+{
+    public static final int VOID = -32767;
+
+    // the test tile: 61x61 1" posts from 33N 84W
+    static final int COLS = 61, ROWS = 61;
+
+    static int height(int col, int row)
+    {
+        if (col == 5 && row == 6) return VOID;
+        if (col >= 20 && col <= 21 && row >= 20 && row <= 21) return VOID;
+        return (int) Math.round(40 * Math.sin(col / 7.0) + 30 * Math.cos(row / 5.0)) - 20;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        System.setProperty("slf4j.internal.verbosity", "ERROR");
+        OpenAthenaCore.CacheDir = Paths.get("/");
+        OpenAthenaCore core = new OpenAthenaCore();
+
+        File f = (args.length > 0) ? new File(args[0]) : File.createTempFile("TestDtedFile", ".dt2");
+        write(f, 33, -84, 10, 10, COLS, ROWS, 2, TestDtedFile::height);
+
+        try (DtedFile d = new DtedFile(f)) {
+            TestSupport.check("origin", d.getSouth() == 33 && d.getWest() == -84);
+            TestSupport.check("extent", Math.abs(d.getNorth() - (33 + 60 / 3600.0)) < 1e-12
+                                        && Math.abs(d.getEast() - (-84 + 60 / 3600.0)) < 1e-12);
+            TestSupport.check("intervals", d.getLatitudeInterval() == 1 / 3600.0 && d.getLongitudeInterval() == 1 / 3600.0);
+            TestSupport.check("posts", d.getColumns() == COLS && d.getRows() == ROWS);
+            TestSupport.check("level", d.getLevel() == 2);
+            TestSupport.check("datums", d.getVerticalDatum().equals("E96") && d.getHorizontalDatum().equals("WGS84"));
+            TestSupport.check("vertical accuracy", d.getAbsVerticalAccuracy() == 5);
+
+            int wrong = 0, negative = 0;
+            for (int c = 0; c < COLS; c++) {
+                for (int r = 0; r < ROWS; r++) {
+                    int h = height(c, r);
+                    double got = d.post(c, r);
+                    if (h == VOID ? !Double.isNaN(got) : got != h) wrong++;
+                    if (h != VOID && h < 0) negative++;
+                }
+            }
+            TestSupport.check("every post, voids as NaN ("+negative+" negative)", wrong == 0 && negative > 0);
+
+            double lat = 33 + 10 / 3600.0, lon = -84 + 12 / 3600.0;
+            TestSupport.check("nearest/bilinear/idw at a post", d.nearest(lat, lon) == height(12, 10)
+                              && Math.abs(d.bilinear(lat, lon) - height(12, 10)) < 1e-6 && d.idw(lat, lon, 1.875) == height(12, 10));
+            lat = 33 + 6.5 / 3600.0;
+            lon = -84 + 5.5 / 3600.0;
+            double b = d.bilinear(lat, lon), w = d.idw(lat, lon, 1.875);
+            double want = (height(6, 6) + height(5, 7) + height(6, 7)) / 3.0;
+            TestSupport.check("void post left out", Math.abs(b - want) < 1e-9 && Math.abs(w - want) < 1e-9);
+            lat = 33 + 20.5 / 3600.0;
+            lon = -84 + 20.5 / 3600.0;
+            TestSupport.check("void block is NaN", Double.isNaN(d.nearest(lat, lon)) && Double.isNaN(d.bilinear(lat, lon))
+                              && Double.isNaN(d.idw(lat, lon, 1.875)));
+            TestSupport.check("off the tile", !d.contains(32.99, -83.99) && Double.isNaN(d.idw(32.99, -83.99, 1.875)));
+        }
+
+        // damage one elevation byte, then one sentinel
+        File bad = File.createTempFile("TestDtedFile", ".dt2");
+        try {
+            write(bad, 33, -84, 10, 10, COLS, ROWS, 2, TestDtedFile::height);
+            int record = 8 + 2 * ROWS + 4;
+            patch(bad, DtedFile.DATA_OFFSET + 7L * record + 8 + 2 * 3 + 1);
+            TestSupport.check("bad checksum refused", refused(bad));
+            DtedFile.verifyChecksums = false;
+            TestSupport.check("bad checksum opens unverified", !refused(bad));
+            DtedFile.verifyChecksums = true;
+            write(bad, 33, -84, 10, 10, COLS, ROWS, 2, TestDtedFile::height);
+            patch(bad, DtedFile.DATA_OFFSET + 9L * record);
+            TestSupport.check("bad sentinel refused", refused(bad));
+
+            try (MaxarDtmReader dtm = new MaxarDtmReader(f)) {
+                TestSupport.check("MaxarDtmReader: DTED2", dtm.isDTED && dtm.dtedLevel == DTEDLevelEnum.DTED2
+                                  && dtm.numCols == COLS && dtm.numRows == ROWS);
+                // batch along the middle of a row of cells, through the
+                // void block; a lone void is just left out of the IDW
+                int n = COLS - 1;
+                double[] lats = new double[n], lons = new double[n], out = new double[n];
+                long[] valid = new long[1];
+                for (int c = 0; c < n; c++) {
+                    lats[c] = 33 + 20.5 / 3600.0;
+                    lons[c] = -84 + (c + 0.5) / 3600.0;
+                }
+                int good = dtm.getAltFromLatLon(lats, lons, out, valid, null);
+                TestSupport.check("MaxarDtmReader: batch gives NaN inside the void block",
+                                  good == n - 1 && Double.isNaN(out[20]) && (valid[0] & (1L << 20)) == 0
+                                  && Long.bitCount(valid[0]) == n - 1);
+
+                // on the tile's edge a lookup is the nearest post, as it was
+                // with dem4j, in every interpolation mode
+                double[][] edge = {
+                    { 33, -84 + 12.3 / 3600.0, 12, 0 },
+                    { dtm.getMaxLat(), -84 + 40.7 / 3600.0, 41, 60 },
+                    { 33 + 30.6 / 3600.0, -84, 0, 31 },
+                    { 33 + 17.2 / 3600.0, dtm.getMaxLon(), 60, 17 },
+                    { dtm.getMaxLat(), dtm.getMaxLon(), 60, 60 },
+                };
+                int off = 0;
+                for (MaxarDtmReader.DtedInterpolation m : MaxarDtmReader.DtedInterpolation.values()) {
+                    dtm.setDtedInterpolation(m);
+                    for (double[] e : edge) {
+                        double want = height((int) e[2], (int) e[3]) + dtm.getEGMOffsetForLatLon(e[0], e[1]);
+                        if (Math.abs(dtm.getAltFromLatLon(e[0], e[1]) - want) > 1e-9) off++;
+                    }
+                }
+                TestSupport.check("MaxarDtmReader: nearest post on the tile edge", off == 0);
+            }
+            write(bad, 33, -84, 30, 30, COLS, ROWS, 1, TestDtedFile::height);
+            boolean threw = false;
+            try {
+                // shouldn't get past the constructor
+                new MaxarDtmReader(bad).close();
+            } catch (Exception e) {
+                threw = true;
+            }
+            TestSupport.check("MaxarDtmReader: DTED1 refused", threw);
+        } finally {
+            bad.delete();
+        }
+
+        if (args.length == 0) f.delete();
+        TestSupport.finish();
+    }
+
+    // write a DTED tile of cols x rows posts with its SW post at whole
+    // degrees south, west; intervals in tenths of an arc second;
+    // height(col, row) in meters from the SW corner, VOID for a void
+
+    static void write(File f, int south, int west, int lonTenths, int latTenths, int cols, int rows,
+                      int level, IntBinaryOperator height) throws IOException
+    {
+        byte[] hdr = new byte[DtedFile.DATA_OFFSET];
+        Arrays.fill(hdr, (byte) ' ');
+        put(hdr, 0, "UHL1");
+        put(hdr, 4, dms(west, 'E', 'W'));
+        put(hdr, 12, dms(south, 'N', 'S'));
+        put(hdr, 20, String.format("%04d%04d", lonTenths, latTenths));
+        put(hdr, 28, "0005U  ");
+        put(hdr, 47, String.format("%04d%04d0", cols, rows));
+
+        int dsi = DtedFile.UHL_LENGTH;
+        put(hdr, dsi, "DSIU");
+        put(hdr, dsi + 59, "DTED"+level);
+        put(hdr, dsi + 141, "E96WGS84");
+
+        int acc = DtedFile.UHL_LENGTH + DtedFile.DSI_LENGTH;
+        put(hdr, acc, "ACC");
+        put(hdr, acc + 3, "0050");
+        put(hdr, acc + 7, "0005");
+
+        ByteBuffer rec = ByteBuffer.allocate(8 + 2 * rows + 4);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(f))) {
+            out.write(hdr);
+            for (int c = 0; c < cols; c++) {
+                rec.clear();
+                rec.put((byte) 0xAA);
+                rec.put((byte) 0).putShort((short) c);
+                rec.putShort((short) c).putShort((short) 0);
+                for (int r = 0; r < rows; r++) {
+                    int h = height.applyAsInt(c, r);
+                    rec.putShort((short) (h < 0 ? 0x8000 | -h : h));
+                }
+                int sum = 0;
+                for (int i = 0; i < rec.position(); i++) sum += rec.get(i) & 0xFF;
+                rec.putInt(sum);
+                out.write(rec.array(), 0, rec.position());
+            }
+        }
+    }
+
+    private static String dms(int deg, char pos, char neg)
+    {
+        return String.format("%03d0000%c", Math.abs(deg), deg < 0 ? neg : pos);
+    }
+
+    private static void put(byte[] b, int off, String s)
+    {
+        byte[] a = s.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(a, 0, b, off, a.length);
+    }
+
+    private static void patch(File f, long off) throws IOException
+    {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.seek(off);
+            int v = raf.read();
+            raf.seek(off);
+            raf.write(v ^ 0x01);
+        }
+    }
+
+    private static boolean refused(File f)
+    {
+        try {
+            new DtedFile(f).close();
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+} // TestDtedFile
@@ -0,0 +1,145 @@
+// TestDtedIdw.java
+// how far planar IDW and bilinear stray from the haversine IDW on DTED
+// javac -cp ".:lib/*" TestDtedIdw.java
+// java -cp ".:lib/*" TestDtedIdw [-n lookups] [dted file...]
+//
+// For each DTED file, looks up the same random points (plus every post
+// corner of a few cells, where IDW snaps to the post) with each
+// MaxarDtmReader.DtedInterpolation and reports the max and mean absolute
+// difference from HAVERSINE_IDW along with ns/lookup.  The geoid offset
+// is the same in every mode so the differences are purely interpolation.
+// Files that aren't DTED inside (our DEM_LatLon_*.dt2 downloads are
+// GeoTiffs) are skipped.  With no files, synthetic DTED2 tiles are
+// written with TestDtedFile.write at 33N, 60N and 78N (1", 2" and 4"
+// longitude spacing, as DTED2 has there) over hills as steep as 40
+// degrees, so the bound below is checked without any real DTED.
+//  - every method returns the posts themselves
+//  - PLANAR_IDW stays within PLANAR_MAX_DIFF of HAVERSINE_IDW everywhere
+//    (BILINEAR is a different surface; only its posts are checked)
+// Prints PASS/FAIL per check and exits 1 on any failure.
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.openathena.core.OpenAthenaCore;
+
+public class TestDtedIdw
+{
+    // accepted deviation of PLANAR_IDW from HAVERSINE_IDW.  The weights
+    // agree far closer than this; what's left is points right at the 0.1 m
+    // exact-hit radius, which one metric snaps to the post and the other
+    // doesn't, off by a few mm on real DTED slopes.  Heights are whole
+    // meters.
+    static final double PLANAR_MAX_DIFF = 0.01;
+    // posts are computed from lat/lon, so allow for rounding
+    static final double POST_MAX_DIFF = 1e-6;
+    static final int POSTS = 64;
+
+    public static void main(String[] args) throws Exception
+    {
+        int n = 200_000;
+        int i = 0;
+        if (args.length > 1 && args[0].equals("-n")) {
+            n = Integer.parseInt(args[1]);
+            i = 2;
+        }
+
+        System.setProperty("slf4j.internal.verbosity", "ERROR");
+        OpenAthenaCore.CacheDir = Paths.get("/");
+        OpenAthenaCore core = new OpenAthenaCore();
+
+        List<File> files = new ArrayList<>();
+        List<File> synthetic = new ArrayList<>();
+        for (; i < args.length; i++) files.add(new File(args[i]));
+        if (files.isEmpty()) {
+            int[][] tiles = { { 33, 10 }, { 60, 20 }, { 78, 40 } };  // south, lon interval (0.1")
+            for (int[] t : tiles) {
+                File f = File.createTempFile("TestDtedIdw"+t[0]+"N", ".dt2");
+                TestDtedFile.write(f, t[0], -84, t[1], 10, 1201, 1201, 2, TestDtedIdw::hills);
+                synthetic.add(f);
+            }
+            files.addAll(synthetic);
+        }
+
+        int checked = 0;
+        for (File f : files) {
+            if (!MaxarDtmReader.looksLikeDTED(f.toPath())) {
+                System.out.println(f.getName()+": not DTED, skipped");
+                continue;
+            }
+            try (MaxarDtmReader dtm = new MaxarDtmReader(f)) {
+                System.out.printf("%s: %s %dx%d posts%n", f.getName(), dtm.dtedLevel, dtm.numCols, dtm.numRows);
+                compare(dtm, n);
+                checked++;
+            }
+        }
+        for (File f : synthetic) f.delete();
+        TestSupport.check("some DTED checked", checked > 0);
+        TestSupport.finish();
+    }
+
+    // 1000 +/- 250 m hills, up to about 30 m between neighbouring posts,
+    // and a few meters of fixed noise
+
+    static int hills(int col, int row)
+    {
+        int noise = ((col * 73856093) ^ (row * 19349663)) & 7;
+        return (int) Math.round(1000 + 250 * Math.sin(col / 10.0) * Math.cos(row / 12.0)) + noise;
+    }
+
+    private static void compare(MaxarDtmReader dtm, int n) throws Exception
+    {
+        double[] lats = new double[n], lons = new double[n];
+        Random rnd = new Random(17);
+        double dLat = dtm.getN() - dtm.getS(), dLon = dtm.getE() - dtm.getW();
+        int k = 0;
+        // posts themselves: every method must return them exactly
+        for (int c = 0; c * 8 < POSTS && k < n; c++) {
+            for (int r = 0; r < 8 && k < n; r++, k++) {
+                lats[k] = dtm.getS() + (100 + r) * dtm.latSpacing;
+                lons[k] = dtm.getW() + (100 + c) * dtm.lonSpacing;
+            }
+        }
+        for (; k < n; k++) {
+            lats[k] = dtm.getS() + dLat * rnd.nextDouble();
+            lons[k] = dtm.getW() + dLon * rnd.nextDouble();
+        }
+
+        dtm.setDtedInterpolation(MaxarDtmReader.DtedInterpolation.HAVERSINE_IDW);
+        double[] want = new double[n];
+        long nanos = TestSupport.lookupAll(dtm, lats, lons, want);
+        System.out.printf("  %-14s %8.1f ns/lookup%n", "haversine IDW", nanos / (double) n);
+
+        for (MaxarDtmReader.DtedInterpolation m : MaxarDtmReader.DtedInterpolation.values()) {
+            if (m == MaxarDtmReader.DtedInterpolation.HAVERSINE_IDW) continue;
+            dtm.setDtedInterpolation(m);
+            double[] got = new double[n];
+            nanos = TestSupport.lookupAll(dtm, lats, lons, got);
+            double max = 0, sum = 0, postMax = 0;
+            int count = 0, worst = -1, voids = 0;
+            for (int j = 0; j < n; j++) {
+                if (Double.isNaN(want[j]) != Double.isNaN(got[j])) voids++;
+                if (Double.isNaN(want[j]) || Double.isNaN(got[j])) continue;
+                double d = Math.abs(got[j] - want[j]);
+                if (j < POSTS) postMax = Math.max(postMax, d);
+                if (d > max) { max = d; worst = j; }
+                sum += d;
+                count++;
+            }
+            System.out.printf("  %-14s %8.1f ns/lookup  max |diff| %.6f m  mean %.6f m%s%n", m.name().toLowerCase(),
+                              nanos / (double) n, max, count == 0 ? 0 : sum / count,
+                              worst < 0 ? "" : String.format("  (worst at %.7f, %.7f)", lats[worst], lons[worst]));
+            String name = m.name().toLowerCase();
+            TestSupport.check(name+": posts returned as is", postMax <= POST_MAX_DIFF);
+            TestSupport.check(name+": void or off the tile at the same points", voids == 0);
+            if (m == MaxarDtmReader.DtedInterpolation.PLANAR_IDW) {
+                TestSupport.check(name+": within "+PLANAR_MAX_DIFF+" m of haversine IDW", max <= PLANAR_MAX_DIFF);
+            }
+        }
+        dtm.setDtedInterpolation(MaxarDtmReader.defaultDtedInterpolation);
+    }
+
+} // TestDtedIdw
@@ -1,4 +1,6 @@
 // TestGeoTiffLookupPerformance.java
+// quick single-point timing; bench/DemLookupBench (bench/bench.sh) is the
+// JMH version with random in-bounds points and allocation numbers
 
 import java.io.InputStream;
 import java.io.File;
@@ -0,0 +1,174 @@
+// TestGeoidLookups.java
+// compare Geoid storage modes for speed and identical results
+// javac -encoding UTF-8 TestGeoidLookups.java
+// java TestGeoidLookups <pgm file> <lookups> [cubic|bilinear] [max threads]
+//
+// Looks up the same random points through each mode and checks every
+// height matches the plain RandomAccessFile Geoid bit for bit.  Points
+// are clustered (a few hundred per cell neighbourhood) like DEM lookups
+// are, so the last-cell memo gets exercised as well as cold reads.
+// computeGeoidHeights (batch, grouped by cell when cubic) is checked the same way,
+// as is a cacheArea with precomputed cubic coefficients over a region
+// straddling the prime meridian.
+// Finally one threadsafe memory-mapped Geoid is shared by 1..max threads
+// (each with its own last-cell memo) to check results and scaling.
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestGeoidLookups
+{
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 2) {
+            System.out.println("Usage: java TestGeoidLookups <pgm file> <lookups> [cubic|bilinear] [max threads]");
+            return;
+        }
+        String pgm = args[0];
+        int n = Integer.parseInt(args[1]);
+        boolean cubic = !(args.length > 2 && args[2].equals("bilinear"));
+        int maxThreads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        double[] lats = new double[n], lons = new double[n];
+        Random rnd = new Random(7);
+        for (int i = 0; i < n; i += 256) {
+            double lat = -89 + 178 * rnd.nextDouble(), lon = -180 + 360 * rnd.nextDouble();
+            for (int k = i; k < Math.min(n, i + 256); k++) {
+                lats[k] = lat + 0.05 * rnd.nextGaussian();
+                lons[k] = lon + 0.05 * rnd.nextGaussian();
+            }
+        }
+
+        Geoid ref = new Geoid("ref", pgm, cubic, false);
+        double[] want = new double[n];
+        long t0 = System.nanoTime();
+        for (int i = 0; i < n; i++) want[i] = ref.computeGeoidHeight(lats[i], lons[i]);
+        long t1 = System.nanoTime();
+        report("file", n, t1 - t0, 0);
+
+        run("mmap", new Geoid("mmap", pgm, cubic, false, true), lats, lons, want);
+
+        t0 = System.nanoTime();
+        Geoid cached = new Geoid("cached", pgm, cubic, false);
+        cached.cacheAll();
+        t1 = System.nanoTime();
+        System.out.printf("cacheAll (file) %8.1f ms  %d MB%n", (t1 - t0) / 1e6, cached.getCacheBytes() >> 20);
+        run("file+cacheAll", cached, lats, lons, want);
+
+        t0 = System.nanoTime();
+        Geoid mcached = new Geoid("mcached", pgm, cubic, false, true);
+        mcached.cacheAll();
+        t1 = System.nanoTime();
+        System.out.printf("cacheAll (mmap) %8.1f ms  %d MB%n", (t1 - t0) / 1e6, mcached.getCacheBytes() >> 20);
+        run("mmap+cacheAll", mcached, lats, lons, want);
+
+        t0 = System.nanoTime();
+        Geoid tsafe = new Geoid("threadsafe", pgm, cubic, true, true);
+        t1 = System.nanoTime();
+        System.out.printf("threadsafe open (mmap) %8.1f ms%n", (t1 - t0) / 1e6);
+        run("mmap threadsafe", tsafe, lats, lons, want);
+
+        Geoid tsafeFile = new Geoid("threadsafe", pgm, cubic, true);
+        run("file threadsafe", tsafeFile, lats, lons, want);
+        runBatch("mmap batch", tsafe, lats, lons, want);
+
+        // region -30..30 lat, -60..60 lon
+        double s = -30, w = -60, nn = 30, e = 60;
+        Geoid coef = new Geoid("coef", pgm, cubic, false, true);
+        System.out.printf("estimate: samples %d MB, with coefficients %d MB%n",
+                          coef.estimateCacheBytes(s, w, nn, e, false) >> 20, coef.estimateCacheBytes(s, w, nn, e, true) >> 20);
+        t0 = System.nanoTime();
+        coef.cacheArea(s, w, nn, e, true);
+        t1 = System.nanoTime();
+        System.out.printf("cacheArea+coefficients %8.1f ms  %d MB%n", (t1 - t0) / 1e6, coef.getCacheBytes() >> 20);
+        double[] rlats = new double[n], rlons = new double[n], rwant = new double[n];
+        for (int i = 0; i < n; i++) {
+            rlats[i] = s + (nn - s) * ((lats[i] + 90) / 180);
+            rlons[i] = w + (e - w) * ((lons[i] + 180) / 360);
+            rwant[i] = ref.computeGeoidHeight(rlats[i], rlons[i]);
+        }
+        Geoid plain = new Geoid("plain", pgm, cubic, false, true);
+        plain.cacheArea(s, w, nn, e);
+        run("region cached", plain, rlats, rlons, rwant);
+        run("region coefficients", coef, rlats, rlons, rwant);
+        runBatch("region coef batch", coef, rlats, rlons, rwant);
+
+        double base = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double rate = runThreads(tsafe, threads, lats, lons, want);
+            if (threads == 1) base = rate;
+            System.out.printf("%3d threads %12.0f lookups/sec  speedup %5.2f%n", threads, rate, rate / base);
+        }
+    }
+
+    private static double runThreads(Geoid g, int threads, double[] lats, double[] lons, double[] want) throws Exception
+    {
+        int n = lats.length;
+        CountDownLatch start = new CountDownLatch(1), done = new CountDownLatch(threads);
+        AtomicLong bad = new AtomicLong();
+        for (int t = 0; t < threads; t++) {
+            // each thread starts on a different cluster
+            final int offset = (t * 256 * 7) % n;
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < n; i++) {
+                        int k = (i + offset) % n;
+                        if (Double.compare(g.computeGeoidHeight(lats[k], lons[k]), want[k]) != 0) bad.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    bad.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        done.await();
+        long t1 = System.nanoTime();
+        if (bad.get() != 0) System.out.println("WARNING: "+bad.get()+" MISMATCHES with "+threads+" threads");
+        return (double) threads * n / ((t1 - t0) / 1e9);
+    }
+
+    private static void run(String what, Geoid g, double[] lats, double[] lons, double[] want)
+    {
+        int n = lats.length, bad = 0;
+        double sum = 0;
+        // once to warm up, once timed
+        for (int i = 0; i < n; i++) sum += g.computeGeoidHeight(lats[i], lons[i]);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            double h = g.computeGeoidHeight(lats[i], lons[i]);
+            if (Double.compare(h, want[i]) != 0) bad++;
+            sum += h;
+        }
+        long t1 = System.nanoTime();
+        report(what, n, t1 - t0, bad);
+        // printed so the JIT can't drop the lookups
+        System.out.println("  checksum "+sum);
+    }
+
+    private static void runBatch(String what, Geoid g, double[] lats, double[] lons, double[] want)
+    {
+        int n = lats.length, bad = 0;
+        double[] out = new double[n];
+        // a few passes so the JIT compiles the batch loops
+        for (int k = 0; k < 5; k++) g.computeGeoidHeights(lats, lons, out);
+        long t0 = System.nanoTime();
+        g.computeGeoidHeights(lats, lons, out);
+        long t1 = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            if (Double.compare(out[i], want[i]) != 0) bad++;
+        }
+        report(what, n, t1 - t0, bad);
+    }
+
+    private static void report(String what, int n, long nanos, int bad)
+    {
+        System.out.printf("%-18s %8.1f ns/lookup  %s%n", what, nanos / (double) n,
+                          bad == 0 ? "ok" : bad + " MISMATCHES");
+    }
+
+} // TestGeoidLookups
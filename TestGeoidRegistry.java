@@ -0,0 +1,111 @@
+// TestGeoidRegistry.java
+// check that geoid models are shared, loaded once and only when used
+// javac -cp ".:lib/*" TestGeoidRegistry.java
+// java -cp ".:lib/*" TestGeoidRegistry <egm2008 pgm> [dem file|-] [threads]
+//
+// With GeoidRegistry.egm2008Pgm set:
+//  - forDataType() for every GeoTiffDataType hands out the one shared
+//    provider per model and loads nothing
+//  - opening the DEM (a .cop30, .3dep or .eudtm tile is the interesting
+//    case) loads nothing either
+//  - the first EGM2008 lookup maps the pgm (no EGM2008OffsetAdapter) and
+//    leaves EGM96 unloaded
+//  - the shared provider gives the same heights as a private Geoid when
+//    hammered from several threads
+// Prints PASS/FAIL per check and exits 1 on any failure.
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.openathena.core.EGMOffsetProvider;
+import com.openathena.core.GeoTiffDataType;
+import com.openathena.core.OpenAthenaCore;
+
+public class TestGeoidRegistry
+{
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 1) {
+            System.out.println("Usage: java TestGeoidRegistry <egm2008 pgm> [dem file|-] [threads]");
+            return;
+        }
+        System.setProperty("slf4j.internal.verbosity", "ERROR");
+        OpenAthenaCore.CacheDir = Paths.get("/");
+        OpenAthenaCore core = new OpenAthenaCore();
+
+        String pgm = args[0];
+        int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        GeoidRegistry.egm2008Pgm = pgm;
+
+        for (GeoTiffDataType t : GeoTiffDataType.values()) {
+            EGMOffsetProvider p = GeoidRegistry.forDataType(t);
+            GeoidRegistry.Model m = GeoidRegistry.forVerticalDatum(t.getVertDatum());
+            TestSupport.check(t+" -> "+m, p == (m == null ? null : GeoidRegistry.get(m)));
+        }
+        TestSupport.check("forDataType loads nothing", !loaded());
+
+        if (args.length > 1 && !args[1].equals("-")) {
+            try (MaxarDtmReader dem = new MaxarDtmReader(new File(args[1]))) {
+                TestSupport.check("open "+args[1]+" ("+dem.getVerticalDatum()+") loads nothing", !loaded());
+            }
+        }
+
+        long t0 = System.nanoTime();
+        double n = GeoidRegistry.get(GeoidRegistry.Model.EGM2008).getEGMOffsetAtLatLon(33.7757, -84.3963);
+        long t1 = System.nanoTime();
+        System.out.printf("first EGM2008 lookup %.1f ms, N = %.3f m%n", (t1 - t0) / 1e6, n);
+        TestSupport.check("EGM2008 loaded by first lookup", GeoidRegistry.isLoaded(GeoidRegistry.Model.EGM2008));
+        TestSupport.check("EGM96 still not loaded", !GeoidRegistry.isLoaded(GeoidRegistry.Model.EGM96));
+
+        // same heights as a private Geoid, from many threads at once
+        int per = 200_000;
+        double[] lats = new double[per], lons = new double[per], want = new double[per];
+        Random rnd = new Random(11);
+        Geoid ref = new Geoid("ref", pgm, true, false);
+        for (int i = 0; i < per; i++) {
+            lats[i] = -89 + 178 * rnd.nextDouble();
+            lons[i] = -180 + 360 * rnd.nextDouble();
+            want[i] = ref.computeGeoidHeight(lats[i], lons[i]);
+        }
+        EGMOffsetProvider shared = GeoidRegistry.get(GeoidRegistry.Model.EGM2008);
+        AtomicLong mismatches = new AtomicLong();
+        CountDownLatch go = new CountDownLatch(1), done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int off = t * 7919;
+            new Thread(() -> {
+                try {
+                    go.await();
+                    for (int i = 0; i < per; i++) {
+                        int k = (i + off) % per;
+                        if (Double.compare(shared.getEGMOffsetAtLatLon(lats[k], lons[k]), want[k]) != 0) {
+                            mismatches.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    mismatches.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        t0 = System.nanoTime();
+        go.countDown();
+        done.await();
+        t1 = System.nanoTime();
+        System.out.printf("%d threads x %d lookups: %.1f M lookups/s%n", threads, per,
+                          (double) threads * per / ((t1 - t0) / 1e9) / 1e6);
+        TestSupport.check("shared lookups match a private Geoid", mismatches.get() == 0);
+
+        GeoidRegistry.report(System.out);
+        TestSupport.finish();
+    }
+
+    private static boolean loaded()
+    {
+        return GeoidRegistry.isLoaded(GeoidRegistry.Model.EGM96) || GeoidRegistry.isLoaded(GeoidRegistry.Model.EGM2008);
+    }
+
+} // TestGeoidRegistry
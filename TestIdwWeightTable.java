@@ -0,0 +1,81 @@
+// TestIdwWeightTable.java
+// accuracy and speed of the precomputed IDW weight table vs exact IDW
+// javac -cp ".:lib/*" TestIdwWeightTable.java
+// java -cp ".:lib/*" TestIdwWeightTable [-n lookups] <dem file>...
+//
+// For each GeoTiff DEM, looks up the same random points with exact IDW
+// (sqrt/pow per pixel) and with MaxarDtmReader.setUseIdwWeightTable(true)
+// and reports the max and mean absolute difference in meters along with
+// ns/lookup for each.
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import com.openathena.core.OpenAthenaCore;
+
+public class TestIdwWeightTable
+{
+    public static void main(String[] args) throws Exception
+    {
+        int n = 200_000;
+        int i = 0;
+        if (args.length > 1 && args[0].equals("-n")) {
+            n = Integer.parseInt(args[1]);
+            i = 2;
+        }
+        if (i >= args.length) {
+            System.out.println("Usage: java TestIdwWeightTable [-n lookups] <dem file>...");
+            return;
+        }
+
+        System.setProperty("slf4j.internal.verbosity", "ERROR");
+        OpenAthenaCore.CacheDir = Paths.get("/");
+        OpenAthenaCore core = new OpenAthenaCore();
+
+        for (; i < args.length; i++) {
+            File f = new File(args[i]);
+            try (MaxarDtmReader dtm = new MaxarDtmReader(f)) {
+                if (dtm.isDTED) {
+                    System.out.println(f.getName()+": DTED, skipped (see TestDtedIdw)");
+                    continue;
+                }
+                System.out.printf("%s: %dx%d %s%n", f.getName(), dtm.getWidth(), dtm.getHeight(), dtm.getDataEpsg());
+                compare(dtm, n);
+            }
+        }
+    }
+
+    private static void compare(MaxarDtmReader dtm, int n)
+    {
+        double[] lats = new double[n], lons = new double[n];
+        Random rnd = new Random(23);
+        double dLat = dtm.getN() - dtm.getS(), dLon = dtm.getE() - dtm.getW();
+        for (int k = 0; k < n; k++) {
+            lats[k] = dtm.getS() + dLat * rnd.nextDouble();
+            lons[k] = dtm.getW() + dLon * rnd.nextDouble();
+        }
+
+        dtm.setUseIdwWeightTable(false);
+        double[] want = new double[n];
+        long exact = TestSupport.lookupAll(dtm, lats, lons, want);
+        dtm.setUseIdwWeightTable(true);
+        double[] got = new double[n];
+        long table = TestSupport.lookupAll(dtm, lats, lons, got);
+        dtm.setUseIdwWeightTable(MaxarDtmReader.defaultUseIdwWeightTable);
+
+        double max = 0, sum = 0;
+        int count = 0, worst = -1;
+        for (int j = 0; j < n; j++) {
+            if (Double.isNaN(want[j]) || Double.isNaN(got[j])) continue;
+            double d = Math.abs(got[j] - want[j]);
+            if (d > max) { max = d; worst = j; }
+            sum += d;
+            count++;
+        }
+        System.out.printf("  exact %8.1f ns/lookup  table %8.1f ns/lookup%n", exact / (double) n, table / (double) n);
+        System.out.printf("  max |diff| %.6f m  mean %.6f m over %d points%s%n", max, count == 0 ? 0 : sum / count, count,
+                          worst < 0 ? "" : String.format("  (worst at %.7f, %.7f)", lats[worst], lons[worst]));
+    }
+
+} // TestIdwWeightTable
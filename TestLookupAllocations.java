@@ -0,0 +1,98 @@
+// TestLookupAllocations.java
+// measure heap bytes allocated per MaxarDtmReader lookup at steady state
+// javac -cp ".:lib/*" TestLookupAllocations.java
+// java -cp ".:lib/*" TestLookupAllocations <dem file> <lat> <lon> <iterations> [mode]
+//
+// Uses the per-thread allocation counter from com.sun.management so no
+// profiler is needed.  Reports bytes/lookup for
+//   pixelFromLatLon  - WGS84 -> data CRS -> col,row (our code + proj4j)
+//   getAltFromLatLon - full lookup including IDW and geoid offset
+// Lookups walk a small grid of points around lat,lon so the JIT can't
+// fold them into a constant; results are summed and printed so they
+// aren't dead code.
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+
+import com.openathena.core.OpenAthenaCore;
+
+public class TestLookupAllocations
+{
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 4) {
+            System.out.println("Usage: java TestLookupAllocations <dem file> <latitude> <longitude> <iterations> [rasters|primitive|mapped|sidecar]");
+            return;
+        }
+
+        System.setProperty("slf4j.internal.verbosity", "ERROR");
+        OpenAthenaCore.CacheDir = Paths.get("/");
+        OpenAthenaCore core = new OpenAthenaCore();
+
+        File aFile = new File(args[0]);
+        double lat = Double.parseDouble(args[1]);
+        double lon = Double.parseDouble(args[2]);
+        int iterations = Integer.parseInt(args[3]);
+        MaxarDtmReader.LoadMode mode = (args.length > 4) ?
+            MaxarDtmReader.LoadMode.valueOf(args[4].toUpperCase()) : MaxarDtmReader.LoadMode.PRIMITIVE;
+
+        com.sun.management.ThreadMXBean mx =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!mx.isThreadAllocatedMemorySupported()) {
+            System.out.println("Thread allocation counters not supported by this JVM");
+            return;
+        }
+        mx.setThreadAllocatedMemoryEnabled(true);
+        long tid = Thread.currentThread().getId();
+
+        // points within ~50m of lat,lon
+        int n = 64;
+        double[] lats = new double[n], lons = new double[n];
+        for (int i = 0; i < n; i++) {
+            lats[i] = lat + ((i % 8) - 4) * 0.00005;
+            lons[i] = lon + ((i / 8) - 4) * 0.00005;
+        }
+
+        try (MaxarDtmReader dtm = new MaxarDtmReader(aFile, mode)) {
+            System.out.println("Load mode: "+dtm.getLoadMode()+"  DTED: "+dtm.isDTED);
+            double[] rc = new double[2];
+            double sum = 0.0;
+
+            // warm up so JIT and thread locals settle
+            for (int i = 0; i < 200_000; i++) {
+                sum += dtm.getAltFromLatLon(lats[i % n], lons[i % n]);
+                if (!dtm.isDTED && dtm.pixelFromLatLon(lats[i % n], lons[i % n], rc)) sum += rc[0];
+            }
+
+            if (!dtm.isDTED) {
+                long a0 = mx.getThreadAllocatedBytes(tid);
+                long t0 = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    if (dtm.pixelFromLatLon(lats[i % n], lons[i % n], rc)) sum += rc[0] + rc[1];
+                }
+                long t1 = System.nanoTime();
+                long a1 = mx.getThreadAllocatedBytes(tid);
+                report("pixelFromLatLon", iterations, a1 - a0, t1 - t0);
+            }
+
+            long a0 = mx.getThreadAllocatedBytes(tid);
+            long t0 = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sum += dtm.getAltFromLatLon(lats[i % n], lons[i % n]);
+            }
+            long t1 = System.nanoTime();
+            long a1 = mx.getThreadAllocatedBytes(tid);
+            report("getAltFromLatLon", iterations, a1 - a0, t1 - t0);
+
+            System.out.println("checksum "+sum);
+        }
+    }
+
+    private static void report(String what, int iterations, long bytes, long nanos)
+    {
+        System.out.printf("%-18s %10d calls  %8.2f bytes/call  %8.1f ns/call%n",
+                          what, iterations, bytes / (double) iterations, nanos / (double) iterations);
+    }
+
+} // TestLookupAllocations
@@ -0,0 +1,311 @@
+// TestMappedGeoTiff.java
+// check MappedGeoTiff's own tile decoders against mil.nga.tiff, pixel by pixel
+// javac -cp ".:lib/*" TestMappedGeoTiff.java
+// java -cp ".:lib/*" TestMappedGeoTiff [dem file]...
+//
+// MappedGeoTiff decodes strips/tiles itself (LZW, Deflate, PackBits,
+// horizontal and floating point predictors) instead of going through
+// mil.nga.tiff.  For each DEM (default: every GeoTiff DEM in the current
+// directory) this reads band 0 with Rasters, as RASTERS and PRIMITIVE
+// do, and compares every pixel against
+//  - MappedGeoTiff decoding tiles lazily (MAPPED), with a cache small
+//    enough that blocks get evicted and decoded again
+//  - a sidecar written from it and mapped back (SIDECAR)
+// The sidecar goes to a temp file so no .grid is left next to the DEM.
+// Files mil.nga.tiff can't read (BigTIFF) have no reference and are
+// skipped.
+//
+// The sample DEMs are all LZW, Deflate or uncompressed without a
+// predictor, so it also writes small tiled GeoTiffs of its own covering
+// the other paths: Deflate with horizontal (2) and floating point (3)
+// predictors in both byte orders, and PackBits.  Those are checked
+// against the values written and, when little endian, against Rasters
+// too: mil.nga.tiff 3.0.0 gets predictors wrong in big endian files
+// (-886 for a first difference of -31 from -600).
+// Prints the layout and PASS/FAIL per file and mode; exits 1 on any
+// mismatch.
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import mil.nga.tiff.Rasters;
+import mil.nga.tiff.TiffReader;
+import mil.nga.tiff.util.TiffException;
+
+public class TestMappedGeoTiff
+{
+    public static void main(String[] args) throws Exception
+    {
+        List<File> files = new ArrayList<>();
+        for (String a : args) files.add(new File(a));
+        if (files.isEmpty()) {
+            File[] here = new File(".").listFiles((d, name) -> isDemName(name));
+            if (here != null) {
+                Arrays.sort(here);
+                files.addAll(Arrays.asList(here));
+            }
+        }
+        if (files.isEmpty()) {
+            System.out.println("Usage: java TestMappedGeoTiff [dem file]...  (no DEMs found here)");
+            System.exit(1);
+        }
+
+        // synthetic: compression, predictor, float?, big endian?
+        int[][] synth = { {8, 2, 0, 0}, {8, 2, 0, 1}, {8, 3, 1, 0}, {8, 3, 1, 1}, {32773, 1, 0, 1}, {32773, 2, 1, 0} };
+        for (int[] v : synth) {
+            File f = File.createTempFile("TestMappedGeoTiff", ".tif");
+            try {
+                boolean isFloat = v[2] != 0;
+                writeTiff(f, v[0], v[1], isFloat, v[3] != 0);
+                String what = "synthetic "+(isFloat ? "float32" : "int16")+" compression "+v[0]
+                    +" predictor "+v[1]+(v[3] != 0 ? " MM" : " II");
+                float[] want = new float[SW * SH];
+                for (int r = 0; r < SH; r++) {
+                    for (int c = 0; c < SW; c++) want[r * SW + c] = isFloat ? fvalue(c, r) : svalue(c, r);
+                }
+                if (v[3] == 0) {
+                    TestSupport.check(what+" Rasters agrees", Arrays.equals(readRasters(f), want));
+                }
+                try (MappedGeoTiff m = new MappedGeoTiff(f, 1)) {
+                    TestSupport.check(what+" MAPPED", compare(m, want));
+                }
+            } finally {
+                f.delete();
+            }
+        }
+
+        for (File f : files) {
+            System.out.println(f.getName()+": "+layout(f));
+            float[] want;
+            try {
+                want = readRasters(f);
+            } catch (TiffException e) {
+                System.out.println("  skipped, mil.nga.tiff can't read it: "+e.getMessage());
+                continue;
+            }
+
+            // a 1-byte cache bound: every new block evicts the last one
+            try (MappedGeoTiff m = new MappedGeoTiff(f, 1)) {
+                TestSupport.check(f.getName()+" MAPPED", compare(m, want));
+            }
+
+            File side = File.createTempFile("TestMappedGeoTiff", MappedGeoTiff.SIDECAR_EXT);
+            try (MappedGeoTiff m = new MappedGeoTiff(f)) {
+                m.writeSidecar(side, 0);
+                boolean mapped = m.mapSidecar(side);
+                TestSupport.check(f.getName()+" SIDECAR", mapped && m.isSidecar() && compare(m, want));
+            } finally {
+                side.delete();
+            }
+        }
+        TestSupport.finish();
+    }
+
+    // band 0 via mil.nga.tiff, row major; the reference
+
+    private static float[] readRasters(File f) throws IOException
+    {
+        Rasters r = TiffReader.readTiff(f).getFileDirectory().readRasters();
+        int w = r.getWidth(), h = r.getHeight();
+        float[] out = new float[w * h];
+        for (int row = 0; row < h; row++) {
+            for (int col = 0; col < w; col++) {
+                out[row * w + col] = r.getPixelSample(0, col, row).floatValue();
+            }
+        }
+        return out;
+    }
+
+    // every pixel equal (NaN matches NaN); prints the first few misses
+
+    private static boolean compare(MappedGeoTiff m, float[] want)
+    {
+        int w = m.getWidth(), h = m.getHeight();
+        if ((long) w * h != want.length) {
+            System.out.println("  size "+w+" x "+h+" doesn't match Rasters");
+            return false;
+        }
+        int bad = 0;
+        for (int row = 0; row < h; row++) {
+            for (int col = 0; col < w; col++) {
+                float got = (float) m.sample(col, row), exp = want[row * w + col];
+                if (Float.compare(got, exp) != 0 && !(got == exp)) {
+                    if (bad < 5) System.out.println("  ("+col+","+row+") "+got+" != "+exp);
+                    bad++;
+                }
+            }
+        }
+        if (bad > 0) System.out.println("  "+bad+" of "+want.length+" pixels differ");
+        return bad == 0;
+    }
+
+    private static String layout(File f) throws IOException
+    {
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            TiffIfd ifd = TiffIfd.readFirst(ch);
+            return ifd.getLong(TiffIfd.TAG_ImageWidth, 0)+" x "+ifd.getLong(TiffIfd.TAG_ImageLength, 0)
+                +", "+ifd.getLong(TiffIfd.TAG_BitsPerSample, 1)+"-bit format "+ifd.getLong(TiffIfd.TAG_SampleFormat, 1)
+                +", compression "+ifd.getLong(TiffIfd.TAG_Compression, 1)
+                +", predictor "+ifd.getLong(TiffIfd.TAG_Predictor, 1)
+                +(ifd.has(TiffIfd.TAG_TileWidth) ? ", tiled" : ", strips");
+        }
+    }
+
+    // ---- synthetic tiles
+
+    // odd size so the right and bottom tiles are partial
+    static final int SW = 45, SH = 37, TILE = 16;
+
+    static short svalue(int c, int r) { return (short) (r * 97 - c * 31 + (c * r) % 7 - 600); }
+    static float fvalue(int c, int r) { return (float) (100 * Math.sin(c / 5.0) + r * 0.37 - 50); }
+
+    // band 0 only, 16x16 tiles; predictor applied here, as a writer would
+
+    static void writeTiff(File f, int compression, int predictor, boolean isFloat, boolean bigEndian) throws IOException
+    {
+        ByteOrder order = bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        int bps = isFloat ? 4 : 2;
+        int across = (SW + TILE - 1) / TILE, down = (SH + TILE - 1) / TILE;
+        byte[][] tiles = new byte[across * down][];
+        for (int ty = 0; ty < down; ty++) {
+            for (int tx = 0; tx < across; tx++) {
+                // predictor 3 works on big endian values in any file
+                ByteBuffer raw = ByteBuffer.allocate(TILE * TILE * bps)
+                    .order(predictor == 3 ? ByteOrder.BIG_ENDIAN : order);
+                for (int r = 0; r < TILE; r++) {
+                    for (int c = 0; c < TILE; c++) {
+                        int col = Math.min(tx * TILE + c, SW - 1), row = Math.min(ty * TILE + r, SH - 1);
+                        if (isFloat) raw.putFloat(fvalue(col, row));
+                        else raw.putShort(svalue(col, row));
+                    }
+                }
+                byte[] b = raw.array();
+                if (predictor == 2) applyHorizontalPredictor(b, bps, order);
+                else if (predictor == 3) b = applyFloatPredictor(b, bps);
+                tiles[ty * across + tx] = (compression == 8) ? deflate(b) : packBits(b);
+            }
+        }
+
+        int ntags = 13;
+        int ifdSize = 2 + 12 * ntags + 4;
+        long dataOff = 8 + ifdSize + 8L * tiles.length;
+        ByteBuffer hdr = ByteBuffer.allocate(8 + ifdSize + 8 * tiles.length).order(order);
+        hdr.put((byte) (bigEndian ? 'M' : 'I')).put((byte) (bigEndian ? 'M' : 'I')).putShort((short) 42).putInt(8);
+        hdr.putShort((short) ntags);
+        int offsArray = 8 + ifdSize, countsArray = offsArray + 4 * tiles.length;
+        tag(hdr, 256, 3, 1, SW);
+        tag(hdr, 257, 3, 1, SH);
+        tag(hdr, 258, 3, 1, 8 * bps);
+        tag(hdr, 259, 3, 1, compression);
+        tag(hdr, 262, 3, 1, 1);
+        tag(hdr, 277, 3, 1, 1);
+        tag(hdr, 284, 3, 1, 1);
+        tag(hdr, 317, 3, 1, predictor);
+        tag(hdr, 322, 3, 1, TILE);
+        tag(hdr, 323, 3, 1, TILE);
+        tag(hdr, 324, 4, tiles.length, offsArray);
+        tag(hdr, 325, 4, tiles.length, countsArray);
+        tag(hdr, 339, 3, 1, isFloat ? 3 : 2);
+        hdr.putInt(0);
+        long off = dataOff;
+        for (byte[] t : tiles) { hdr.putInt((int) off); off += t.length; }
+        for (byte[] t : tiles) hdr.putInt(t.length);
+
+        try (OutputStream os = new FileOutputStream(f)) {
+            os.write(hdr.array());
+            for (byte[] t : tiles) os.write(t);
+        }
+    }
+
+    private static void tag(ByteBuffer b, int tag, int type, int count, int value)
+    {
+        b.putShort((short) tag).putShort((short) type).putInt(count);
+        if (type == 3 && count == 1) b.putShort((short) value).putShort((short) 0);
+        else b.putInt(value);
+    }
+
+    private static void applyHorizontalPredictor(byte[] raw, int bps, ByteOrder order)
+    {
+        ByteBuffer bb = ByteBuffer.wrap(raw).order(order);
+        int rowBytes = TILE * bps;
+        for (int r = 0; r < TILE; r++) {
+            for (int p = r * rowBytes + rowBytes - bps; p > r * rowBytes; p -= bps) {
+                if (bps == 2) bb.putShort(p, (short) (bb.getShort(p) - bb.getShort(p - bps)));
+                else bb.putInt(p, bb.getInt(p) - bb.getInt(p - bps));
+            }
+        }
+    }
+
+    // byte planes, most significant first, then differenced across the
+    // row; raw must be big endian whatever the file's byte order
+    private static byte[] applyFloatPredictor(byte[] raw, int bps)
+    {
+        byte[] out = new byte[raw.length];
+        int rowBytes = TILE * bps;
+        for (int r = 0; r < TILE; r++) {
+            int base = r * rowBytes;
+            for (int s = 0; s < TILE; s++) {
+                for (int b = 0; b < bps; b++) {
+                    out[base + b * TILE + s] = raw[base + s * bps + b];
+                }
+            }
+            for (int i = base + rowBytes - 1; i > base; i--) out[i] = (byte) (out[i] - out[i - 1]);
+        }
+        return out;
+    }
+
+    private static byte[] deflate(byte[] b)
+    {
+        Deflater d = new Deflater();
+        d.setInput(b);
+        d.finish();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        while (!d.finished()) bos.write(buf, 0, d.deflate(buf));
+        d.end();
+        return bos.toByteArray();
+    }
+
+    // runs of 3+ equal bytes as repeats, everything else as literals
+    private static byte[] packBits(byte[] b)
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < b.length) {
+            int run = 1;
+            while (i + run < b.length && run < 128 && b[i + run] == b[i]) run++;
+            if (run >= 3) {
+                bos.write(1 - run);
+                bos.write(b[i]);
+                i += run;
+                continue;
+            }
+            int start = i;
+            while (i < b.length && i - start < 128
+                   && !(i + 2 < b.length && b[i] == b[i + 1] && b[i] == b[i + 2])) i++;
+            bos.write(i - start - 1);
+            bos.write(b, start, i - start);
+        }
+        return bos.toByteArray();
+    }
+
+    private static boolean isDemName(String name)
+    {
+        String n = name.toLowerCase();
+        return n.endsWith(".3dep") || n.endsWith(".cop30") || n.endsWith(".eudtm") || n.endsWith(".srtm")
+            || n.endsWith(".dt2") || n.endsWith(".max") || n.endsWith(".utmwgs84")
+            || n.endsWith(".tif") || n.endsWith(".tiff");
+    }
+
+} // TestMappedGeoTiff
@@ -0,0 +1,44 @@
+// TestSupport.java
+// PASS/FAIL bookkeeping and timed lookups shared by the Test*.java checks
+// javac -cp ".:lib/*" TestSupport.java
+//
+// check() prints one PASS or FAIL line per check; finish() prints the
+// total and exits 1 if anything failed.  lookupAll() times a
+// MaxarDtmReader over a set of points.
+
+public class TestSupport
+{
+    private static int failures = 0;
+
+    static void check(String what, boolean ok)
+    {
+        System.out.println((ok ? "PASS " : "FAIL ")+what);
+        if (!ok) failures++;
+    }
+
+    static void finish()
+    {
+        System.out.println(failures == 0 ? "all checks passed" : failures+" checks FAILED");
+        if (failures != 0) System.exit(1);
+    }
+
+    // look up every point once to warm up, then again timed; NaN where
+    // the lookup throws.  Returns the timed pass in ns.
+
+    static long lookupAll(MaxarDtmReader dtm, double[] lats, double[] lons, double[] out)
+    {
+        long t0 = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            if (pass == 1) t0 = System.nanoTime();
+            for (int j = 0; j < lats.length; j++) {
+                try {
+                    out[j] = dtm.getAltFromLatLon(lats[j], lons[j]);
+                } catch (Exception e) {
+                    out[j] = Double.NaN;
+                }
+            }
+        }
+        return System.nanoTime() - t0;
+    }
+
+} // TestSupport
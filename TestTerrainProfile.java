@@ -0,0 +1,273 @@
+// TestTerrainProfile.java
+// check TerrainProfile.trace against a brute-force march on a synthetic grid
+// javac -cp ".:lib/*" TestTerrainProfile.java
+// java -cp ".:lib/*" TestTerrainProfile [rays] [seed]
+//
+// The grid is a 1 degree, 1 arc-second tile of smooth hills (100 +/- 200
+// m, geoid offset 30 m) with a void post and a void block in it, so no
+// DEM file is needed.
+//  - random rays: hit/miss and ground range agree with marching the same
+//    ray in 0.05 m steps over the bilinear surface (voids skipped) to
+//    within MAX_RANGE_DIFF; every tenth ray points straight down and the
+//    next within 0.1 degree of it
+//  - straight down: hits the surface under the start, misses over a void,
+//    off the grid or beyond maxRange
+//  - the ElevationPyramid changes nothing: the same hits at the same
+//    places with and without it, for random, grazing, steep, off-grid
+//    and void-crossing rays
+//  - a level ray through a cell whose bilinear ridge rises above it only
+//    between the cell's entry, middle and exit is still a hit
+// Prints PASS/FAIL per check and exits 1 on any failure.
+
+import java.util.Random;
+
+public class TestTerrainProfile
+{
+    // the march and the walker step the track differently; over 30 km
+    // the two tracks drift apart by well under this
+    static final double MAX_RANGE_DIFF = 2.0;
+    static final double MARCH_STEP = 0.05;
+
+    // hills on 33N..34N, 84W..83W; NaN block and one -32767 post
+    static final class Hills implements TerrainProfile.Grid
+    {
+        static final double SOUTH = 33, WEST = -84, STEP = 1 / 3600.0, GEOID = 30;
+        static final int N = 3601;
+        static final int VOID_X0 = 1500, VOID_X1 = 1560, VOID_Y0 = 1700, VOID_Y1 = 1760;
+
+        public int width() { return N; }
+        public int height() { return N; }
+
+        public double sample(int gx, int gy)
+        {
+            if (gx == 1900 && gy == 1800) return -32767;
+            if (gx >= VOID_X0 && gx <= VOID_X1 && gy >= VOID_Y0 && gy <= VOID_Y1) return Double.NaN;
+            return 100 + 200 * Math.sin(gx / 50.0) * Math.cos(gy / 70.0);
+        }
+
+        public double[] toGrid(double lat, double lon, double[] out)
+        {
+            out[0] = (lon - WEST) / STEP;
+            out[1] = (lat - SOUTH) / STEP;
+            return out;
+        }
+
+        public double[] toLatLon(double gx, double gy, double[] out)
+        {
+            out[0] = SOUTH + gy * STEP;
+            out[1] = WEST + gx * STEP;
+            return out;
+        }
+
+        public double toHae(double lat, double lon) { return GEOID; }
+
+        // bilinear terrain HAE, NaN off the grid or next to a void
+        double surface(double lat, double lon)
+        {
+            double x = (lon - WEST) / STEP, y = (lat - SOUTH) / STEP;
+            int cx = (int) Math.floor(x), cy = (int) Math.floor(y);
+            if (cx < 0 || cy < 0 || cx >= N - 1 || cy >= N - 1) return Double.NaN;
+            double z00 = sample(cx, cy), z10 = sample(cx + 1, cy);
+            double z01 = sample(cx, cy + 1), z11 = sample(cx + 1, cy + 1);
+            if (!(z00 > -11000 && z10 > -11000 && z01 > -11000 && z11 > -11000)) return Double.NaN;
+            double fx = x - cx, fy = y - cy;
+            return GEOID + (1 - fy) * ((1 - fx) * z00 + fx * z10) + fy * ((1 - fx) * z01 + fx * z11);
+        }
+    }
+
+    // flat 0 m except one cell, 100,100, whose +x and +y posts are 100 m:
+    // crossed along gy = gx/2 from its corner the surface is
+    // 100 (1.5u - u^2), 0 / 50 / 50 m at entry / middle / exit but 56.25 m
+    // at u = 0.75
+    static final class Ridge implements TerrainProfile.Grid
+    {
+        static final double STEP = 1 / 3600.0;
+        static final int N = 201, C = 100;
+
+        public int width() { return N; }
+        public int height() { return N; }
+
+        public double sample(int gx, int gy)
+        {
+            return ((gx == C + 1 && gy == C) || (gx == C && gy == C + 1)) ? 100 : 0;
+        }
+
+        public double[] toGrid(double lat, double lon, double[] out)
+        {
+            out[0] = lon / STEP;
+            out[1] = lat / STEP;
+            return out;
+        }
+
+        public double[] toLatLon(double gx, double gy, double[] out)
+        {
+            out[0] = gy * STEP;
+            out[1] = gx * STEP;
+            return out;
+        }
+
+        public double toHae(double lat, double lon) { return 0; }
+    }
+
+    public static void main(String[] args)
+    {
+        int rays = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : 1;
+        Hills g = new Hills();
+        Random rnd = new Random(seed);
+
+        // against the march
+        int hits = 0, missed = 0, spurious = 0, far = 0;
+        double worst = 0;
+        long t0 = System.nanoTime();
+        for (int k = 0; k < rays; k++) {
+            double lat = 33.3 + 0.4 * rnd.nextDouble(), lon = -83.7 + 0.4 * rnd.nextDouble();
+            double alt = 600 + 2000 * rnd.nextDouble(), az = 360 * rnd.nextDouble(), dep = 2 + 40 * rnd.nextDouble();
+            if (k % 10 == 0) dep = 90;
+            else if (k % 10 == 1) dep = 90 - 0.1 * rnd.nextDouble();
+            TerrainProfile.Result r = TerrainProfile.trace(g, null, lat, lon, alt, az, dep, 30000, false);
+            double s = march(g, lat, lon, alt, az, dep, 30000);
+            boolean want = !Double.isNaN(s);
+            if (r.hit && !want) spurious++;
+            else if (!r.hit && want) missed++;
+            else if (r.hit) {
+                hits++;
+                double d = Math.abs(r.groundRange - s);
+                worst = Math.max(worst, d);
+                if (d > MAX_RANGE_DIFF) {
+                    far++;
+                    System.out.printf("  ray %d: trace %.2f m, march %.2f m (dep %.1f)%n", k, r.groundRange, s, dep);
+                }
+            }
+        }
+        long t1 = System.nanoTime();
+        System.out.printf("%d rays, %d hits, worst ground range difference %.2f m (%.1f s)%n",
+                          rays, hits, worst, (t1 - t0) / 1e9);
+        TestSupport.check("no hits the march misses", spurious == 0);
+        TestSupport.check("no misses the march hits", missed == 0);
+        TestSupport.check("ground range within "+MAX_RANGE_DIFF+" m of the march", far == 0);
+        TestSupport.check("some rays hit", hits > 0);
+
+        // straight down
+        double lat = 33.41, lon = -83.62, ground = g.surface(lat, lon);
+        TerrainProfile.Result r = TerrainProfile.trace(g, null, lat, lon, ground + 500, 123, 90, 30000, false);
+        TestSupport.check("nadir hits the surface under the start",
+                          r.hit && r.groundRange == 0 && Math.abs(r.alt - ground) < 1e-9 && Math.abs(r.slantRange - 500) < 1e-9);
+        r = TerrainProfile.trace(g, null, lat, lon, ground + 500, 0, 90, 400, false);
+        TestSupport.check("nadir misses beyond maxRange", !r.hit);
+        r = TerrainProfile.trace(g, null, lat, lon, ground - 5, 0, 90, 400, false);
+        TestSupport.check("nadir from below the terrain hits at the start", r.hit && r.alt == ground - 5 && r.slantRange == 0);
+        r = TerrainProfile.trace(g, null, 33.48, -83.575, 2000, 0, 90, 30000, false);
+        TestSupport.check("nadir over a void misses", !r.hit);
+        r = TerrainProfile.trace(g, null, 32.9, -83.5, 2000, 0, 90, 30000, false);
+        TestSupport.check("nadir off the grid misses", !r.hit);
+
+        // level at 53 m along gy = gx/2 into the ridge cell: every cell
+        // sample clears it, the surface doesn't (first under at u ~ 0.57)
+        {
+            final double a = 6378137.0, e2 = 6.69437999014e-3;
+            double gx0 = Ridge.C - 20, gy0 = Ridge.C - 10 + 0.001;
+            double lat0 = gy0 * Ridge.STEP, sl = Math.sin(Math.toRadians(lat0)), w = 1 - e2 * sl * sl;
+            double meridian = a * (1 - e2) / (w * Math.sqrt(w)), prime = a / Math.sqrt(w);
+            double az = Math.toDegrees(Math.atan2(prime * Math.cos(Math.toRadians(lat0)), 0.5 * meridian));
+            r = TerrainProfile.trace(new Ridge(), null, lat0, gx0 * Ridge.STEP, 53, az, 0, 1500, false);
+            double u = r.hit ? r.lon / Ridge.STEP - Ridge.C : Double.NaN;
+            System.out.printf("ridge: hit %b at u = %.3f%n", r.hit, u);
+            TestSupport.check("ridge between cell samples is a hit", r.hit && Math.abs(u - 0.5697) < 0.05);
+        }
+
+        // pyramid on and off
+        ElevationPyramid pyr = ElevationPyramid.build(g, ElevationPyramid.defaultBlock);
+        int n = 20 * rays;
+        samePyramid(g, pyr, "random", n, rnd, () -> new double[] {
+                33.05 + 0.9 * rnd.nextDouble(), -83.95 + 0.9 * rnd.nextDouble(),
+                400 + 3000 * rnd.nextDouble(), 360 * rnd.nextDouble(), 0.5 + 60 * rnd.nextDouble(), 40000 });
+        // just over the hilltops (max 330 m HAE), nearly level, long range
+        samePyramid(g, pyr, "grazing", n, rnd, () -> new double[] {
+                33.05 + 0.9 * rnd.nextDouble(), -83.95 + 0.9 * rnd.nextDouble(),
+                320 + 60 * rnd.nextDouble(), 360 * rnd.nextDouble(), 0.01 + 0.5 * rnd.nextDouble(), 80000 });
+        // from up to 10 km south or west of the tile, heading into it
+        samePyramid(g, pyr, "off-grid start", n, rnd, () -> rnd.nextBoolean()
+                ? new double[] { 32.91 + 0.08 * rnd.nextDouble(), -83.9 + 0.8 * rnd.nextDouble(),
+                                 400 + 2000 * rnd.nextDouble(), -60 + 120 * rnd.nextDouble(), 0.2 + 10 * rnd.nextDouble(), 60000 }
+                : new double[] { 33.1 + 0.8 * rnd.nextDouble(), -84.1 + 0.09 * rnd.nextDouble(),
+                                 400 + 2000 * rnd.nextDouble(), 30 + 120 * rnd.nextDouble(), 0.2 + 10 * rnd.nextDouble(), 60000 });
+        // steep down to straight down
+        samePyramid(g, pyr, "steep", n, rnd, () -> new double[] {
+                33.05 + 0.9 * rnd.nextDouble(), -83.95 + 0.9 * rnd.nextDouble(),
+                400 + 3000 * rnd.nextDouble(), 360 * rnd.nextDouble(),
+                rnd.nextInt(4) == 0 ? 90 : 80 + 10 * rnd.nextDouble(), 40000 });
+        // starting over or next to the void block, low and shallow so the
+        // ray comes down in or just past it
+        samePyramid(g, pyr, "voids", n, rnd, () -> new double[] {
+                33.472 + 0.02 * rnd.nextDouble(), -83.587 + 0.02 * rnd.nextDouble(),
+                200 + 400 * rnd.nextDouble(), 360 * rnd.nextDouble(), 0.5 + 20 * rnd.nextDouble(), 20000 });
+
+        TestSupport.finish();
+    }
+
+    interface RayGen { double[] next(); }  // lat, lon, altHae, azimuth, depression, maxRange
+
+    // trace every ray with and without the pyramid; the hits must be the
+    // same to the bit, and the pyramid must not visit more cells
+    private static void samePyramid(Hills g, ElevationPyramid pyr, String what, int n, Random rnd, RayGen gen)
+    {
+        int differ = 0, more = 0, hits = 0;
+        long with = 0, without = 0;
+        for (int k = 0; k < n; k++) {
+            double[] q = gen.next();
+            TerrainProfile.Result a = TerrainProfile.trace(g, null, q[0], q[1], q[2], q[3], q[4], q[5], false);
+            TerrainProfile.Result b = TerrainProfile.trace(g, pyr, q[0], q[1], q[2], q[3], q[4], q[5], false);
+            if (a.hit) hits++;
+            if (a.hit != b.hit || (a.hit && (Double.compare(a.groundRange, b.groundRange) != 0
+                                             || Double.compare(a.lat, b.lat) != 0
+                                             || Double.compare(a.lon, b.lon) != 0))) {
+                if (differ++ < 5) {
+                    System.out.printf("  %s: %.6f %.6f %.1f az %.2f dep %.3f: %b %.3f m without, %b %.3f m with%n",
+                                      what, q[0], q[1], q[2], q[3], q[4], a.hit, a.groundRange, b.hit, b.groundRange);
+                }
+            }
+            if (b.cells > a.cells) more++;
+            without += a.cells;
+            with += b.cells;
+        }
+        System.out.printf("%s: %d rays, %d hits, %.1f%% of the cells visited with the pyramid%n",
+                          what, n, hits, 100.0 * with / Math.max(1, without));
+        TestSupport.check(what+": same hits with and without the pyramid", differ == 0);
+        TestSupport.check(what+": pyramid never visits more cells", more == 0);
+    }
+
+    // ground range where the ray first goes under the surface, stepping
+    // the track like the walker does but every MARCH_STEP meters; NaN if
+    // it never does within maxRange slant meters
+    static double march(Hills g, double lat, double lon, double alt, double az, double dep, double maxRange)
+    {
+        final double a = 6378137.0, e2 = 6.69437999014e-3;
+        double tanDep = Math.tan(Math.toRadians(dep));
+        double ca = Math.cos(Math.toRadians(az)), sa = Math.sin(Math.toRadians(az));
+        double sl = Math.sin(Math.toRadians(lat));
+        double w = 1 - e2 * sl * sl;
+        double twoR = 2 * Math.sqrt(a * (1 - e2) / (w * Math.sqrt(w)) * a / Math.sqrt(w));
+        double ground = maxRange * Math.cos(Math.toRadians(dep));
+        int steps = (int) (ground / MARCH_STEP);
+        if (steps == 0) {
+            // straight down
+            double t = g.surface(lat, lon);
+            return (alt - maxRange <= t) ? 0 : Double.NaN;
+        }
+        for (int i = 0; i <= steps; i++) {
+            double s = i * MARCH_STEP;
+            if (i > 0) {
+                double q = Math.sin(Math.toRadians(lat)), c = Math.cos(Math.toRadians(lat));
+                double ww = 1 - e2 * q * q;
+                double m = a * (1 - e2) / (ww * Math.sqrt(ww)), nn = a / Math.sqrt(ww);
+                lat += Math.toDegrees(MARCH_STEP * ca / m);
+                lon += Math.toDegrees(MARCH_STEP * sa / (nn * c));
+            }
+            double t = g.surface(lat, lon);
+            if (alt - s * tanDep + s * s / twoR < t) return s;
+        }
+        return Double.NaN;
+    }
+
+} // TestTerrainProfile
@@ -0,0 +1,244 @@
+// TiffIfd.java
+// minimal TIFF/BigTIFF image file directory parser using NIO
+// javac TiffIfd.java
+//
+// Only parses the entry table of an IFD; tag values that don't fit
+// inline are read from the channel when asked for, so callers that
+// only need a handful of tags don't pay for the rest.  Used by
+// MappedGeoTiff to find strips/tiles without mil.nga.tiff decoding the
+// whole raster.
+//
+// TIFF 6.0 field types we care about:
+//  1 BYTE, 2 ASCII, 3 SHORT, 4 LONG, 5 RATIONAL, 6 SBYTE, 7 UNDEFINED,
+//  8 SSHORT, 9 SLONG, 10 SRATIONAL, 11 FLOAT, 12 DOUBLE,
+//  16 LONG8, 17 SLONG8, 18 IFD8 (BigTIFF)
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class TiffIfd
+{
+    // baseline tags
+    public static final int TAG_ImageWidth       = 256;
+    public static final int TAG_ImageLength      = 257;
+    public static final int TAG_BitsPerSample    = 258;
+    public static final int TAG_Compression      = 259;
+    public static final int TAG_StripOffsets     = 273;
+    public static final int TAG_SamplesPerPixel  = 277;
+    public static final int TAG_RowsPerStrip     = 278;
+    public static final int TAG_StripByteCounts  = 279;
+    public static final int TAG_PlanarConfig     = 284;
+    public static final int TAG_Predictor        = 317;
+    public static final int TAG_TileWidth        = 322;
+    public static final int TAG_TileLength       = 323;
+    public static final int TAG_TileOffsets      = 324;
+    public static final int TAG_TileByteCounts   = 325;
+    public static final int TAG_SampleFormat     = 339;
+
+    // GeoTIFF / GDAL tags
+    public static final int TAG_ModelPixelScale     = 33550;
+    public static final int TAG_ModelTiepoint       = 33922;
+    public static final int TAG_ModelTransformation = 34264;
+    public static final int TAG_GeoKeyDirectory     = 34735;
+    public static final int TAG_GDAL_METADATA       = 42112;
+    public static final int TAG_GDAL_NODATA         = 42113;
+
+    private static final int[] typeSize = {
+        0, 1, 1, 2, 4, 8, 1, 1, 2, 4, 8, 4, 8, 4, 0, 0, 8, 8, 8
+    };
+
+    public static final class Entry {
+        public final int tag, type;
+        public final long count;
+        final long valueOffset;   // file offset of the value bytes
+        final byte[] inline;      // value bytes if they fit in the entry
+
+        Entry(int tag, int type, long count, long valueOffset, byte[] inline) {
+            this.tag = tag; this.type = type; this.count = count;
+            this.valueOffset = valueOffset; this.inline = inline;
+        }
+    }
+
+    private final FileChannel ch;
+    private final ByteOrder order;
+    private final boolean bigTiff;
+    private final long ifdOffset;
+    private final Map<Integer,Entry> entries = new HashMap<>();
+
+    private TiffIfd(FileChannel ch, ByteOrder order, boolean bigTiff, long ifdOffset)
+    {
+        this.ch = ch; this.order = order; this.bigTiff = bigTiff; this.ifdOffset = ifdOffset;
+    }
+
+    // read the TIFF header and the first IFD's entry table
+
+    public static TiffIfd readFirst(FileChannel ch) throws IOException
+    {
+        ByteBuffer hdr = read(ch, 0, 16, ByteOrder.LITTLE_ENDIAN);
+        byte b0 = hdr.get(0), b1 = hdr.get(1);
+        ByteOrder order;
+        if (b0 == 'I' && b1 == 'I') order = ByteOrder.LITTLE_ENDIAN;
+        else if (b0 == 'M' && b1 == 'M') order = ByteOrder.BIG_ENDIAN;
+        else throw new IOException("Not a TIFF file");
+        hdr.order(order);
+
+        int magic = hdr.getShort(2) & 0xFFFF;
+        TiffIfd ifd;
+        if (magic == 42) {
+            ifd = new TiffIfd(ch, order, false, hdr.getInt(4) & 0xFFFFFFFFL);
+        }
+        else if (magic == 43) {
+            if ((hdr.getShort(4) & 0xFFFF) != 8) throw new IOException("Unsupported BigTIFF offset size");
+            ifd = new TiffIfd(ch, order, true, hdr.getLong(8));
+        }
+        else {
+            throw new IOException("Bad TIFF magic "+magic);
+        }
+        ifd.readEntries();
+        return ifd;
+    }
+
+    private void readEntries() throws IOException
+    {
+        int countSize = bigTiff ? 8 : 2;
+        int entrySize = bigTiff ? 20 : 12;
+        int valueSize = bigTiff ? 8 : 4;
+
+        ByteBuffer cb = read(ch, ifdOffset, countSize, order);
+        long n = bigTiff ? cb.getLong(0) : (cb.getShort(0) & 0xFFFF);
+        if (n <= 0 || n > 4096) throw new IOException("Implausible IFD entry count "+n);
+
+        ByteBuffer eb = read(ch, ifdOffset + countSize, (int) (n * entrySize), order);
+        for (int i = 0; i < n; i++) {
+            int base = i * entrySize;
+            int tag  = eb.getShort(base) & 0xFFFF;
+            int type = eb.getShort(base + 2) & 0xFFFF;
+            long count = bigTiff ? eb.getLong(base + 4) : (eb.getInt(base + 4) & 0xFFFFFFFFL);
+            int vpos = base + (bigTiff ? 12 : 8);
+            int tsize = (type < typeSize.length) ? typeSize[type] : 0;
+            if (tsize == 0) continue; // unknown type; skip
+            long nbytes = count * tsize;
+            if (nbytes <= valueSize) {
+                byte[] inl = new byte[(int) nbytes];
+                for (int k = 0; k < inl.length; k++) inl[k] = eb.get(vpos + k);
+                entries.put(tag, new Entry(tag, type, count, -1, inl));
+            }
+            else {
+                long off = bigTiff ? eb.getLong(vpos) : (eb.getInt(vpos) & 0xFFFFFFFFL);
+                entries.put(tag, new Entry(tag, type, count, off, null));
+            }
+        }
+    }
+
+    public ByteOrder getByteOrder() { return order; }
+    public boolean isBigTiff() { return bigTiff; }
+    public boolean has(int tag) { return entries.containsKey(tag); }
+    public Entry get(int tag) { return entries.get(tag); }
+    public Map<Integer,Entry> getEntries() { return entries; }
+
+    // value bytes of an entry in file byte order
+
+    private ByteBuffer valueBytes(Entry e) throws IOException
+    {
+        if (e.inline != null) return ByteBuffer.wrap(e.inline).order(order);
+        long n = e.count * typeSize[e.type];
+        if (n > Integer.MAX_VALUE) throw new IOException("Tag "+e.tag+" too large");
+        return read(ch, e.valueOffset, (int) n, order);
+    }
+
+    // integer-valued tags (BYTE, SHORT, LONG, LONG8 and signed variants)
+
+    public long[] getLongs(int tag) throws IOException
+    {
+        Entry e = entries.get(tag);
+        if (e == null) return null;
+        ByteBuffer b = valueBytes(e);
+        if (e.count > Integer.MAX_VALUE) throw new IOException("Tag "+tag+" count too large");
+        long[] out = new long[(int) e.count];
+        for (int i = 0; i < out.length; i++) {
+            switch (e.type) {
+            case 1: case 7: out[i] = b.get(i) & 0xFF; break;
+            case 6:         out[i] = b.get(i); break;
+            case 3:         out[i] = b.getShort(i*2) & 0xFFFF; break;
+            case 8:         out[i] = b.getShort(i*2); break;
+            case 4: case 13: out[i] = b.getInt(i*4) & 0xFFFFFFFFL; break;
+            case 9:         out[i] = b.getInt(i*4); break;
+            case 16: case 17: case 18: out[i] = b.getLong(i*8); break;
+            default: return null;
+            }
+        }
+        return out;
+    }
+
+    public long getLong(int tag, long dflt) throws IOException
+    {
+        long[] v = getLongs(tag);
+        return (v == null || v.length == 0) ? dflt : v[0];
+    }
+
+    public int[] getShorts(int tag) throws IOException
+    {
+        long[] v = getLongs(tag);
+        if (v == null) return null;
+        int[] out = new int[v.length];
+        for (int i = 0; i < v.length; i++) out[i] = (int) (v[i] & 0xFFFF);
+        return out;
+    }
+
+    // floating point and rational tags; integer tags are widened
+
+    public double[] getDoubles(int tag) throws IOException
+    {
+        Entry e = entries.get(tag);
+        if (e == null) return null;
+        if (e.type != 5 && e.type != 10 && e.type != 11 && e.type != 12) {
+            long[] l = getLongs(tag);
+            if (l == null) return null;
+            double[] d = new double[l.length];
+            for (int i = 0; i < l.length; i++) d[i] = l[i];
+            return d;
+        }
+        ByteBuffer b = valueBytes(e);
+        double[] out = new double[(int) e.count];
+        for (int i = 0; i < out.length; i++) {
+            switch (e.type) {
+            case 5:  out[i] = (b.getInt(i*8) & 0xFFFFFFFFL) / (double) (b.getInt(i*8+4) & 0xFFFFFFFFL); break;
+            case 10: out[i] = b.getInt(i*8) / (double) b.getInt(i*8+4); break;
+            case 11: out[i] = b.getFloat(i*4); break;
+            case 12: out[i] = b.getDouble(i*8); break;
+            }
+        }
+        return out;
+    }
+
+    // ASCII tags; trailing NULs stripped
+
+    public String getAscii(int tag) throws IOException
+    {
+        Entry e = entries.get(tag);
+        if (e == null) return null;
+        ByteBuffer b = valueBytes(e);
+        byte[] bytes = new byte[b.remaining()];
+        b.get(bytes);
+        int len = bytes.length;
+        while (len > 0 && bytes[len-1] == 0) len--;
+        return new String(bytes, 0, len, StandardCharsets.ISO_8859_1);
+    }
+
+    private static ByteBuffer read(FileChannel ch, long pos, int len, ByteOrder order) throws IOException
+    {
+        ByteBuffer b = ByteBuffer.allocate(len).order(order);
+        while (b.hasRemaining()) {
+            int r = ch.read(b, pos + b.position());
+            if (r < 0) throw new IOException("Unexpected EOF reading TIFF at "+pos);
+        }
+        b.flip();
+        return b;
+    }
+
+} // TiffIfd
@@ -0,0 +1,100 @@
+#!/bin/bash
+
+# start the DEM command line tools faster with an AppCDS archive
+#
+# usage: ./appcds.sh build [geoid.pgm]
+#        ./appcds.sh run <Class> [args...]
+#   ./appcds.sh build geoids/egm2008-1.pgm
+#   ./appcds.sh run MaxarDtmReader -geoid geoids/egm2008-1.pgm smyrna.max 33.87 -84.52
+#   ./appcds.sh run GeoTiffAltitudeLookup Paris_EU_DTM_EPSG.tiff 48.85 2.35
+#   ./appcds.sh run Egm2008 33.7757 -84.3963 geoids/egm2008-1.pgm
+#
+# Most of a one-shot run of MaxarDtmReader, GeoTiffAltitudeLookup or
+# Egm2008 is the JVM loading and verifying a few thousand classes
+# (ours, mil.nga.tiff, proj4j, OpenAthenaCore) before the first lookup.
+# build compiles the tools into cds/tools.jar (CDS only archives classes
+# from jars), runs each one on the sample DEMs to record the classes it
+# loads, and dumps them all into cds/tools.jsa.  run maps that archive
+# and uses only the C1 compiler, which is what a process that exits
+# after a handful of lookups wants.
+#
+# The other cold-start costs are handled in the code: EpsgParams has
+# the EPSG codes our DEMs use built in, so proj4j's EPSG file isn't
+# scanned, and MaxarDtmReader -geoid maps a GeographicLib EGM2008 grid
+# (GeoidRegistry.egm2008Pgm) instead of loading the geoid.  If the geoid
+# file is given to build it is used while training so Geoid's classes
+# are archived too.
+#
+# The archive is only valid for the JDK and class path it was built
+# with; java silently runs without it otherwise (-Xlog:cds shows why).
+# Rebuild after changing any of the sources or lib/.
+
+set -e
+
+ROOT=$(cd "$(dirname "$0")" && pwd)
+CDS="$ROOT/cds"
+# explicit, sorted jar list: the archive records the class path
+CP="$CDS/tools.jar:$(ls "$ROOT"/lib/*.jar | sort | tr '\n' ':')"
+CP="${CP%:}"
+
+build()
+{
+    local pgm="$1"
+    rm -rf "$CDS"
+    mkdir -p "$CDS/classes"
+    javac -encoding UTF-8 -nowarn -d "$CDS/classes" -cp "$ROOT/lib/*" -sourcepath "$ROOT" \
+          "$ROOT/MaxarDtmReader.java" "$ROOT/GeoTiffAltitudeLookup.java" "$ROOT/Egm2008.java" \
+          "$ROOT/GeoidRegistry.java" "$ROOT/EpsgParams.java"
+    jar cf "$CDS/tools.jar" -C "$CDS/classes" .
+
+    local geoid=() n=0
+    if [[ -n "$pgm" ]]; then geoid=(-geoid "$pgm"); fi
+
+    cd "$ROOT"
+    train()
+    {
+        n=$((n + 1))
+        java -Xshare:off -XX:DumpLoadedClassList="$CDS/train$n.lst" -cp "$CP" "$@" > /dev/null || \
+            echo "appcds: training run '$*' failed; continuing"
+    }
+    train MaxarDtmReader -v "${geoid[@]}" smyrna.max 33.87 -84.52
+    train MaxarDtmReader -v "${geoid[@]}" DEM_LatLon_33.745322_-84.631617_33.925171_-84.415098.dt2 33.8 -84.5
+    train MaxarDtmReader -v "${geoid[@]}" Paris_EU_DTM_EPSG.tiff 48.85 2.35
+    train MaxarDtmReader -v "${geoid[@]}" Paris_EU_DTM_WGS84.tiff 48.85 2.35
+    train GeoTiffAltitudeLookup Paris_EU_DTM_EPSG.tiff 48.85 2.35
+    if [[ -n "$pgm" ]]; then
+        train Egm2008 33.7757 -84.3963 "$pgm"
+    fi
+    train EpsgParams EPSG:4326 EPSG:4269 EPSG:3035 EPSG:32617 EPSG:32731
+
+    sort -u "$CDS"/train*.lst > "$CDS/tools.lst"
+    java -Xshare:dump -XX:SharedClassListFile="$CDS/tools.lst" \
+         -XX:SharedArchiveFile="$CDS/tools.jsa" -cp "$CP" > "$CDS/dump.log" 2>&1 || {
+        tail -20 "$CDS/dump.log"
+        exit 1
+    }
+    rm -rf "$CDS/classes" "$CDS"/train*.lst
+    echo "$(wc -l < "$CDS/tools.lst") classes archived in $CDS/tools.jsa ($(du -h "$CDS/tools.jsa" | cut -f1))"
+}
+
+case "$1" in
+build)
+    build "$2"
+    ;;
+run)
+    shift
+    if [[ $# -lt 1 ]]; then
+        echo "Usage: appcds.sh run <Class> [args...]"
+        exit 1
+    fi
+    if [[ ! -f "$CDS/tools.jsa" ]]; then
+        echo "No $CDS/tools.jsa; run appcds.sh build first"
+        exit 1
+    fi
+    exec java -XX:SharedArchiveFile="$CDS/tools.jsa" -XX:TieredStopAtLevel=1 -cp "$CP" "$@"
+    ;;
+*)
+    echo "Usage: appcds.sh build [geoid.pgm] | run <Class> [args...]"
+    exit 1
+    ;;
+esac
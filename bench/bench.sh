@@ -0,0 +1,69 @@
+#!/bin/bash
+
+# build and run the JMH benchmarks in bench/src against the repo's classes
+#
+# usage: bench/bench.sh [jmh args...]
+#   bench/bench.sh                          everything, gc profiler, json
+#   bench/bench.sh DemLookup -p dem=smyrna.max
+#   bench/bench.sh GeoidBench -p pgm=/data/geoids/egm2008-1.pgm
+#   bench/bench.sh -l                       list benchmarks
+#
+# There is no Maven/Gradle build here, so this script is the build: it
+# fetches JMH (pinned, checked against Maven Central's sha1) into
+# bench/lib once, compiles the repo classes the benchmarks use plus
+# bench/src with JMH's annotation processor into bench/build, and runs
+# org.openjdk.jmh.Main from the repo root so the sample DEM names
+# resolve.  Results go to bench/results/<commit>.json (-dirty if the
+# tree has changes) for comparing commits; -rff overrides.  The gc
+# profiler reports allocation per operation and GC counts.
+
+set -e
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+BENCH="$ROOT/bench"
+MAVEN=https://repo1.maven.org/maven2
+
+JARS="org/openjdk/jmh/jmh-core/1.37/jmh-core-1.37.jar
+org/openjdk/jmh/jmh-generator-annprocess/1.37/jmh-generator-annprocess-1.37.jar
+net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar
+org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar"
+
+mkdir -p "$BENCH/lib"
+for j in $JARS; do
+    f="$BENCH/lib/$(basename $j)"
+    if [[ ! -f "$f" ]]; then
+        echo "Fetching $(basename $j)"
+        curl -sSf -o "$f.tmp" "$MAVEN/$j"
+        want=$(curl -sSf "$MAVEN/$j.sha1" | cut -c1-40)
+        have=$(sha1sum "$f.tmp" | cut -c1-40)
+        if [[ "$want" != "$have" ]]; then
+            echo "Checksum mismatch for $j"
+            rm -f "$f.tmp"
+            exit 1
+        fi
+        mv "$f.tmp" "$f"
+    fi
+done
+
+# benchmarks reach these through method handles (see Repo.java), so
+# javac has to be told about them; -sourcepath pulls in the rest
+rm -rf "$BENCH/build"
+mkdir -p "$BENCH/build"
+javac -encoding UTF-8 -nowarn -d "$BENCH/build" \
+      -cp "$ROOT/lib/*:$BENCH/lib/*" -sourcepath "$ROOT" \
+      "$ROOT/MaxarDtmReader.java" "$ROOT/Geoid.java" "$ROOT/PolarCoordinates.java" \
+      "$BENCH"/src/bench/*.java
+
+# default output unless the caller picked one
+OUT=()
+if [[ " $* " != *" -rff "* && " $* " != *" -l "* && " $* " != *" -h "* ]]; then
+    mkdir -p "$BENCH/results"
+    REV=$(git -C "$ROOT" rev-parse --short HEAD 2>/dev/null || echo nogit)
+    if [[ -n "$(git -C "$ROOT" status --porcelain --untracked-files=no 2>/dev/null)" ]]; then
+        REV="$REV-dirty"
+    fi
+    OUT=(-prof gc -rf json -rff "$BENCH/results/$REV.json")
+fi
+
+cd "$ROOT"
+exec java -cp "$BENCH/build:$ROOT/lib/*:$BENCH/lib/*" org.openjdk.jmh.Main "${OUT[@]}" "$@"
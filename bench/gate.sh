@@ -0,0 +1,49 @@
+#!/bin/bash
+
+# run the benchmarks and compare them with the checked-in baseline
+#
+# usage: bench/gate.sh [-update] [jmh args...]
+#   bench/gate.sh                      full suite vs bench/baseline.json
+#   bench/gate.sh DemLookup            just the DEM lookups
+#   bench/gate.sh -update              run and make the result the baseline
+#
+# Runs bench/bench.sh (sample DEMs and geoids/ from the repo, nothing
+# remote once bench/lib has JMH) into bench/results/gate.json, then
+# bench.BenchGate writes bench/results/gate-report.txt.  Exits 2 if
+# anything regressed (see BenchGate.java for the rule), 0 otherwise.
+# GATE_CONFIDENCE and GATE_THRESHOLD (percent) override the defaults.
+#
+# Baselines are only comparable on the machine that made them: record
+# one with -update on the reference box and commit bench/baseline.json.
+
+set -e
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+BENCH="$ROOT/bench"
+BASELINE="$BENCH/baseline.json"
+CURRENT="$BENCH/results/gate.json"
+REPORT="$BENCH/results/gate-report.txt"
+
+UPDATE=0
+if [[ "$1" == "-update" ]]; then
+    UPDATE=1
+    shift
+fi
+
+mkdir -p "$BENCH/results"
+"$BENCH/bench.sh" -prof gc -rf json -rff "$CURRENT" "$@"
+
+if [[ $UPDATE -eq 1 ]]; then
+    cp "$CURRENT" "$BASELINE"
+    echo "Baseline updated: $BASELINE"
+    exit 0
+fi
+
+if [[ ! -f "$BASELINE" ]]; then
+    echo "No baseline at $BASELINE; run bench/gate.sh -update on the reference machine first"
+    exit 1
+fi
+
+exec java -cp "$BENCH/build:$BENCH/lib/*" bench.BenchGate \
+     -confidence "${GATE_CONFIDENCE:-0.99}" -threshold "${GATE_THRESHOLD:-5}" \
+     -report "$REPORT" "$BASELINE" "$CURRENT"
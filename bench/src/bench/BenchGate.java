@@ -0,0 +1,312 @@
+// BenchGate.java
+// compare a JMH JSON result against a baseline and flag regressions
+// java -cp "bench/build:bench/lib/*" bench.BenchGate [-confidence 0.99] [-threshold 5] [-report file] baseline.json current.json
+//
+// Benchmarks are matched on name, mode and params.  For each side a
+// confidence interval of the mean is computed from JMH's raw iteration
+// scores (all forks pooled, Student t), and a change counts only if the
+// intervals don't overlap and the means differ by more than threshold
+// percent: noisy runs widen the intervals instead of failing the gate,
+// and a real but negligible shift doesn't either.  Lower is better for
+// avgt/sample/ss, higher for thrpt.  Allocation per op (-prof gc's
+// gc.alloc.rate.norm) is compared too: growing by more than threshold
+// percent and 16 bytes is a regression, since it is deterministic
+// enough not to need an interval.
+//
+// Prints a table (and writes it to -report) and exits 2 if anything
+// regressed, 0 otherwise.  Benchmarks only in one file are listed as
+// new or missing and don't fail the gate.
+
+package bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.math3.distribution.TDistribution;
+
+public class BenchGate
+{
+    static final double ALLOC_SLACK = 16.0; // bytes/op
+
+    // one benchmark+params result reduced to what we compare
+    static final class Run {
+        String key, unit;
+        boolean higherIsBetter;
+        int n;
+        double mean, lo, hi, alloc = Double.NaN;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        double confidence = 0.99, threshold = 5.0;
+        String report = null;
+        int i = 0;
+        while (i < args.length && args[i].startsWith("-")) {
+            if (args[i].equals("-confidence")) confidence = Double.parseDouble(args[++i]);
+            else if (args[i].equals("-threshold")) threshold = Double.parseDouble(args[++i]);
+            else if (args[i].equals("-report")) report = args[++i];
+            i++;
+        }
+        if (i + 1 >= args.length) {
+            System.err.println("Usage: java bench.BenchGate [-confidence 0.99] [-threshold 5] [-report file] baseline.json current.json");
+            System.exit(1);
+        }
+        Map<String,Run> base = load(args[i], confidence), cur = load(args[i + 1], confidence);
+
+        StringBuilder out = new StringBuilder();
+        int regressions = compare(base, cur, threshold / 100.0, confidence, out);
+        System.out.print(out);
+        if (report != null) Files.write(Paths.get(report), out.toString().getBytes(StandardCharsets.UTF_8));
+        System.exit(regressions > 0 ? 2 : 0);
+    }
+
+    static int compare(Map<String,Run> base, Map<String,Run> cur, double threshold, double confidence, StringBuilder out)
+    {
+        int regressions = 0, improved = 0, same = 0;
+        int width = 20;
+        for (String k : cur.keySet()) width = Math.max(width, k.length());
+        for (String k : base.keySet()) width = Math.max(width, k.length());
+        String fmt = "%-" + width + "s  %24s  %24s  %8s  %s%n";
+        out.append(String.format(fmt, "benchmark", "baseline", "current", "change", ""));
+
+        TreeMap<String,Run> all = new TreeMap<>(base);
+        all.putAll(cur);
+        for (String k : all.keySet()) {
+            Run b = base.get(k), c = cur.get(k);
+            if (b == null) {
+                out.append(String.format(fmt, k, "-", interval(c), "", "new"));
+                continue;
+            }
+            if (c == null) {
+                out.append(String.format(fmt, k, interval(b), "-", "", "missing"));
+                continue;
+            }
+            double change = c.mean / b.mean - 1;
+            String verdict;
+            boolean worse = b.higherIsBetter ? c.hi < b.lo : c.lo > b.hi;
+            boolean better = b.higherIsBetter ? c.lo > b.hi : c.hi < b.lo;
+            double worseBy = b.higherIsBetter ? -change : change;
+            if (b.n < 2 || c.n < 2) verdict = "? too few samples";
+            else if (worse && worseBy > threshold) verdict = "REGRESSION";
+            else if (better && -worseBy > threshold) verdict = "improved";
+            else verdict = "";
+
+            // allocation is nearly deterministic; compare it directly
+            String alloc = "";
+            if (!Double.isNaN(b.alloc) && !Double.isNaN(c.alloc)) {
+                double grew = c.alloc - b.alloc;
+                if (grew > ALLOC_SLACK && grew > threshold * b.alloc) {
+                    alloc = String.format("alloc %.1f -> %.1f B/op", b.alloc, c.alloc);
+                    if (verdict.isEmpty() || verdict.equals("improved")) verdict = "REGRESSION";
+                }
+                else if (Math.abs(grew) > ALLOC_SLACK) {
+                    alloc = String.format("alloc %.1f -> %.1f B/op", b.alloc, c.alloc);
+                }
+            }
+            if (verdict.equals("REGRESSION")) regressions++;
+            else if (verdict.equals("improved")) improved++;
+            else same++;
+            String note = (verdict + " " + alloc).trim();
+            out.append(String.format(fmt, k, interval(b), interval(c), String.format("%+.1f%%", 100 * change), note));
+        }
+        out.append(String.format("%n%d regressed, %d improved, %d unchanged (%.1f%% intervals, threshold %.1f%%)%n",
+                                 regressions, improved, same, 100 * confidence, 100 * threshold));
+        return regressions;
+    }
+
+    static String interval(Run r)
+    {
+        String f = (Math.abs(r.mean) >= 1000) ? "%.0f +- %.2g %s" : "%.3g +- %.2g %s";
+        return String.format(f, r.mean, (r.hi - r.lo) / 2, r.unit);
+    }
+
+    // ---- JMH JSON
+
+    @SuppressWarnings("unchecked")
+    static Map<String,Run> load(String file, double confidence) throws IOException
+    {
+        String text = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+        Object root = new Json(text).value();
+        if (!(root instanceof List)) throw new IOException(file+": not a JMH result array");
+        Map<String,Run> runs = new LinkedHashMap<>();
+        for (Object o : (List<Object>) root) {
+            Map<String,Object> m = (Map<String,Object>) o;
+            StringBuilder key = new StringBuilder();
+            String bench = (String) m.get("benchmark");
+            key.append(bench.startsWith("bench.") ? bench.substring(6) : bench);
+            key.append(" [").append(m.get("mode")).append(']');
+            Map<String,Object> params = (Map<String,Object>) m.get("params");
+            if (params != null) {
+                for (Map.Entry<String,Object> p : new TreeMap<>(params).entrySet()) {
+                    key.append(' ').append(p.getKey()).append('=').append(p.getValue());
+                }
+            }
+
+            Map<String,Object> pm = (Map<String,Object>) m.get("primaryMetric");
+            Run r = new Run();
+            r.key = key.toString();
+            r.unit = (String) pm.get("scoreUnit");
+            r.higherIsBetter = "thrpt".equals(m.get("mode"));
+            List<Double> raw = new ArrayList<>();
+            for (Object fork : (List<Object>) pm.get("rawData")) {
+                for (Object v : (List<Object>) fork) raw.add(number(v));
+            }
+            interval(raw, confidence, r);
+
+            Map<String,Object> sec = (Map<String,Object>) m.get("secondaryMetrics");
+            if (sec != null && sec.get("gc.alloc.rate.norm") instanceof Map) {
+                r.alloc = number(((Map<String,Object>) sec.get("gc.alloc.rate.norm")).get("score"));
+            }
+            runs.put(r.key, r);
+        }
+        return runs;
+    }
+
+    // mean and two-sided Student t interval
+    static void interval(List<Double> xs, double confidence, Run r)
+    {
+        int n = xs.size();
+        double sum = 0;
+        for (double x : xs) sum += x;
+        double mean = sum / Math.max(1, n), ss = 0;
+        for (double x : xs) ss += (x - mean) * (x - mean);
+        r.n = n;
+        r.mean = mean;
+        if (n < 2) {
+            r.lo = r.hi = mean;
+            return;
+        }
+        double t = new TDistribution(n - 1).inverseCumulativeProbability(0.5 + confidence / 2);
+        double half = t * Math.sqrt(ss / (n - 1) / n);
+        r.lo = mean - half;
+        r.hi = mean + half;
+    }
+
+    // JMH writes NaN/Infinity as strings
+    static double number(Object v)
+    {
+        if (v instanceof Number) return ((Number) v).doubleValue();
+        if (v instanceof String) {
+            try { return Double.parseDouble((String) v); } catch (NumberFormatException e) { }
+        }
+        return Double.NaN;
+    }
+
+    // just enough JSON for JMH's output: objects, arrays, strings, numbers,
+    // true/false/null.  DemScan's flat-object reader is in the unnamed
+    // package, which a named package can't import, and can't nest anyway
+
+    static final class Json
+    {
+        private final String s;
+        private int pos;
+
+        Json(String s) { this.s = s; }
+
+        Object value() throws IOException
+        {
+            ws();
+            if (pos >= s.length()) throw error("unexpected end");
+            char c = s.charAt(pos);
+            if (c == '{') return object();
+            if (c == '[') return array();
+            if (c == '"') return string();
+            int start = pos;
+            while (pos < s.length() && ",]} \t\r\n".indexOf(s.charAt(pos)) < 0) pos++;
+            String tok = s.substring(start, pos);
+            switch (tok) {
+            case "true":  return Boolean.TRUE;
+            case "false": return Boolean.FALSE;
+            case "null":  return null;
+            default:
+                try {
+                    return Double.valueOf(tok);
+                } catch (NumberFormatException e) {
+                    throw error("bad value '"+tok+"'");
+                }
+            }
+        }
+
+        private Map<String,Object> object() throws IOException
+        {
+            Map<String,Object> m = new LinkedHashMap<>();
+            pos++;
+            ws();
+            if (peek() == '}') { pos++; return m; }
+            while (true) {
+                ws();
+                String k = string();
+                ws();
+                expect(':');
+                m.put(k, value());
+                ws();
+                char c = s.charAt(pos++);
+                if (c == '}') return m;
+                if (c != ',') throw error("expected , or }");
+            }
+        }
+
+        private List<Object> array() throws IOException
+        {
+            List<Object> a = new ArrayList<>();
+            pos++;
+            ws();
+            if (peek() == ']') { pos++; return a; }
+            while (true) {
+                a.add(value());
+                ws();
+                char c = s.charAt(pos++);
+                if (c == ']') return a;
+                if (c != ',') throw error("expected , or ]");
+            }
+        }
+
+        private String string() throws IOException
+        {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (pos < s.length()) {
+                char c = s.charAt(pos++);
+                if (c == '"') return sb.toString();
+                if (c != '\\') { sb.append(c); continue; }
+                char x = s.charAt(pos++);
+                switch (x) {
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u': sb.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16)); pos += 4; break;
+                default:  sb.append(x);
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        private void expect(char c) throws IOException
+        {
+            if (peek() != c) throw error("expected '"+c+"'");
+            pos++;
+        }
+
+        private char peek() { return pos < s.length() ? s.charAt(pos) : 0; }
+
+        private void ws()
+        {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        private IOException error(String what)
+        {
+            return new IOException("Bad JSON at "+pos+": "+what);
+        }
+    }
+
+} // BenchGate
@@ -0,0 +1,85 @@
+// DemLookupBench.java
+// MaxarDtmReader.getAltFromLatLon on each sample DEM in the repo
+//
+// Replaces TestGeoTiffLookupPerformance's single-point nanoTime loop:
+// each call takes the next of 4096 random points inside the tile (a
+// fixed seed, so every run and every commit sees the same stream) and
+// returns the elevation so it can't be optimized away.  Points are kept
+// a pixel or so inside the bounds so none throw.  Run with -prof gc to
+// see allocation per lookup.
+
+package bench;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DemLookupBench
+{
+    static final int POINTS = 4096;
+
+    // one of each kind in the repo; the .dt2 download is a GeoTiff inside
+    @Param({ "DEM_LatLon_33.746093_-84.631329_33.925942_-84.414809.cop30",
+             "DEM_LatLon_63.415774_-18.938383_63.55052_-18.636573.eudtm",
+             "ov.3dep",
+             "parkinglot.srtm",
+             "DEM_LatLon_33.745322_-84.631617_33.925171_-84.415098.dt2",
+             "smyrna.max" })
+    public String dem;
+
+    @Param({ "PRIMITIVE" })
+    public String mode;
+
+    private AutoCloseable reader;
+    private final double[] lats = new double[POINTS], lons = new double[POINTS];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void open() throws Throwable
+    {
+        Repo.initCore();
+        reader = (AutoCloseable) Repo.OPEN_READER.invokeExact(new File(dem), Repo.loadMode(mode));
+        double s = (double) Repo.S.invokeExact(reader), n = (double) Repo.N.invokeExact(reader);
+        double w = (double) Repo.W.invokeExact(reader), e = (double) Repo.E.invokeExact(reader);
+        double insetLat = 0.01 * (n - s), insetLon = 0.01 * (e - w);
+        Random rnd = new Random(42);
+        for (int i = 0; i < POINTS; i++) {
+            lats[i] = s + insetLat + (n - s - 2 * insetLat) * rnd.nextDouble();
+            lons[i] = w + insetLon + (e - w - 2 * insetLon) * rnd.nextDouble();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception
+    {
+        reader.close();
+    }
+
+    @Benchmark
+    public double getAltFromLatLon() throws Throwable
+    {
+        int i = next++ & (POINTS - 1);
+        return (double) Repo.ALT.invokeExact(reader, lats[i], lons[i]);
+    }
+
+} // DemLookupBench
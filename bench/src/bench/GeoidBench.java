@@ -0,0 +1,71 @@
+// GeoidBench.java
+// Geoid.computeGeoidHeight, bilinear and cubic
+//
+// Points are clustered the way DEM lookups are (random tiles, a few
+// hundred points inside each) so the last-cell memo is exercised as
+// well as cold reads.  The geoid file defaults to geoids/egm2008-5.pgm;
+// -p pgm=... picks another.
+
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class GeoidBench
+{
+    static final int POINTS = 8192;
+    static final int PER_TILE = 256;
+
+    @Param({ "geoids/egm2008-5.pgm" })
+    public String pgm;
+
+    @Param({ "bilinear", "cubic" })
+    public String interpolation;
+
+    private Object geoid;
+    private final double[] lats = new double[POINTS], lons = new double[POINTS];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void open() throws Throwable
+    {
+        geoid = (Object) Repo.NEW_GEOID.invokeExact("bench", pgm, interpolation.equals("cubic"), false);
+        Random rnd = new Random(42);
+        double lat0 = 0, lon0 = 0;
+        for (int i = 0; i < POINTS; i++) {
+            if (i % PER_TILE == 0) {
+                lat0 = -80 + 160 * rnd.nextDouble();
+                lon0 = -180 + 359 * rnd.nextDouble();
+            }
+            lats[i] = lat0 + 0.2 * rnd.nextDouble();
+            lons[i] = lon0 + 0.2 * rnd.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public double computeGeoidHeight() throws Throwable
+    {
+        int i = next++ & (POINTS - 1);
+        return (double) Repo.GEOID_HEIGHT.invokeExact(geoid, lats[i], lons[i]);
+    }
+
+} // GeoidBench
@@ -0,0 +1,60 @@
+// PolarBench.java
+// PolarCoordinates.compute: Vincenty inverse and direct, UTM and MGRS
+//
+// Origin/target pairs are random, a few hundred meters to 20 km apart
+// as for a drone and its target, all over the UTM latitudes.
+
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PolarBench
+{
+    static final int POINTS = 4096;
+
+    private final double[] lat0 = new double[POINTS], lon0 = new double[POINTS], h0 = new double[POINTS];
+    private final double[] lat1 = new double[POINTS], lon1 = new double[POINTS], h1 = new double[POINTS];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        Random rnd = new Random(42);
+        for (int i = 0; i < POINTS; i++) {
+            lat0[i] = -79 + 158 * rnd.nextDouble();
+            lon0[i] = -179 + 358 * rnd.nextDouble();
+            h0[i] = 100 + 1000 * rnd.nextDouble();
+            double d = 0.003 + 0.18 * rnd.nextDouble(), a = 2 * Math.PI * rnd.nextDouble();
+            lat1[i] = lat0[i] + d * Math.cos(a);
+            lon1[i] = lon0[i] + d * Math.sin(a) / Math.cos(Math.toRadians(lat0[i]));
+            h1[i] = 500 * rnd.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public Object compute() throws Throwable
+    {
+        int i = next++ & (POINTS - 1);
+        return (Object) Repo.POLAR.invokeExact(lat0[i], lon0[i], h0[i], lat1[i], lon1[i], h1[i]);
+    }
+
+} // PolarBench
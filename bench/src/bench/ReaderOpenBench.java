@@ -0,0 +1,65 @@
+// ReaderOpenBench.java
+// time to open (and close) a MaxarDtmReader on each sample DEM
+//
+// The geoid is shared process-wide (GeoidRegistry), so only the warmup
+// pays for loading it; what is measured is parsing, decoding and CRS
+// setup for the tile.  Use -p mode=MAPPED or SIDECAR to compare load
+// modes.
+
+package bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ReaderOpenBench
+{
+    @Param({ "DEM_LatLon_33.746093_-84.631329_33.925942_-84.414809.cop30",
+             "DEM_LatLon_63.415774_-18.938383_63.55052_-18.636573.eudtm",
+             "ov.3dep",
+             "parkinglot.srtm",
+             "DEM_LatLon_33.745322_-84.631617_33.925171_-84.415098.dt2",
+             "smyrna.max" })
+    public String dem;
+
+    @Param({ "PRIMITIVE" })
+    public String mode;
+
+    private File file;
+    private Object loadMode;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        Repo.initCore();
+        file = new File(dem);
+        loadMode = Repo.loadMode(mode);
+    }
+
+    @Benchmark
+    public AutoCloseable open() throws Throwable
+    {
+        AutoCloseable r = (AutoCloseable) Repo.OPEN_READER.invokeExact(file, loadMode);
+        r.close();
+        return r;
+    }
+
+} // ReaderOpenBench
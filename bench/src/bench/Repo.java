@@ -0,0 +1,88 @@
+// Repo.java
+// method handles onto the repo's default-package classes
+//
+// JMH refuses benchmark classes in the default package, and a named
+// package can't import from it, so the benchmarks reach MaxarDtmReader,
+// Geoid and PolarCoordinates through these handles.  They are static
+// final, so the JIT treats them as constants and inlines straight
+// through to the target; the cost is the same as a direct call.
+
+package bench;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Paths;
+
+import com.openathena.core.OpenAthenaCore;
+
+final class Repo
+{
+    // new MaxarDtmReader(File, LoadMode) -> AutoCloseable
+    static final MethodHandle OPEN_READER;
+    // reader.getAltFromLatLon(lat, lon) as (AutoCloseable, double, double) -> double
+    static final MethodHandle ALT;
+    // reader.getS/getN/getW/getE() as (AutoCloseable) -> double
+    static final MethodHandle S, N, W, E;
+    // new Geoid(name, pgm, cubic, threadsafe) -> Object
+    static final MethodHandle NEW_GEOID;
+    // geoid.computeGeoidHeight(lat, lon) as (Object, double, double) -> double
+    static final MethodHandle GEOID_HEIGHT;
+    // PolarCoordinates.compute(lat0, lon0, h0, lat1, lon1, h1) -> Object
+    static final MethodHandle POLAR;
+
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.publicLookup();
+            Class<?> reader = Class.forName("MaxarDtmReader");
+            @SuppressWarnings({ "unchecked", "rawtypes" })
+            Class<? extends Enum> mode = (Class<? extends Enum>) Class.forName("MaxarDtmReader$LoadMode");
+            MethodHandle ctor = l.findConstructor(reader, MethodType.methodType(void.class, File.class, mode));
+            OPEN_READER = ctor.asType(MethodType.methodType(AutoCloseable.class, File.class, Object.class));
+            MethodType dd = MethodType.methodType(double.class, double.class, double.class);
+            ALT = l.findVirtual(reader, "getAltFromLatLon", dd)
+                .asType(MethodType.methodType(double.class, AutoCloseable.class, double.class, double.class));
+            MethodType get = MethodType.methodType(double.class);
+            MethodType onReader = MethodType.methodType(double.class, AutoCloseable.class);
+            S = l.findVirtual(reader, "getS", get).asType(onReader);
+            N = l.findVirtual(reader, "getN", get).asType(onReader);
+            W = l.findVirtual(reader, "getW", get).asType(onReader);
+            E = l.findVirtual(reader, "getE", get).asType(onReader);
+
+            Class<?> geoid = Class.forName("Geoid");
+            NEW_GEOID = l.findConstructor(geoid, MethodType.methodType(void.class, String.class, String.class,
+                                                                       boolean.class, boolean.class))
+                .asType(MethodType.methodType(Object.class, String.class, String.class, boolean.class, boolean.class));
+            GEOID_HEIGHT = l.findVirtual(geoid, "computeGeoidHeight", dd)
+                .asType(MethodType.methodType(double.class, Object.class, double.class, double.class));
+
+            Class<?> polar = Class.forName("PolarCoordinates");
+            MethodType six = MethodType.methodType(Class.forName("PolarCoordinates$Result"), double.class, double.class,
+                                                   double.class, double.class, double.class, double.class);
+            POLAR = l.findStatic(polar, "compute", six).asType(six.changeReturnType(Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static OpenAthenaCore core;
+
+    // as the Test programs do before opening DEMs
+    static synchronized void initCore()
+    {
+        if (core != null) return;
+        System.setProperty("slf4j.internal.verbosity", "ERROR");
+        OpenAthenaCore.CacheDir = Paths.get("/");
+        core = new OpenAthenaCore();
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static Object loadMode(String name) throws ClassNotFoundException
+    {
+        return Enum.valueOf((Class<? extends Enum>) Class.forName("MaxarDtmReader$LoadMode"), name);
+    }
+
+    private Repo() { }
+
+} // Repo
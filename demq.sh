@@ -0,0 +1,54 @@
+#!/bin/bash
+
+# send requests to a running DemDaemon and print its answers
+#
+# usage: demq.sh [-p port | -u socket] request...
+#        demq.sh [-p port | -u socket] < requests      (one per line)
+#   demq.sh 'alt 33.87 -84.52'
+#   demq.sh 'alt 33.87 -84.52 egm96' 'geoid egm2008 33.87 -84.52'
+#   demq.sh -u /tmp/demd.sock stats
+#
+# All requests are written on one connection without waiting for
+# answers (DemDaemon answers pipelined requests in order), followed by
+# quit so the daemon closes the connection after the last answer.  TCP
+# uses bash's /dev/tcp; a Unix socket needs socat or nc -U.
+
+PORT=7373
+SOCK=""
+
+while [[ $# -gt 0 ]]; do
+    case "$1" in
+    -p) PORT="$2"; shift 2 ;;
+    -u) SOCK="$2"; shift 2 ;;
+    *)  break ;;
+    esac
+done
+
+requests()
+{
+    if [[ $# -gt 0 ]]; then
+        printf '%s\n' "$@"
+    else
+        cat
+    fi
+    echo quit
+}
+
+if [[ -n "$SOCK" ]]; then
+    if command -v socat > /dev/null; then
+        requests "$@" | socat - UNIX-CONNECT:"$SOCK"
+    else
+        requests "$@" | nc -U "$SOCK"
+    fi
+    exit $?
+fi
+
+exec 3<>/dev/tcp/127.0.0.1/$PORT || {
+    echo "No DemDaemon on port $PORT"
+    exit 1
+}
+# write in the background so a long batch can't fill both socket
+# buffers; a background job's stdin is /dev/null unless redirected
+requests "$@" <&0 >&3 &
+cat <&3
+wait